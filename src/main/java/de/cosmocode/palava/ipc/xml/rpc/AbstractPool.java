@@ -0,0 +1,136 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * Abstract base class for bounded pools of expensive, non thread-safe instances.
+ * Released instances are reset before they are handed out again.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ * @param <T> the pooled type
+ */
+@ThreadSafe
+abstract class AbstractPool<T> implements PoolStatistics {
+
+    private final Queue<T> idle = new ConcurrentLinkedQueue<T>();
+    
+    private final AtomicInteger size = new AtomicInteger();
+    
+    private final AtomicLong hits = new AtomicLong();
+    
+    private final AtomicLong misses = new AtomicLong();
+    
+    private final AtomicLong discards = new AtomicLong();
+    
+    private volatile int capacity = 32;
+    
+    @Inject(optional = true)
+    public void setCapacity(@Named(XmlRpc.POOL_SIZE) int capacity) {
+        Preconditions.checkArgument(capacity >= 0, "Capacity must not be negative");
+        this.capacity = capacity;
+    }
+    
+    /**
+     * Creates a new instance, called whenever the pool is empty.
+     * 
+     * @return a new instance
+     */
+    protected abstract T create();
+    
+    /**
+     * Resets the state of a released instance.
+     * 
+     * @param instance the instance being returned to the pool
+     */
+    protected abstract void reset(T instance);
+    
+    /**
+     * Borrows an instance from this pool. Callers must {@link #release(Object)}
+     * the returned instance after usage.
+     * 
+     * @since 1.1
+     * @return a pooled or newly created instance
+     */
+    public T borrow() {
+        final T instance = idle.poll();
+        if (instance == null) {
+            misses.incrementAndGet();
+            return create();
+        } else {
+            size.decrementAndGet();
+            hits.incrementAndGet();
+            return instance;
+        }
+    }
+    
+    /**
+     * Resets and returns the specified instance to this pool.
+     * 
+     * @since 1.1
+     * @param instance the instance previously borrowed from this pool
+     * @throws NullPointerException if instance is null
+     */
+    public void release(T instance) {
+        Preconditions.checkNotNull(instance, "Instance");
+        reset(instance);
+        if (size.incrementAndGet() <= capacity) {
+            idle.offer(instance);
+        } else {
+            size.decrementAndGet();
+            discards.incrementAndGet();
+        }
+    }
+    
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+    
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    @Override
+    public long getDiscards() {
+        return discards.get();
+    }
+    
+    @Override
+    public int getIdle() {
+        return size.get();
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s[hits=%s, misses=%s, discards=%s, idle=%s]", 
+            getClass().getSimpleName(), getHits(), getMisses(), getDiscards(), getIdle());
+    }
+    
+}
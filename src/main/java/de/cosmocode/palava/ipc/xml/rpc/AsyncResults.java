@@ -0,0 +1,219 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Static utility class for command results which complete asynchronously. A command
+ * completes asynchronously by putting {@link ListenableFuture}s or
+ * {@code java.util.concurrent.CompletionStage}s into its result, either as the value
+ * of a single entry or under {@link XmlRpc#FUTURE} for a future of further result entries.
+ * Completion stages are supported reflectively, they require a Java 8 or later runtime.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+final class AsyncResults {
+
+    private static final Class<?> COMPLETION_STAGE = load("java.util.concurrent.CompletionStage");
+    
+    private static final Class<?> BI_CONSUMER = load("java.util.function.BiConsumer");
+    
+    private AsyncResults() {
+        
+    }
+    
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+    
+    private static boolean isCompletionStage(Object value) {
+        return COMPLETION_STAGE != null && COMPLETION_STAGE.isInstance(value);
+    }
+    
+    /**
+     * Checks whether the specified value is a supported future.
+     * 
+     * @param value the value, may be null
+     * @return true if value is a {@link ListenableFuture} or a completion stage
+     */
+    static boolean isFuture(Object value) {
+        return value instanceof ListenableFuture<?> || isCompletionStage(value);
+    }
+    
+    /**
+     * Checks whether the specified result contains at least one future.
+     * 
+     * @param result the command result
+     * @return true if the result has to be awaited
+     */
+    static boolean isPending(Map<String, Object> result) {
+        for (Object value : result.values()) {
+            if (isFuture(value)) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Runs the specified listener using the given executor once
+     * all futures of the specified result are done.
+     * 
+     * @param result the command result
+     * @param listener the listener
+     * @param executor the executor used to run the listener
+     */
+    static void addListener(Map<String, Object> result, final Runnable listener, Executor executor) {
+        Preconditions.checkNotNull(listener, "Listener");
+        Preconditions.checkNotNull(executor, "Executor");
+        final List<Object> futures = Lists.newArrayList();
+        for (Object value : result.values()) {
+            if (isFuture(value)) futures.add(value);
+        }
+        Preconditions.checkArgument(!futures.isEmpty(), "%s contains no futures", result);
+        
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        final Runnable countDown = new Runnable() {
+            
+            @Override
+            public void run() {
+                if (remaining.decrementAndGet() == 0) {
+                    listener.run();
+                }
+            }
+            
+        };
+        
+        for (Object future : futures) {
+            if (future instanceof ListenableFuture<?>) {
+                ListenableFuture.class.cast(future).addListener(countDown, executor);
+            } else {
+                whenCompleteAsync(future, countDown, executor);
+            }
+        }
+    }
+    
+    private static void whenCompleteAsync(Object stage, final Runnable listener, Executor executor) {
+        final Object action = Proxy.newProxyInstance(BI_CONSUMER.getClassLoader(), 
+            new Class<?>[] {BI_CONSUMER}, new InvocationHandler() {
+            
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("accept".equals(method.getName())) {
+                        listener.run();
+                        return null;
+                    } else if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    } else if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    } else if ("toString".equals(method.getName())) {
+                        return listener.toString();
+                    } else {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+                
+            });
+        invoke(stage, "whenCompleteAsync", new Class<?>[] {BI_CONSUMER, Executor.class}, action, executor);
+    }
+    
+    private static Object invoke(Object target, String name, Class<?>[] types, Object... args) {
+        try {
+            return COMPLETION_STAGE.getMethod(name, types).invoke(target, args);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+    
+    /**
+     * Creates a copy of the specified result with all futures replaced by their values.
+     * Must only be called once all futures are done.
+     * 
+     * @param result the command result
+     * @return the resolved result
+     * @throws ExecutionException if any future failed or was cancelled
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> resolve(Map<String, Object> result) throws ExecutionException {
+        final Map<String, Object> resolved = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Object> entry : result.entrySet()) {
+            if (XmlRpc.FUTURE.equals(entry.getKey()) && isFuture(entry.getValue())) {
+                final Object value = getDone(entry.getValue());
+                Preconditions.checkState(value instanceof Map<?, ?>, 
+                    "%s must provide a map but was %s", XmlRpc.FUTURE, value);
+                resolved.putAll((Map<String, Object>) value);
+            } else if (isFuture(entry.getValue())) {
+                resolved.put(entry.getKey(), getDone(entry.getValue()));
+            } else {
+                resolved.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return resolved;
+    }
+    
+    private static Object getDone(Object value) throws ExecutionException {
+        final Future<?> future;
+        if (value instanceof Future<?>) {
+            future = Future.class.cast(value);
+        } else {
+            future = Future.class.cast(invoke(value, "toCompletableFuture", new Class<?>[0]));
+        }
+        Preconditions.checkState(future.isDone(), "%s is not done", future);
+        
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (CancellationException e) {
+                    throw new ExecutionException(e);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * Coalesces identical calls of the methods listed in {@link XmlRpc#COALESCED_METHODS}.
+ * While a call is in flight, identical calls, as identified by their {@link CallKey}, don't
+ * execute but wait for the running one and share its serialized response. Waiting
+ * calls don't block a thread. Like cached responses, coalesced responses are shared
+ * between sessions, only methods whose result does not depend on the session may be listed.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class CallCoalescer implements CoalescingStatistics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CallCoalescer.class);
+    
+    private final MethodResponseWriter writer;
+    
+    private final Map<CallKey, List<CallCompletion>> flights = Maps.newHashMap();
+    
+    private final AtomicLong executions = new AtomicLong();
+    
+    private final AtomicLong coalescedCalls = new AtomicLong();
+    
+    private Set<String> methods = ImmutableSet.of();
+    
+    @Inject
+    public CallCoalescer(MethodResponseWriter writer) {
+        this.writer = Preconditions.checkNotNull(writer, "Writer");
+    }
+    
+    @Inject(optional = true)
+    public void setMethods(@Named(XmlRpc.COALESCED_METHODS) String methods) {
+        Preconditions.checkNotNull(methods, "Methods");
+        this.methods = ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(methods));
+    }
+    
+    /**
+     * Checks whether calls of the specified method are coalesced.
+     * 
+     * @param methodName the method name
+     * @return true if the method is listed in {@link XmlRpc#COALESCED_METHODS}
+     */
+    boolean isCoalesced(String methodName) {
+        return methods.contains(methodName);
+    }
+    
+    /**
+     * Joins the flight of the specified key. The first call of a key starts a new flight
+     * and has to execute, followed by {@link #land(CallKey, Object)}. All calls joining
+     * in the meantime are completed on landing.
+     * 
+     * @param key the key of the call
+     * @param completion the completion of the call
+     * @return true if the caller has to execute the call, false if it joined a running flight
+     */
+    boolean join(CallKey key, CallCompletion completion) {
+        Preconditions.checkNotNull(key, "Key");
+        Preconditions.checkNotNull(completion, "Completion");
+        synchronized (flights) {
+            final List<CallCompletion> flight = flights.get(key);
+            if (flight == null) {
+                flights.put(key, Lists.newArrayList(completion));
+                executions.incrementAndGet();
+                return true;
+            } else {
+                flight.add(completion);
+                coalescedCalls.incrementAndGet();
+                LOG.trace("Coalescing call of {} with {} waiting", key, flight.size());
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Ends the flight of the specified key and completes all calls of it.
+     * 
+     * @param key the key of the executed call
+     * @param response the result {@link Map}, a serialized response or a {@link Throwable}
+     * @throws IllegalStateException if there is no flight for key
+     */
+    void land(CallKey key, Object response) {
+        Preconditions.checkNotNull(response, "Response");
+        final List<CallCompletion> flight;
+        synchronized (flights) {
+            flight = flights.remove(key);
+        }
+        Preconditions.checkState(flight != null, "No flight for %s", key);
+        
+        if (response instanceof Throwable) {
+            for (CallCompletion completion : flight) {
+                completion.complete(response);
+            }
+            return;
+        }
+        
+        final byte[] bytes;
+        if (response instanceof ChannelBuffer) {
+            final ChannelBuffer buffer = ChannelBuffer.class.cast(response);
+            bytes = new byte[buffer.readableBytes()];
+            buffer.getBytes(buffer.readerIndex(), bytes);
+        } else if (flight.size() == 1) {
+            // nobody joined, no need to serialize here
+            flight.get(0).complete(response);
+            return;
+        } else {
+            final ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+            writer.writeResponse(response, buffer);
+            bytes = new byte[buffer.readableBytes()];
+            buffer.getBytes(buffer.readerIndex(), bytes);
+        }
+        
+        for (CallCompletion completion : flight) {
+            completion.complete(ChannelBuffers.wrappedBuffer(bytes));
+        }
+    }
+    
+    @Override
+    public long getExecutions() {
+        return executions.get();
+    }
+    
+    @Override
+    public long getCoalescedCalls() {
+        return coalescedCalls.get();
+    }
+    
+    @Override
+    public int getInFlight() {
+        synchronized (flights) {
+            return flights.size();
+        }
+    }
+    
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Identifies calls with equal method names and arguments. Consists of the method name
+ * and a SHA-256 hash of the canonical form of the arguments, which is independent
+ * of the order of struct members.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@Immutable
+final class CallKey {
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final String methodName;
+    
+    private final byte[] hash;
+    
+    private CallKey(String methodName, byte[] hash) {
+        this.methodName = methodName;
+        this.hash = hash;
+    }
+    
+    /**
+     * Computes the key of the specified method and arguments.
+     * 
+     * @param methodName the method name
+     * @param arguments the arguments
+     * @return the key or null if the arguments contain values without a canonical form, e.g. streams
+     * @throws NullPointerException if methodName or arguments is null
+     */
+    static CallKey of(String methodName, Map<String, ?> arguments) {
+        Preconditions.checkNotNull(methodName, "MethodName");
+        Preconditions.checkNotNull(arguments, "Arguments");
+        final StringBuilder builder = new StringBuilder();
+        if (!canonicalize(arguments, builder)) return null;
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return new CallKey(methodName, digest.digest(builder.toString().getBytes(UTF_8)));
+    }
+    
+    /**
+     * Writes the canonical form of the specified value into the given builder.
+     * 
+     * @param value the value
+     * @param builder the target builder
+     * @return false if value contains an unsupported type
+     */
+    private static boolean canonicalize(Object value, StringBuilder builder) {
+        if (value == null) {
+            builder.append('n');
+        } else if (value instanceof String) {
+            final String string = String.class.cast(value);
+            builder.append('s').append(string.length()).append(':').append(string);
+        } else if (value instanceof Boolean || value instanceof Number) {
+            // the class distinguishes 1 from 1.0
+            builder.append(value.getClass().getSimpleName()).append(':').append(value).append(';');
+        } else if (value instanceof Date) {
+            builder.append('d').append(Date.class.cast(value).getTime()).append(';');
+        } else if (value instanceof Map<?, ?>) {
+            final SortedMap<String, Object> sorted = Maps.newTreeMap();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            builder.append('{').append(sorted.size()).append(':');
+            for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+                canonicalize(entry.getKey(), builder);
+                if (!canonicalize(entry.getValue(), builder)) return false;
+            }
+            builder.append('}');
+        } else if (value instanceof List<?>) {
+            final List<?> list = List.class.cast(value);
+            builder.append('[').append(list.size()).append(':');
+            for (Object element : list) {
+                if (!canonicalize(element, builder)) return false;
+            }
+            builder.append(']');
+        } else {
+            return false;
+        }
+        return true;
+    }
+    
+    public String getMethodName() {
+        return methodName;
+    }
+    
+    @Override
+    public boolean equals(Object that) {
+        if (this == that) {
+            return true;
+        } else if (that instanceof CallKey) {
+            final CallKey other = CallKey.class.cast(that);
+            return methodName.equals(other.methodName) && Arrays.equals(hash, other.hash);
+        } else {
+            return false;
+        }
+    }
+    
+    @Override
+    public int hashCode() {
+        return 31 * methodName.hashCode() + Arrays.hashCode(hash);
+    }
+    
+    @Override
+    public String toString() {
+        return methodName;
+    }
+    
+}
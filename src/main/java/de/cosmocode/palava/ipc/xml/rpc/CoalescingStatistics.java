@@ -0,0 +1,51 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+/**
+ * Exposes counters of the coalescing of identical in-flight calls.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public interface CoalescingStatistics {
+
+    /**
+     * Returns the number of calls of coalesced methods which were executed.
+     * 
+     * @since 1.1
+     * @return the number of executions
+     */
+    long getExecutions();
+    
+    /**
+     * Returns the number of calls which shared the result of an identical call in flight.
+     * 
+     * @since 1.1
+     * @return the number of coalesced calls
+     */
+    long getCoalescedCalls();
+    
+    /**
+     * Returns the number of executions currently in flight.
+     * 
+     * @since 1.1
+     * @return the number of calls in flight
+     */
+    int getInFlight();
+    
+}
@@ -0,0 +1,442 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpHeaders.Names;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * A handler which decompresses gzip and deflate encoded requests and compresses
+ * responses according to the {@code Accept-Encoding} of the request. Responses smaller than
+ * {@link XmlRpc#COMPRESSION_THRESHOLD} bytes (default 1 KiB) are sent uncompressed, chunked
+ * responses are compressed chunk by chunk. The compression level can be configured using
+ * {@link XmlRpc#COMPRESSION_LEVEL} (default 6). Decompressed requests are limited to
+ * {@link XmlRpc#MAX_CONTENT_LENGTH} bytes.
+ * 
+ * <p>
+ *   Requests using an unknown content coding are rejected with {@code 415 Unsupported Media Type},
+ *   corrupt compressed requests with {@code 400 Bad Request} and requests exceeding the maximum
+ *   length once decompressed with {@code 413 Request Entity Too Large}. The codecs of a channel
+ *   are released when it is closed.
+ * </p>
+ * 
+ * <p>
+ *   The negotiated encodings of pipelined requests are queued and applied to the responses in order.
+ * </p>
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@Sharable
+@ThreadSafe
+final class CompressionHandler extends SimpleChannelHandler implements CompressionStatistics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompressionHandler.class);
+    
+    private static final String GZIP = "gzip";
+    
+    private static final String X_GZIP = "x-gzip";
+    
+    private static final String DEFLATE = "deflate";
+    
+    private static final String IDENTITY = "identity";
+    
+    private static final Splitter COMMA = Splitter.on(',').trimResults().omitEmptyStrings();
+    
+    private static final Splitter SEMICOLON = Splitter.on(';').trimResults();
+    
+    private final AtomicLong compressedResponses = new AtomicLong();
+    
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    
+    private final AtomicLong compressedBytes = new AtomicLong();
+    
+    private final AtomicLong compressionNanos = new AtomicLong();
+    
+    private final AtomicLong decompressedRequests = new AtomicLong();
+    
+    private final AtomicLong receivedBytes = new AtomicLong();
+    
+    private final AtomicLong decompressedBytes = new AtomicLong();
+    
+    private final AtomicLong decompressionNanos = new AtomicLong();
+    
+    private int level = 6;
+    
+    private int threshold = 1024;
+    
+    private int maxContentLength = 1048576;
+    
+    @Inject(optional = true)
+    public void setLevel(@Named(XmlRpc.COMPRESSION_LEVEL) int level) {
+        Preconditions.checkArgument(level >= 1 && level <= 9, "Level must be within [1, 9]");
+        this.level = level;
+    }
+    
+    @Inject(optional = true)
+    public void setThreshold(@Named(XmlRpc.COMPRESSION_THRESHOLD) int threshold) {
+        Preconditions.checkArgument(threshold >= 0, "Threshold must not be negative");
+        this.threshold = threshold;
+    }
+    
+    @Inject(optional = true)
+    public void setMaxContentLength(@Named(XmlRpc.MAX_CONTENT_LENGTH) int maxContentLength) {
+        Preconditions.checkArgument(maxContentLength > 0, "MaxContentLength must be positive");
+        this.maxContentLength = maxContentLength;
+    }
+    
+    @Override
+    public void channelOpen(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        context.setAttachment(new State());
+        super.channelOpen(context, event);
+    }
+    
+    @Override
+    public void messageReceived(ChannelHandlerContext context, MessageEvent event) throws Exception {
+        final Object message = event.getMessage();
+        if (message instanceof HttpRequest) {
+            final HttpRequest request = HttpRequest.class.cast(message);
+            final State state = State.class.cast(context.getAttachment());
+            if (state == null || state.rejected) return;
+            final String encoding = negotiate(request.getHeader(Names.ACCEPT_ENCODING));
+            state.encodings.add(encoding == null ? IDENTITY : encoding);
+            
+            final String coding = request.getHeader(Names.CONTENT_ENCODING);
+            if (coding == null || IDENTITY.equalsIgnoreCase(coding.trim())) {
+                context.sendUpstream(event);
+                return;
+            }
+            
+            final boolean gzip;
+            if (GZIP.equalsIgnoreCase(coding.trim()) || X_GZIP.equalsIgnoreCase(coding.trim())) {
+                gzip = true;
+            } else if (DEFLATE.equalsIgnoreCase(coding.trim())) {
+                gzip = false;
+            } else {
+                LOG.debug("Rejecting request with unsupported content encoding {}", coding);
+                reject(context, state, HttpResponseStatus.UNSUPPORTED_MEDIA_TYPE);
+                return;
+            }
+            
+            request.removeHeader(Names.CONTENT_ENCODING);
+            state.inflater = new ContentInflater(gzip, maxContentLength);
+            
+            if (request.isChunked()) {
+                context.sendUpstream(event);
+            } else {
+                final ChannelBuffer content = inflate(context, state, request.getContent(), true);
+                if (content == null) return;
+                request.setContent(content);
+                request.setHeader(Names.CONTENT_LENGTH, content.readableBytes());
+                context.sendUpstream(event);
+            }
+        } else if (message instanceof HttpChunk) {
+            final State state = State.class.cast(context.getAttachment());
+            if (state != null && state.rejected) return;
+            if (state == null || state.inflater == null) {
+                context.sendUpstream(event);
+                return;
+            }
+            
+            final HttpChunk chunk = HttpChunk.class.cast(message);
+            final ChannelBuffer content = inflate(context, state, chunk.getContent(), chunk.isLast());
+            if (content == null) return;
+            
+            // empty chunks mark the end of the content
+            if (content.readable()) {
+                Channels.fireMessageReceived(context, new DefaultHttpChunk(content), event.getRemoteAddress());
+            }
+            if (chunk.isLast()) {
+                Channels.fireMessageReceived(context, HttpChunk.LAST_CHUNK, event.getRemoteAddress());
+            }
+        } else {
+            context.sendUpstream(event);
+        }
+    }
+    
+    private ChannelBuffer inflate(ChannelHandlerContext context, State state, ChannelBuffer input, boolean last) 
+        throws Exception {
+        final long start = System.nanoTime();
+        final ChannelBuffer output;
+        try {
+            output = state.inflater.inflate(input);
+            if (last) {
+                state.inflater.finish();
+                state.inflater = null;
+                decompressedRequests.incrementAndGet();
+            }
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Rejecting corrupt compressed request in channel {}: {}", context.getChannel(), e.getMessage());
+            reject(context, state, HttpResponseStatus.BAD_REQUEST);
+            return null;
+        } catch (TooLongFrameException e) {
+            LOG.debug("Rejecting compressed request in channel {}: {}", context.getChannel(), e.getMessage());
+            reject(context, state, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+            return null;
+        }
+        decompressionNanos.addAndGet(System.nanoTime() - start);
+        receivedBytes.addAndGet(input.readableBytes());
+        decompressedBytes.addAndGet(output.readableBytes());
+        return output;
+    }
+    
+    private void reject(ChannelHandlerContext context, State state, HttpResponseStatus status) {
+        if (state.inflater != null) {
+            state.inflater.end();
+            state.inflater = null;
+        }
+        state.rejected = true;
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+        response.setHeader(Names.CONTENT_LENGTH, 0);
+        final ChannelFuture future = Channels.future(context.getChannel());
+        Channels.write(context, future, response);
+        future.addListener(ChannelFutureListener.CLOSE);
+    }
+    
+    @Override
+    public void channelClosed(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        final State state = State.class.cast(context.getAttachment());
+        if (state != null) {
+            // requests or responses cut off by the close still hold native zlib memory
+            if (state.inflater != null) {
+                state.inflater.end();
+                state.inflater = null;
+            }
+            final ContentDeflater deflater = state.deflater;
+            if (deflater != null) {
+                state.deflater = null;
+                deflater.end();
+            }
+        }
+        super.channelClosed(context, event);
+    }
+    
+    @Override
+    public void writeRequested(ChannelHandlerContext context, MessageEvent event) throws Exception {
+        final Object message = event.getMessage();
+        final State state = State.class.cast(context.getAttachment());
+        
+        if (state == null) {
+            context.sendDownstream(event);
+        } else if (message instanceof HttpResponse) {
+            final HttpResponse response = HttpResponse.class.cast(message);
+            final int code = response.getStatus().getCode();
+            // interim responses like 100 continue precede the actual response of the same request
+            final String encoding = code < 200 ? null : state.encodings.poll();
+            if (code == HttpResponseStatus.OK.getCode()) {
+                response.setHeader(Names.VARY, Names.ACCEPT_ENCODING);
+                if (encoding != null && !IDENTITY.equals(encoding) && 
+                    !response.containsHeader(Names.CONTENT_ENCODING)) {
+                    compress(state, encoding, response);
+                }
+            }
+            context.sendDownstream(event);
+        } else if (message instanceof HttpChunk && state.deflater != null) {
+            final HttpChunk chunk = HttpChunk.class.cast(message);
+            final ChannelBuffer content = chunk.getContent();
+            
+            final long start = System.nanoTime();
+            ChannelBuffer compressed = state.deflater.deflate(content);
+            if (chunk.isLast()) {
+                compressed = ChannelBuffers.wrappedBuffer(compressed, state.deflater.finish());
+                state.deflater = null;
+            }
+            record(content.readableBytes(), compressed.readableBytes(), System.nanoTime() - start);
+            
+            // empty chunks mark the end of the content
+            if (chunk.isLast()) {
+                if (compressed.readable()) {
+                    Channels.write(context, Channels.future(context.getChannel()), 
+                        new DefaultHttpChunk(compressed), event.getRemoteAddress());
+                }
+                Channels.write(context, event.getFuture(), HttpChunk.LAST_CHUNK, event.getRemoteAddress());
+            } else if (compressed.readable()) {
+                Channels.write(context, event.getFuture(), new DefaultHttpChunk(compressed), event.getRemoteAddress());
+            } else {
+                event.getFuture().setSuccess();
+            }
+        } else {
+            context.sendDownstream(event);
+        }
+    }
+    
+    private void compress(State state, String encoding, HttpResponse response) {
+        final boolean gzip = GZIP.equals(encoding);
+        if (response.containsHeader(Names.CONTENT_LENGTH)) {
+            final ChannelBuffer content = response.getContent();
+            if (content.readableBytes() < threshold) return;
+            
+            final long start = System.nanoTime();
+            final ContentDeflater deflater = new ContentDeflater(gzip, level);
+            final ChannelBuffer compressed = ChannelBuffers.wrappedBuffer(deflater.deflate(content), deflater.finish());
+            record(content.readableBytes(), compressed.readableBytes(), System.nanoTime() - start);
+            
+            response.setContent(compressed);
+            response.setHeader(Names.CONTENT_LENGTH, compressed.readableBytes());
+        } else {
+            // the content follows in chunks
+            state.deflater = new ContentDeflater(gzip, level);
+        }
+        response.setHeader(Names.CONTENT_ENCODING, encoding);
+        compressedResponses.incrementAndGet();
+    }
+    
+    private void record(int uncompressed, int compressed, long nanos) {
+        uncompressedBytes.addAndGet(uncompressed);
+        compressedBytes.addAndGet(compressed);
+        compressionNanos.addAndGet(nanos);
+    }
+    
+    /**
+     * Selects the preferred supported content coding of the specified accept encoding header.
+     * 
+     * @param acceptEncoding the header value, may be null
+     * @return gzip, deflate or null if the response should not be compressed
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) return null;
+        
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        
+        for (String coding : COMMA.split(acceptEncoding)) {
+            final Iterable<String> parts = SEMICOLON.split(coding);
+            String name = null;
+            double quality = 1;
+            for (String part : parts) {
+                if (name == null) {
+                    name = part;
+                } else if (part.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(part.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (GZIP.equalsIgnoreCase(name) || X_GZIP.equalsIgnoreCase(name)) {
+                gzip = Math.max(gzip, quality);
+            } else if (DEFLATE.equalsIgnoreCase(name)) {
+                deflate = quality;
+            } else if ("*".equals(name)) {
+                any = quality;
+            }
+        }
+        
+        if (gzip == -1) gzip = any;
+        if (deflate == -1) deflate = any;
+        
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        } else if (deflate > 0) {
+            return DEFLATE;
+        } else {
+            return null;
+        }
+    }
+    
+    @Override
+    public long getCompressedResponses() {
+        return compressedResponses.get();
+    }
+    
+    @Override
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+    
+    @Override
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+    
+    @Override
+    public long getCompressionNanos() {
+        return compressionNanos.get();
+    }
+    
+    @Override
+    public long getDecompressedRequests() {
+        return decompressedRequests.get();
+    }
+    
+    @Override
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+    
+    @Override
+    public long getDecompressedBytes() {
+        return decompressedBytes.get();
+    }
+    
+    @Override
+    public long getDecompressionNanos() {
+        return decompressionNanos.get();
+    }
+    
+    /**
+     * The compression state of a channel. Holds the negotiated encodings of all requests
+     * waiting for their response and the codecs of the current request and response.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private static final class State {
+        
+        private final Queue<String> encodings = new ConcurrentLinkedQueue<String>();
+        
+        private ContentInflater inflater;
+        
+        private volatile ContentDeflater deflater;
+        
+        private volatile boolean rejected;
+        
+    }
+    
+}
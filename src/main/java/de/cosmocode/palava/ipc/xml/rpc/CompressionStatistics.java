@@ -0,0 +1,92 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+/**
+ * Exposes counters of the http content compression. The bytes saved by
+ * response compression are {@link #getUncompressedBytes()} minus {@link #getCompressedBytes()}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public interface CompressionStatistics {
+
+    /**
+     * Returns the number of responses which were compressed.
+     * 
+     * @since 1.1
+     * @return the number of compressed responses
+     */
+    long getCompressedResponses();
+    
+    /**
+     * Returns the number of bytes of compressed responses before compression.
+     * 
+     * @since 1.1
+     * @return the uncompressed size of all compressed responses
+     */
+    long getUncompressedBytes();
+    
+    /**
+     * Returns the number of bytes of compressed responses after compression.
+     * 
+     * @since 1.1
+     * @return the compressed size of all compressed responses
+     */
+    long getCompressedBytes();
+    
+    /**
+     * Returns the time spent compressing responses.
+     * 
+     * @since 1.1
+     * @return the compression time in nanoseconds
+     */
+    long getCompressionNanos();
+    
+    /**
+     * Returns the number of requests which were decompressed.
+     * 
+     * @since 1.1
+     * @return the number of decompressed requests
+     */
+    long getDecompressedRequests();
+    
+    /**
+     * Returns the number of bytes of decompressed requests as received.
+     * 
+     * @since 1.1
+     * @return the compressed size of all decompressed requests
+     */
+    long getReceivedBytes();
+    
+    /**
+     * Returns the number of bytes of decompressed requests after decompression.
+     * 
+     * @since 1.1
+     * @return the decompressed size of all decompressed requests
+     */
+    long getDecompressedBytes();
+    
+    /**
+     * Returns the time spent decompressing requests.
+     * 
+     * @since 1.1
+     * @return the decompression time in nanoseconds
+     */
+    long getDecompressionNanos();
+    
+}
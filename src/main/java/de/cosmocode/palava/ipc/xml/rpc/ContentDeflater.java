@@ -0,0 +1,152 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Compresses http content using the gzip or deflate content coding. Content can be
+ * compressed at once or in consecutive parts, e.g. the chunks of a response.
+ * Instances must be used for exactly one content.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@NotThreadSafe
+final class ContentDeflater {
+
+    private static final byte[] GZIP_HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+    
+    private static final int BLOCK = 8192;
+    
+    private final boolean gzip;
+    
+    private final Deflater deflater;
+    
+    private final CRC32 crc = new CRC32();
+    
+    private final byte[] block = new byte[BLOCK];
+    
+    private boolean started;
+    
+    /**
+     * Creates a new deflater.
+     * 
+     * @param gzip true for the gzip content coding, false for deflate
+     * @param level the compression level, from 1 to 9
+     */
+    public ContentDeflater(boolean gzip, int level) {
+        this.gzip = gzip;
+        // gzip uses raw deflate data, deflate uses the zlib format
+        this.deflater = new Deflater(level, gzip);
+    }
+    
+    /**
+     * Compresses the readable bytes of the specified buffer. The returned buffer
+     * may be empty if the compressor needs more input.
+     * 
+     * @since 1.1
+     * @param input the uncompressed content
+     * @return the compressed bytes available so far
+     */
+    public ChannelBuffer deflate(ChannelBuffer input) {
+        final ChannelBuffer output = ChannelBuffers.dynamicBuffer(input.readableBytes() / 4 + GZIP_HEADER.length);
+        start(output);
+        
+        final byte[] bytes;
+        final int offset;
+        final int length = input.readableBytes();
+        if (input.hasArray()) {
+            bytes = input.array();
+            offset = input.arrayOffset() + input.readerIndex();
+        } else {
+            bytes = new byte[length];
+            input.getBytes(input.readerIndex(), bytes);
+            offset = 0;
+        }
+        
+        if (gzip) {
+            crc.update(bytes, offset, length);
+        }
+        deflater.setInput(bytes, offset, length);
+        while (!deflater.needsInput()) {
+            drain(output);
+        }
+        return output;
+    }
+    
+    /**
+     * Completes compression and releases the native resources of this deflater.
+     * 
+     * @since 1.1
+     * @return the remaining compressed bytes
+     */
+    public ChannelBuffer finish() {
+        final ChannelBuffer output = ChannelBuffers.dynamicBuffer(BLOCK);
+        start(output);
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain(output);
+        }
+        if (gzip) {
+            writeIntLE(output, (int) crc.getValue());
+            // the uncompressed size modulo 2^32
+            writeIntLE(output, (int) deflater.getBytesRead());
+        }
+        deflater.end();
+        return output;
+    }
+    
+    /**
+     * Releases the native resources of this deflater without completing compression.
+     * Used if the content is abandoned, e.g. because the channel was closed.
+     * 
+     * @since 1.1
+     */
+    public void end() {
+        deflater.end();
+    }
+    
+    private void start(ChannelBuffer output) {
+        if (started) return;
+        started = true;
+        if (gzip) {
+            output.writeBytes(GZIP_HEADER);
+        }
+    }
+    
+    private void drain(ChannelBuffer output) {
+        final int length = deflater.deflate(block);
+        output.writeBytes(block, 0, length);
+    }
+    
+    private void writeIntLE(ChannelBuffer output, int value) {
+        output.writeByte(value);
+        output.writeByte(value >>> 8);
+        output.writeByte(value >>> 16);
+        output.writeByte(value >>> 24);
+    }
+    
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decompresses http content using the gzip or deflate content coding. Content can be
+ * decompressed at once or in consecutive parts, e.g. the chunks of a request.
+ * Deflate content is accepted in the zlib format as well as raw, as sent by some clients.
+ * Instances must be used for exactly one content.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@NotThreadSafe
+final class ContentInflater {
+
+    private static final int FHCRC = 0x02;
+    private static final int FEXTRA = 0x04;
+    private static final int FNAME = 0x08;
+    private static final int FCOMMENT = 0x10;
+    
+    private static final int GZIP_TRAILER = 8;
+    
+    private static final int BLOCK = 8192;
+    
+    private final boolean gzip;
+    
+    private final int maxLength;
+    
+    private final CRC32 crc = new CRC32();
+    
+    private final byte[] block = new byte[BLOCK];
+    
+    /**
+     * Input received before the header was complete and after the compressed data ended.
+     */
+    private final ChannelBuffer pending = ChannelBuffers.dynamicBuffer(64);
+    
+    private Inflater inflater;
+    
+    private long length;
+    
+    /**
+     * Creates a new inflater.
+     * 
+     * @param gzip true for the gzip content coding, false for deflate
+     * @param maxLength the maximum number of decompressed bytes
+     */
+    public ContentInflater(boolean gzip, int maxLength) {
+        this.gzip = gzip;
+        this.maxLength = maxLength;
+    }
+    
+    /**
+     * Decompresses the readable bytes of the specified buffer.
+     * 
+     * @since 1.1
+     * @param input the compressed content
+     * @return the decompressed bytes available so far
+     * @throws IllegalArgumentException if the input is not valid compressed content
+     * @throws TooLongFrameException if the decompressed content exceeds the maximum length
+     */
+    public ChannelBuffer inflate(ChannelBuffer input) throws TooLongFrameException {
+        final ChannelBuffer output = ChannelBuffers.dynamicBuffer(input.readableBytes() * 4);
+        
+        if (inflater == null) {
+            pending.writeBytes(input, input.readerIndex(), input.readableBytes());
+            if (!start()) return output;
+            // pending collects the trailer from now on
+            final ChannelBuffer received = pending.copy();
+            pending.clear();
+            inflate(received, output);
+        } else if (inflater.finished()) {
+            pending.writeBytes(input, input.readerIndex(), input.readableBytes());
+        } else {
+            inflate(input, output);
+        }
+        return output;
+    }
+    
+    /**
+     * Creates the inflater as soon as the header is complete.
+     */
+    private boolean start() {
+        if (gzip) {
+            final int headerLength = gzipHeaderLength();
+            if (headerLength == -1) return false;
+            pending.skipBytes(headerLength);
+            inflater = new Inflater(true);
+        } else {
+            if (pending.readableBytes() < 2) return false;
+            final int cmf = pending.getUnsignedByte(pending.readerIndex());
+            final int flg = pending.getUnsignedByte(pending.readerIndex() + 1);
+            final boolean zlib = (cmf & 0x0F) == Deflater.DEFLATED && (cmf << 8 | flg) % 31 == 0;
+            inflater = new Inflater(!zlib);
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the length of the gzip header in the pending input, or -1 if it is incomplete.
+     */
+    private int gzipHeaderLength() {
+        final int start = pending.readerIndex();
+        final int end = pending.writerIndex();
+        if (end - start < 10) return -1;
+        Preconditions.checkArgument(pending.getUnsignedByte(start) == 0x1f && 
+            pending.getUnsignedByte(start + 1) == 0x8b, "Not in gzip format");
+        Preconditions.checkArgument(pending.getUnsignedByte(start + 2) == Deflater.DEFLATED, 
+            "Unsupported compression method");
+        final int flags = pending.getUnsignedByte(start + 3);
+        int index = start + 10;
+        if ((flags & FEXTRA) != 0) {
+            if (index + 2 > end) return -1;
+            index += 2 + (pending.getUnsignedByte(index) | pending.getUnsignedByte(index + 1) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            index = zeroTerminated(index, end);
+            if (index == -1) return -1;
+        }
+        if ((flags & FCOMMENT) != 0) {
+            index = zeroTerminated(index, end);
+            if (index == -1) return -1;
+        }
+        if ((flags & FHCRC) != 0) {
+            index += 2;
+        }
+        return index > end ? -1 : index - start;
+    }
+    
+    private int zeroTerminated(int index, int end) {
+        for (int i = index; i < end; i++) {
+            if (pending.getByte(i) == 0) return i + 1;
+        }
+        return -1;
+    }
+    
+    private void inflate(ChannelBuffer input, ChannelBuffer output) throws TooLongFrameException {
+        final int readable = input.readableBytes();
+        if (readable == 0) return;
+        final byte[] bytes;
+        final int offset;
+        if (input.hasArray()) {
+            bytes = input.array();
+            offset = input.arrayOffset() + input.readerIndex();
+        } else {
+            bytes = new byte[readable];
+            input.getBytes(input.readerIndex(), bytes);
+            offset = 0;
+        }
+        
+        inflater.setInput(bytes, offset, readable);
+        try {
+            while (true) {
+                final int inflated = inflater.inflate(block);
+                if (inflated > 0) {
+                    length += inflated;
+                    if (length > maxLength) {
+                        throw new TooLongFrameException("Decompressed content exceeded " + maxLength + " bytes");
+                    }
+                    if (gzip) {
+                        crc.update(block, 0, inflated);
+                    }
+                    output.writeBytes(block, 0, inflated);
+                } else if (inflater.finished()) {
+                    // keep the trailer
+                    final int remaining = inflater.getRemaining();
+                    pending.writeBytes(bytes, offset + readable - remaining, remaining);
+                    break;
+                } else if (inflater.needsDictionary()) {
+                    throw new IllegalArgumentException("Preset dictionaries are not supported");
+                } else {
+                    // needs more input
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+    
+    /**
+     * Completes decompression, verifies the gzip trailer and releases the native
+     * resources of this inflater.
+     * 
+     * @since 1.1
+     * @throws IllegalArgumentException if the content was truncated or corrupted
+     */
+    public void finish() {
+        Preconditions.checkArgument(inflater != null && inflater.finished(), "Truncated compressed content");
+        inflater.end();
+        if (gzip) {
+            Preconditions.checkArgument(pending.readableBytes() >= GZIP_TRAILER, "Missing gzip trailer");
+            final int checksum = readIntLE();
+            final int size = readIntLE();
+            Preconditions.checkArgument(checksum == (int) crc.getValue(), "Corrupt gzip content");
+            Preconditions.checkArgument(size == (int) length, "Corrupt gzip content");
+        }
+    }
+    
+    /**
+     * Releases the native resources of this inflater without completing decompression.
+     * Used if the content is abandoned, e.g. because the request was rejected.
+     * 
+     * @since 1.1
+     */
+    public void end() {
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+    
+    private int readIntLE() {
+        return pending.readUnsignedByte() | pending.readUnsignedByte() << 8 | 
+            pending.readUnsignedByte() << 16 | pending.readUnsignedByte() << 24;
+    }
+    
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable, thread-safe codec for the {@code yyyyMMdd'T'HH:mm:ss} format used by
+ * {@code dateTime.iso8601} values. The format carries no timezone, local times are
+ * interpreted in the timezone the codec was created with. Parsing and formatting
+ * work directly on chars and bytes without intermediate objects. Dates use the
+ * proleptic gregorian calendar.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@Immutable
+public final class DateTimeIso8601Codec {
+
+    /**
+     * The length of an encoded date.
+     */
+    public static final int LENGTH = 17;
+    
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * MILLIS_PER_SECOND;
+    
+    private static final int DAYS_PER_ERA = 146097;
+    
+    /**
+     * Days between 0000-03-01 and 1970-01-01.
+     */
+    private static final int EPOCH_SHIFT = 719468;
+    
+    private final TimeZone timeZone;
+    
+    public DateTimeIso8601Codec(TimeZone timeZone) {
+        Preconditions.checkNotNull(timeZone, "TimeZone");
+        // private copy, time zones are mutable
+        this.timeZone = (TimeZone) timeZone.clone();
+    }
+    
+    public TimeZone getTimeZone() {
+        return (TimeZone) timeZone.clone();
+    }
+    
+    /**
+     * Parses the specified text.
+     * 
+     * @since 1.1
+     * @param text the encoded date
+     * @return the parsed date
+     * @throws NullPointerException if text is null
+     * @throws IllegalArgumentException if text is not a valid date
+     */
+    public Date parseDate(CharSequence text) {
+        return new Date(parse(text));
+    }
+    
+    /**
+     * Parses the specified text.
+     * 
+     * @since 1.1
+     * @param text the encoded date
+     * @return the parsed date in milliseconds since the epoch
+     * @throws NullPointerException if text is null
+     * @throws IllegalArgumentException if text is not a valid date
+     */
+    public long parse(CharSequence text) {
+        Preconditions.checkArgument(text.length() == LENGTH, "%s is not a valid date", text);
+        Preconditions.checkArgument(text.charAt(8) == 'T' && text.charAt(11) == ':' && text.charAt(14) == ':',
+            "%s is not a valid date", text);
+        return toMillis(
+            digits(text.charAt(0), text.charAt(1)) * 100 + digits(text.charAt(2), text.charAt(3)),
+            digits(text.charAt(4), text.charAt(5)),
+            digits(text.charAt(6), text.charAt(7)),
+            digits(text.charAt(9), text.charAt(10)),
+            digits(text.charAt(12), text.charAt(13)),
+            digits(text.charAt(15), text.charAt(16)));
+    }
+    
+    /**
+     * Parses {@link #LENGTH} ascii bytes of the specified array, starting at offset.
+     * 
+     * @since 1.1
+     * @param bytes the encoded date
+     * @param offset the start of the encoded date
+     * @return the parsed date in milliseconds since the epoch
+     * @throws NullPointerException if bytes is null
+     * @throws IndexOutOfBoundsException if bytes contains less than {@link #LENGTH} bytes after offset
+     * @throws IllegalArgumentException if the bytes are not a valid date
+     */
+    public long parse(byte[] bytes, int offset) {
+        if (offset < 0 || offset + LENGTH > bytes.length) throw new IndexOutOfBoundsException();
+        final int o = offset;
+        Preconditions.checkArgument(bytes[o + 8] == 'T' && bytes[o + 11] == ':' && bytes[o + 14] == ':',
+            "Not a valid date");
+        return toMillis(
+            digits(bytes[o], bytes[o + 1]) * 100 + digits(bytes[o + 2], bytes[o + 3]),
+            digits(bytes[o + 4], bytes[o + 5]),
+            digits(bytes[o + 6], bytes[o + 7]),
+            digits(bytes[o + 9], bytes[o + 10]),
+            digits(bytes[o + 12], bytes[o + 13]),
+            digits(bytes[o + 15], bytes[o + 16]));
+    }
+    
+    private static int digits(int high, int low) {
+        if (high < '0' || high > '9' || low < '0' || low > '9') {
+            throw new IllegalArgumentException(String.format("%s%s is not a number", (char) high, (char) low));
+        }
+        return (high - '0') * 10 + (low - '0');
+    }
+    
+    private long toMillis(int year, int month, int day, int hour, int minute, int second) {
+        Preconditions.checkArgument(month >= 1 && month <= 12, "Invalid month %s", month);
+        Preconditions.checkArgument(day >= 1 && day <= daysOf(year, month), "Invalid day %s", day);
+        Preconditions.checkArgument(hour <= 23, "Invalid hour %s", hour);
+        Preconditions.checkArgument(minute <= 59, "Invalid minute %s", minute);
+        Preconditions.checkArgument(second <= 59, "Invalid second %s", second);
+        
+        final long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY + 
+            ((hour * 60L + minute) * 60L + second) * MILLIS_PER_SECOND;
+        
+        // local time to utc, the second lookup handles daylight saving transitions
+        final int guess = timeZone.getOffset(local - timeZone.getRawOffset());
+        final int offset = timeZone.getOffset(local - guess);
+        return local - offset;
+    }
+    
+    private static int daysOf(int year, int month) {
+        switch (month) {
+            case 2: {
+                final boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+            }
+            case 4:
+            case 6:
+            case 9:
+            case 11: {
+                return 30;
+            }
+            default: {
+                return 31;
+            }
+        }
+    }
+    
+    /**
+     * Formats the specified date.
+     * 
+     * @since 1.1
+     * @param date the date
+     * @return the encoded date
+     * @throws NullPointerException if date is null
+     * @throws IllegalArgumentException if the year of date is not within [0, 9999]
+     */
+    public String format(Date date) {
+        final char[] chars = new char[LENGTH];
+        format(date.getTime(), chars, 0);
+        return new String(chars);
+    }
+    
+    /**
+     * Formats the specified date into {@link #LENGTH} chars, starting at offset.
+     * 
+     * @since 1.1
+     * @param millis the date in milliseconds since the epoch
+     * @param target the target array
+     * @param offset the start index in target
+     * @throws NullPointerException if target is null
+     * @throws IndexOutOfBoundsException if target has less than {@link #LENGTH} chars after offset
+     * @throws IllegalArgumentException if the year of date is not within [0, 9999]
+     */
+    public void format(long millis, char[] target, int offset) {
+        if (offset < 0 || offset + LENGTH > target.length) throw new IndexOutOfBoundsException();
+        long fields = fields(millis);
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            if (i == 8) {
+                target[offset + i] = 'T';
+            } else if (i == 11 || i == 14) {
+                target[offset + i] = ':';
+            } else {
+                target[offset + i] = (char) ('0' + fields % 10);
+                fields /= 10;
+            }
+        }
+    }
+    
+    /**
+     * Formats the specified date into {@link #LENGTH} ascii bytes, starting at offset.
+     * 
+     * @since 1.1
+     * @param millis the date in milliseconds since the epoch
+     * @param target the target array
+     * @param offset the start index in target
+     * @throws NullPointerException if target is null
+     * @throws IndexOutOfBoundsException if target has less than {@link #LENGTH} bytes after offset
+     * @throws IllegalArgumentException if the year of date is not within [0, 9999]
+     */
+    public void format(long millis, byte[] target, int offset) {
+        if (offset < 0 || offset + LENGTH > target.length) throw new IndexOutOfBoundsException();
+        long fields = fields(millis);
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            if (i == 8) {
+                target[offset + i] = 'T';
+            } else if (i == 11 || i == 14) {
+                target[offset + i] = ':';
+            } else {
+                target[offset + i] = (byte) ('0' + fields % 10);
+                fields /= 10;
+            }
+        }
+    }
+    
+    /**
+     * Computes the fields of the specified date in the local timezone, packed
+     * as decimal digits yyyyMMddHHmmss into a single long.
+     */
+    private long fields(long millis) {
+        final long local = millis + timeZone.getOffset(millis);
+        final long days = floorDiv(local, MILLIS_PER_DAY);
+        final long secondOfDay = (local - days * MILLIS_PER_DAY) / MILLIS_PER_SECOND;
+        
+        final long z = days + EPOCH_SHIFT;
+        final long era = (z >= 0 ? z : z - DAYS_PER_ERA + 1) / DAYS_PER_ERA;
+        final long dayOfEra = z - era * DAYS_PER_ERA;
+        final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        final long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        final long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        
+        Preconditions.checkArgument(year >= 0 && year <= 9999, "Year %s can't be formatted", year);
+        
+        final long hour = secondOfDay / 3600;
+        final long minute = secondOfDay / 60 % 60;
+        final long second = secondOfDay % 60;
+        return ((((year * 100 + month) * 100 + day) * 100 + hour) * 100 + minute) * 100 + second;
+    }
+    
+    private static long floorDiv(long dividend, long divisor) {
+        final long quotient = dividend / divisor;
+        return (dividend % divisor != 0 && (dividend < 0) != (divisor < 0)) ? quotient - 1 : quotient;
+    }
+    
+    private static long daysFromCivil(int year, int month, int day) {
+        final long y = month <= 2 ? year - 1 : year;
+        final long era = (y >= 0 ? y : y - 399) / 400;
+        final long yearOfEra = y - era * 400;
+        final long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_ERA + dayOfEra - EPOCH_SHIFT;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("DateTimeIso8601Codec(%s)", timeZone.getID());
+    }
+    
+}
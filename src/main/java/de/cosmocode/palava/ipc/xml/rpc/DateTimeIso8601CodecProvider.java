@@ -0,0 +1,52 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.TimeZone;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.name.Named;
+
+/**
+ * {@link Provider} implementation for {@link DateTimeIso8601Codec}s. Dates are
+ * interpreted in the default timezone of the jvm unless {@link XmlRpc#TIME_ZONE}
+ * is configured.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+final class DateTimeIso8601CodecProvider implements Provider<DateTimeIso8601Codec> {
+
+    private TimeZone timeZone = TimeZone.getDefault();
+    
+    @Inject(optional = true)
+    public void setTimeZone(@Named(XmlRpc.TIME_ZONE) String id) {
+        Preconditions.checkNotNull(id, "Id");
+        final TimeZone zone = TimeZone.getTimeZone(id);
+        // unknown ids silently fall back to GMT
+        Preconditions.checkArgument(zone.getID().equals(id), "Unknown timezone %s", id);
+        this.timeZone = zone;
+    }
+    
+    @Override
+    public DateTimeIso8601Codec get() {
+        return new DateTimeIso8601Codec(timeZone);
+    }
+    
+}
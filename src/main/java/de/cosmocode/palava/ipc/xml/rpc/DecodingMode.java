@@ -0,0 +1,46 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+/**
+ * Defines the available strategies to decode incoming xml-rpc requests.
+ * The mode can be configured using {@link XmlRpc#DECODING}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public enum DecodingMode {
+    
+    /**
+     * Unmarshals requests into the generated jaxb object tree which is
+     * afterwards adapted into an {@link de.cosmocode.palava.ipc.IpcCall}.
+     */
+    JAXB,
+    
+    /**
+     * Pulls requests directly from the underlying bytes using StAX without
+     * creating an intermediate object tree.
+     */
+    STREAMING,
+    
+    /**
+     * Feeds http chunks into a non-blocking parser as they arrive, without
+     * aggregating the request body first.
+     */
+    INCREMENTAL;
+    
+}
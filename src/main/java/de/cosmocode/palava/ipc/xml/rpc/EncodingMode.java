@@ -0,0 +1,40 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+/**
+ * Defines the available strategies to encode outgoing xml-rpc responses.
+ * The mode can be configured using {@link XmlRpc#ENCODING}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public enum EncodingMode {
+    
+    /**
+     * Adapts results into the generated jaxb object tree which is
+     * afterwards marshalled into bytes.
+     */
+    JAXB,
+    
+    /**
+     * Writes results directly into the outgoing buffer without creating
+     * an intermediate object tree.
+     */
+    STREAMING;
+    
+}
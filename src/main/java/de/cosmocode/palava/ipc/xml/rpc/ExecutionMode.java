@@ -0,0 +1,47 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+/**
+ * Defines the available strategies to execute incoming xml-rpc calls.
+ * The mode can be configured using {@link XmlRpc#EXECUTION}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public enum ExecutionMode {
+    
+    /**
+     * Executes calls on the netty worker thread which decoded them. A slow
+     * command blocks all other connections handled by the same worker.
+     */
+    INLINE,
+    
+    /**
+     * Hands calls off to the {@link java.util.concurrent.ExecutorService} bound using
+     * {@link XmlRpc}, e.g. the palava named executor {@link XmlRpc#EXECUTOR}, and writes
+     * the response once the call completed.
+     */
+    EXECUTOR,
+    
+    /**
+     * Runs every call on a new virtual thread. Suited for commands which block on
+     * jdbc or remote services. Requires a Java 21 or later runtime.
+     */
+    VIRTUAL;
+    
+}
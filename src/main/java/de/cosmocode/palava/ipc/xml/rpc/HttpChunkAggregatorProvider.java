@@ -0,0 +1,48 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.name.Named;
+
+/**
+ * {@link Provider} implementation for stateful {@link HttpChunkAggregator}s. The maximum
+ * content length defaults to 1 MiB and can be configured using {@link XmlRpc#MAX_CONTENT_LENGTH}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+final class HttpChunkAggregatorProvider implements Provider<HttpChunkAggregator> {
+
+    private int maxContentLength = 1048576;
+    
+    @Inject(optional = true)
+    public void setMaxContentLength(@Named(XmlRpc.MAX_CONTENT_LENGTH) int maxContentLength) {
+        Preconditions.checkArgument(maxContentLength > 0, "MaxContentLength must be positive");
+        this.maxContentLength = maxContentLength;
+    }
+    
+    @Override
+    public HttpChunkAggregator get() {
+        return new HttpChunkAggregator(maxContentLength);
+    }
+    
+}
@@ -19,24 +19,32 @@ package de.cosmocode.palava.ipc.xml.rpc;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
 
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.apache.commons.lang.StringUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandler.Sharable;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
 import org.jboss.netty.handler.codec.http.Cookie;
 import org.jboss.netty.handler.codec.http.CookieDecoder;
 import org.jboss.netty.handler.codec.http.CookieEncoder;
 import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpChunk;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpHeaders.Names;
 import org.jboss.netty.handler.codec.http.HttpRequest;
@@ -47,6 +55,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
@@ -58,7 +67,28 @@ import de.cosmocode.palava.ipc.protocol.DetachedConnection;
 /**
  * A {@link ChannelHandler} which decodes {@link HttpRequest}s
  * into {@link ChannelBuffer}s and encodes {@link ChannelBuffer}s into
- * {@link HttpResponse}s.
+ * {@link HttpResponse}s. The content of chunked requests is passed
+ * upstream as {@link HttpChunk}s, {@link HttpChunk}s written downstream
+ * are sent as a chunked response.
+ * 
+ * <p>
+ *   Pipelined requests are queued per channel and answered in order. Once
+ *   {@link XmlRpc#PIPELINING_DEPTH} requests (default 16) are waiting for their response,
+ *   reading from the channel is suspended until a response has been written.
+ * </p>
+ * 
+ * <p>
+ *   Requests carrying an {@code Idempotency-Key} header execute at most once per key, retries
+ *   wait for the running execution or replay its response, see {@link IdempotencyTable}.
+ *   Keys are scoped by the session of the request, so clients can't replay each others responses.
+ *   Requests without a session cookie and chunked requests are executed regardless of their key,
+ *   responses which are sent in chunks are not stored.
+ * </p>
+ * 
+ * <p>
+ *   Requests exceeding the limits of the http codecs, e.g. {@link XmlRpc#MAX_CONTENT_LENGTH},
+ *   are answered with {@code 413 Request Entity Too Large} and the channel is closed.
+ * </p>
  *
  * @since 1.0
  * @author Willi Schoenborn
@@ -69,16 +99,27 @@ final class HttpHandler extends SimpleChannelHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(HttpHandler.class);
     
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    
     private final IpcSessionProvider provider;
     
     private final ConnectionManager manager;
+    
+    private final WireLogger wireLogger;
+    
+    private final IdempotencyTable idempotency;
 
     private String cookieName = "psessid";
+    
+    private int pipeliningDepth = 16;
 
     @Inject
-    public HttpHandler(IpcSessionProvider provider, ConnectionManager manager) {
+    public HttpHandler(IpcSessionProvider provider, ConnectionManager manager, WireLogger wireLogger,
+        IdempotencyTable idempotency) {
         this.provider = Preconditions.checkNotNull(provider, "Provider");
         this.manager = Preconditions.checkNotNull(manager, "Manager");
+        this.wireLogger = Preconditions.checkNotNull(wireLogger, "WireLogger");
+        this.idempotency = Preconditions.checkNotNull(idempotency, "Idempotency");
     }
 
     @Inject(optional = true)
@@ -86,6 +127,63 @@ final class HttpHandler extends SimpleChannelHandler {
         this.cookieName = Preconditions.checkNotNull(cookieName, "CookieName");
     }
     
+    @Inject(optional = true)
+    public void setPipeliningDepth(@Named(XmlRpc.PIPELINING_DEPTH) int pipeliningDepth) {
+        Preconditions.checkArgument(pipeliningDepth > 0, "PipeliningDepth must be positive");
+        this.pipeliningDepth = pipeliningDepth;
+    }
+    
+    @Override
+    public void channelOpen(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        context.setAttachment(new Exchanges(event.getChannel()));
+        super.channelOpen(context, event);
+    }
+    
+    private Exchanges getExchanges(ChannelHandlerContext context) {
+        final Exchanges exchanges = Exchanges.class.cast(context.getAttachment());
+        Preconditions.checkState(exchanges != null, "No exchanges set");
+        return exchanges;
+    }
+    
+    @Override
+    public void channelClosed(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        // responses of pending requests will never be written, retries have to execute again
+        for (Attachment attachment : getExchanges(context).snapshot()) {
+            final IdempotencyTable.Entry entry = attachment.getIdempotencyEntry();
+            if (entry == null || attachment.isStarted()) continue;
+            idempotency.abandon(entry, new IllegalStateException(String.format(
+                "Channel closed before the response of idempotency key %s has been written", entry.getKey())));
+        }
+        super.channelClosed(context, event);
+    }
+    
+    @Override
+    public void exceptionCaught(ChannelHandlerContext context, ExceptionEvent event) throws Exception {
+        if (event.getCause() instanceof TooLongFrameException) {
+            // the http codecs can't recover, every remaining chunk of the request would fail again
+            if (getExchanges(context).reject()) {
+                LOG.debug("Rejecting request in channel {}: {}", event.getChannel(), event.getCause().getMessage());
+                rejectTooLarge(event.getChannel());
+            }
+        } else {
+            super.exceptionCaught(context, event);
+        }
+    }
+    
+    /**
+     * Answers an oversized request with {@code 413 Request Entity Too Large} and closes
+     * the specified channel. Responses of preceding pipelined requests are discarded.
+     * 
+     * @param channel the channel of the request
+     */
+    static void rejectTooLarge(Channel channel) {
+        channel.setReadable(false);
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, 
+            HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+        response.setHeader(Names.CONTENT_LENGTH, 0);
+        channel.write(response).addListener(ChannelFutureListener.CLOSE);
+    }
+    
     @Override
     public void messageReceived(ChannelHandlerContext context, MessageEvent event) throws Exception {
         final Object message = event.getMessage();
@@ -107,9 +205,54 @@ final class HttpHandler extends SimpleChannelHandler {
             final DetachedConnection connection = manager.get(event.getChannel());
             connection.attachTo(session);
             
-            context.setAttachment(new Attachment(request, cookies));
-            LOG.trace("Decoding {} into channel buffer", request);
-            Channels.fireMessageReceived(context, request.getContent(), remoteAddress);
+            final boolean captured = wireLogger.sample();
+            if (captured && !request.isChunked()) {
+                wireLogger.logRequest(event.getChannel(), request.getContent());
+            }
+            
+            final String header = request.isChunked() ? null : request.getHeader(IDEMPOTENCY_KEY);
+            final String key;
+            if (header == null) {
+                key = null;
+            } else if (sessionId == null) {
+                // clients behind the same address would share their keys
+                LOG.debug("Ignoring idempotency key {} of request without session", header);
+                key = null;
+            } else {
+                key = session.getSessionId() + "/" + header;
+            }
+            
+            final IdempotentReplay replay;
+            final IdempotencyTable.Entry leading;
+            if (key == null) {
+                replay = null;
+                leading = null;
+            } else {
+                final IdempotentReplay candidate = new IdempotentReplay();
+                final byte[] fingerprint = IdempotencyTable.fingerprint(request.getContent());
+                leading = idempotency.join(key, fingerprint, candidate);
+                replay = leading == null ? candidate : null;
+            }
+            
+            final boolean expectsContinue = request.isChunked() && HttpHeaders.is100ContinueExpected(request);
+            final Attachment attachment = new Attachment(request, session, cookies, captured, leading, 
+                expectsContinue);
+            final boolean first = getExchanges(context).offer(attachment);
+            
+            if (request.isChunked()) {
+                // the content follows in http chunks which are passed upstream as they arrive,
+                // sending 100 continue while a preceding response is pending could interleave both,
+                // it's sent once the request is next, see writeRequested
+                if (first) {
+                    sendContinue(context, event.getChannel(), attachment);
+                }
+            } else if (replay == null) {
+                LOG.trace("Decoding {} into channel buffer", request);
+                Channels.fireMessageReceived(context, request.getContent(), remoteAddress);
+            } else {
+                LOG.debug("Replaying response of idempotency key {}", key);
+                Channels.fireMessageReceived(context, replay, remoteAddress);
+            }
         } else {
             context.sendUpstream(event);
         }
@@ -136,35 +279,29 @@ final class HttpHandler extends SimpleChannelHandler {
     public void writeRequested(ChannelHandlerContext context, MessageEvent event) throws Exception {
         final Object message = event.getMessage();
         if (message instanceof ChannelBuffer) {
-            final Attachment attachment = Attachment.class.cast(context.getAttachment());
-            Preconditions.checkState(attachment != null, "No attachment set");
+            final Exchanges exchanges = getExchanges(context);
+            final Attachment attachment = exchanges.peek();
+            Preconditions.checkState(attachment != null, "No pending request");
             final ChannelBuffer content = ChannelBuffer.class.cast(message);
             
             LOG.trace("Encoding {} into http response", content);
-            final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
-            
-            // setting all requires headers
-            response.setHeader(Names.CONTENT_TYPE, "text/xml");
+            final HttpResponse response = newResponse(attachment);
             response.setHeader(Names.CONTENT_LENGTH, content.readableBytes());
+            response.setContent(content);
             
-            final DetachedConnection connection = manager.get(event.getChannel());
-            final IpcSession session = connection.getSession();
-            
-            final CookieEncoder cookieEncoder = new CookieEncoder(true);
-            for (Cookie cookie : attachment.getCookies()) {
-                cookieEncoder.addCookie(cookie);
+            if (attachment.isCaptured()) {
+                wireLogger.logResponse(event.getChannel(), content);
             }
             
-            final String sessionId = session.getSessionId();
-            LOG.trace("Adding session cookie {}/{}", cookieName, sessionId);
-            cookieEncoder.addCookie(cookieName, sessionId);
-            
-            response.setHeader(Names.SET_COOKIE, cookieEncoder.encode());
-            
-            response.setContent(content);
+            if (attachment.getIdempotencyEntry() != null) {
+                final byte[] bytes = new byte[content.readableBytes()];
+                content.getBytes(content.readerIndex(), bytes);
+                idempotency.land(attachment.getIdempotencyEntry(), bytes);
+            }
             
             final ChannelFuture future = event.getFuture();
             Channels.write(context, future, response, event.getRemoteAddress());
+            sendContinue(context, event.getChannel(), exchanges.poll());
             
             if (HttpHeaders.isKeepAlive(attachment.getRequest())) {
                 LOG.trace("Http request was marked keep-alive, not closing the connection.");
@@ -172,14 +309,159 @@ final class HttpHandler extends SimpleChannelHandler {
                 LOG.trace("Http request was not marked as keep-alive, closing connection...");
                 future.addListener(ChannelFutureListener.CLOSE);
             }
+        } else if (message instanceof HttpChunk) {
+            final Exchanges exchanges = getExchanges(context);
+            final Attachment attachment = exchanges.peek();
+            Preconditions.checkState(attachment != null, "No pending request");
+            final HttpChunk chunk = HttpChunk.class.cast(message);
+            
+            // http/1.0 clients don't understand chunks, the body ends when the connection is closed
+            final boolean chunked = attachment.getRequest().getProtocolVersion() != HttpVersion.HTTP_1_0;
+            
+            if (!attachment.isStarted()) {
+                LOG.trace("Starting chunked http response");
+                final HttpResponse response = newResponse(attachment);
+                if (chunked) {
+                    response.setHeader(Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+                    response.setChunked(true);
+                }
+                Channels.write(context, Channels.future(event.getChannel()), response, event.getRemoteAddress());
+                attachment.setStarted();
+                
+                final IdempotencyTable.Entry entry = attachment.getIdempotencyEntry();
+                if (entry != null) {
+                    idempotency.abandon(entry, new IllegalStateException(String.format(
+                        "Response of idempotency key %s is streamed and can't be replayed", entry.getKey())));
+                }
+            }
+            
+            final ChannelFuture future = event.getFuture();
+            Channels.write(context, future, chunk, event.getRemoteAddress());
+            if (chunk.isLast()) {
+                sendContinue(context, event.getChannel(), exchanges.poll());
+            }
+            
+            if (chunk.isLast() && !(chunked && HttpHeaders.isKeepAlive(attachment.getRequest()))) {
+                LOG.trace("Closing connection after chunked http response");
+                future.addListener(ChannelFutureListener.CLOSE);
+            }
         } else {
             context.sendDownstream(event);
         }
     }
     
+    private void sendContinue(ChannelHandlerContext context, Channel channel, Attachment attachment) {
+        if (attachment == null || !attachment.isContinueExpected()) return;
+        LOG.trace("Sending 100 continue to {}", channel);
+        Channels.write(context, Channels.future(channel), 
+            new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+    }
+    
+    private HttpResponse newResponse(Attachment attachment) {
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        
+        // setting all requires headers
+        response.setHeader(Names.CONTENT_TYPE, "text/xml");
+        
+        // the connection may already be attached to the session of a pipelined request
+        final IpcSession session = attachment.getSession();
+        
+        final CookieEncoder cookieEncoder = new CookieEncoder(true);
+        for (Cookie cookie : attachment.getCookies()) {
+            cookieEncoder.addCookie(cookie);
+        }
+        
+        final String sessionId = session.getSessionId();
+        LOG.trace("Adding session cookie {}/{}", cookieName, sessionId);
+        cookieEncoder.addCookie(cookieName, sessionId);
+        
+        response.setHeader(Names.SET_COOKIE, cookieEncoder.encode());
+        return response;
+    }
+    
     /**
-     * Internal attachment which can be used to pass an {@link HttpRequest} and
-     * a set of {@link Cookie}s as an attachment using {@link ChannelHandlerContext#setAttachment(Object)}.
+     * The requests of a channel which are waiting for their response, in the order
+     * they arrived. Used as an attachment using {@link ChannelHandlerContext#setAttachment(Object)}.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private final class Exchanges {
+        
+        private final Channel channel;
+        
+        private final Queue<Attachment> pending = new LinkedList<Attachment>();
+        
+        private boolean suspended;
+        
+        private boolean rejected;
+        
+        public Exchanges(Channel channel) {
+            this.channel = channel;
+        }
+        
+        /**
+         * Adds a request and suspends reading if the pipelining depth has been reached.
+         * 
+         * @param attachment the request
+         * @return true if no other request is waiting for its response
+         */
+        public synchronized boolean offer(Attachment attachment) {
+            pending.add(attachment);
+            if (pending.size() >= pipeliningDepth && !suspended) {
+                LOG.trace("Suspending reads of {} with {} pending requests", channel, pending.size());
+                suspended = true;
+                channel.setReadable(false);
+            }
+            return pending.size() == 1;
+        }
+        
+        /**
+         * Marks the channel as rejected.
+         * 
+         * @return true if the channel has not been rejected before
+         */
+        public synchronized boolean reject() {
+            if (rejected) return false;
+            rejected = true;
+            return true;
+        }
+        
+        public synchronized Attachment peek() {
+            return pending.peek();
+        }
+        
+        /**
+         * Returns a copy of the requests waiting for their response.
+         * 
+         * @return all pending requests
+         */
+        public synchronized List<Attachment> snapshot() {
+            return Lists.newArrayList(pending);
+        }
+        
+        /**
+         * Removes the answered request and resumes reading if reading has been suspended.
+         * 
+         * @return the request which is waiting for its response next, or null if there is none
+         */
+        public synchronized Attachment poll() {
+            pending.poll();
+            if (pending.size() < pipeliningDepth && suspended) {
+                LOG.trace("Resuming reads of {}", channel);
+                suspended = false;
+                channel.setReadable(true);
+            }
+            return pending.peek();
+        }
+        
+    }
+    
+    /**
+     * Internal state of a single request which holds the {@link HttpRequest}, its {@link IpcSession},
+     * a set of {@link Cookie}s, whether the request was captured by the {@link WireLogger},
+     * the idempotency entry if the request has to store its response and whether
+     * the client waits for {@code 100 Continue} before sending the content.
      *
      * @since 1.0
      * @author Willi Schoenborn
@@ -188,21 +470,60 @@ final class HttpHandler extends SimpleChannelHandler {
         
         private final HttpRequest request;
         
+        private final IpcSession session;
+        
         private final Set<Cookie> cookies;
+        
+        private final boolean captured;
+        
+        private final IdempotencyTable.Entry idempotencyEntry;
+        
+        private final boolean continueExpected;
+        
+        private boolean started;
 
-        public Attachment(HttpRequest request, Set<Cookie> cookies) {
+        public Attachment(HttpRequest request, IpcSession session, Set<Cookie> cookies, boolean captured, 
+            IdempotencyTable.Entry idempotencyEntry, boolean continueExpected) {
             this.request = request;
+            this.session = session;
             this.cookies = cookies;
+            this.captured = captured;
+            this.idempotencyEntry = idempotencyEntry;
+            this.continueExpected = continueExpected;
         }
         
         public HttpRequest getRequest() {
             return request;
         }
         
+        public IpcSession getSession() {
+            return session;
+        }
+        
         public Set<Cookie> getCookies() {
             return cookies;
         }
         
+        public boolean isCaptured() {
+            return captured;
+        }
+        
+        public IdempotencyTable.Entry getIdempotencyEntry() {
+            return idempotencyEntry;
+        }
+        
+        public boolean isContinueExpected() {
+            return continueExpected;
+        }
+        
+        public boolean isStarted() {
+            return started;
+        }
+        
+        public void setStarted() {
+            this.started = true;
+        }
+        
     }
     
 }
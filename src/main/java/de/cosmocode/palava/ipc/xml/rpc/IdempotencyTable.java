@@ -0,0 +1,290 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * Remembers the serialized responses of requests carrying an {@code Idempotency-Key} header,
+ * see {@link HttpHandler}. The first request of a key executes, retries of it either wait
+ * for the running execution or replay the stored response. Retries have to send the
+ * same request body, otherwise they are answered with a fault.
+ * 
+ * <p>
+ *   The table holds up to {@link XmlRpc#IDEMPOTENCY_MAX_SIZE} responses (default 1024) for
+ *   {@link XmlRpc#IDEMPOTENCY_TTL} {@link XmlRpc#IDEMPOTENCY_TTL_UNIT} (default 5 minutes) after
+ *   they have been written. Keys in flight expire the same time after they have been joined,
+ *   which fails the retries waiting for them. Until then they are not evicted, the table
+ *   may exceed its size by the number of requests currently executing.
+ * </p>
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class IdempotencyTable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IdempotencyTable.class);
+    
+    private final Map<String, Entry> entries = Maps.newLinkedHashMap();
+    
+    private int maxSize = 1024;
+    
+    private long ttl = 5;
+    
+    private TimeUnit ttlUnit = TimeUnit.MINUTES;
+    
+    private Ticker ticker = Ticker.systemTicker();
+    
+    @Inject(optional = true)
+    public void setMaxSize(@Named(XmlRpc.IDEMPOTENCY_MAX_SIZE) int maxSize) {
+        Preconditions.checkArgument(maxSize > 0, "MaxSize must be positive");
+        this.maxSize = maxSize;
+    }
+    
+    @Inject(optional = true)
+    public void setTtl(@Named(XmlRpc.IDEMPOTENCY_TTL) long ttl) {
+        Preconditions.checkArgument(ttl > 0, "Ttl must be positive");
+        this.ttl = ttl;
+    }
+    
+    @Inject(optional = true)
+    public void setTtlUnit(@Named(XmlRpc.IDEMPOTENCY_TTL_UNIT) TimeUnit ttlUnit) {
+        this.ttlUnit = Preconditions.checkNotNull(ttlUnit, "TtlUnit");
+    }
+    
+    /**
+     * Sets the ticker used to expire keys, e.g. a fake one in tests.
+     * 
+     * @param ticker the ticker
+     */
+    void setTicker(Ticker ticker) {
+        this.ticker = Preconditions.checkNotNull(ticker, "Ticker");
+    }
+    
+    /**
+     * Computes the fingerprint of a request body which is used to detect
+     * keys being reused for different requests.
+     * 
+     * @param content the request body
+     * @return the sha-256 hash of content
+     */
+    static byte[] fingerprint(ChannelBuffer content) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(content.toByteBuffer());
+        return digest.digest();
+    }
+    
+    /**
+     * Joins the specified key. The first request of a key has to execute, followed by
+     * {@link #land(Entry, byte[])} or {@link #abandon(Entry, Throwable)} of the returned entry.
+     * Retries are completed with a replay of the response, immediately if it is already known.
+     * 
+     * @param key the idempotency key
+     * @param fingerprint the fingerprint of the request body
+     * @param completion the completion of a retry
+     * @return the new entry if the caller has to execute the request, null if completion will be completed
+     */
+    Entry join(String key, byte[] fingerprint, CallCompletion completion) {
+        Preconditions.checkNotNull(key, "Key");
+        Preconditions.checkNotNull(fingerprint, "Fingerprint");
+        Preconditions.checkNotNull(completion, "Completion");
+        final List<Entry> expired = Lists.newArrayList();
+        Entry created = null;
+        final Object response;
+        synchronized (entries) {
+            final long now = ticker.read();
+            final Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired(now)) {
+                entries.remove(key);
+                expired.add(entry);
+            }
+            if (entry == null || entry.isExpired(now)) {
+                created = new Entry(key, fingerprint, now + ttlUnit.toNanos(ttl));
+                entries.put(key, created);
+                evict(expired, now);
+                response = null;
+            } else if (!Arrays.equals(fingerprint, entry.fingerprint)) {
+                response = new XmlRpcFaultException(XmlRpcFaultException.INVALID_XML_RPC, 
+                    String.format("Idempotency key %s has been used for a different request", key));
+            } else if (entry.bytes == null) {
+                LOG.trace("Attaching retry of {} to the running execution", key);
+                entry.waiting.add(completion);
+                return null;
+            } else {
+                LOG.trace("Replaying {} bytes for {}", entry.bytes.length, key);
+                response = ChannelBuffers.wrappedBuffer(entry.bytes);
+            }
+        }
+        for (Entry entry : expired) {
+            entry.fail();
+        }
+        if (response == null) {
+            return created;
+        } else {
+            completion.complete(response);
+            return null;
+        }
+    }
+    
+    private void evict(List<Entry> expired, long now) {
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (entry.bytes != null) {
+                iterator.remove();
+            } else if (entry.isExpired(now)) {
+                iterator.remove();
+                expired.add(entry);
+            }
+        }
+    }
+    
+    /**
+     * Stores the response of the specified entry and completes all retries waiting for it.
+     * Entries which are no longer in flight, because they expired, have been abandoned or
+     * replaced by a later request of the same key, are ignored.
+     * 
+     * @param entry the entry returned by {@link #join(String, byte[], CallCompletion)}
+     * @param bytes the serialized response
+     */
+    void land(Entry entry, byte[] bytes) {
+        Preconditions.checkNotNull(entry, "Entry");
+        Preconditions.checkNotNull(bytes, "Bytes");
+        final List<CallCompletion> waiting;
+        synchronized (entries) {
+            if (entries.get(entry.key) != entry || entry.bytes != null) {
+                LOG.debug("Dropping response of {} which is no longer in flight", entry.key);
+                return;
+            }
+            entry.bytes = bytes;
+            entry.expires = ticker.read() + ttlUnit.toNanos(ttl);
+            waiting = entry.waiting;
+            entry.waiting = null;
+        }
+        for (CallCompletion completion : waiting) {
+            completion.complete(ChannelBuffers.wrappedBuffer(bytes));
+        }
+    }
+    
+    /**
+     * Forgets the specified entry without storing its response, e.g. because it can't be replayed.
+     * Retries waiting for it are completed with the specified cause, later ones execute again.
+     * Entries which are no longer in flight are ignored.
+     * 
+     * @param entry the entry returned by {@link #join(String, byte[], CallCompletion)}
+     * @param cause the cause passed to waiting retries
+     */
+    void abandon(Entry entry, Throwable cause) {
+        Preconditions.checkNotNull(entry, "Entry");
+        Preconditions.checkNotNull(cause, "Cause");
+        synchronized (entries) {
+            if (entries.get(entry.key) != entry || entry.bytes != null) {
+                LOG.debug("Ignoring abandoned {} which is no longer in flight", entry.key);
+                return;
+            }
+            entries.remove(entry.key);
+        }
+        for (CallCompletion completion : entry.waiting) {
+            completion.complete(cause);
+        }
+    }
+    
+    /**
+     * Returns the number of keys in flight or stored.
+     * 
+     * @return the number of keys
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    /**
+     * A key in flight or its stored response. The entry returned by
+     * {@link IdempotencyTable#join(String, byte[], CallCompletion)} identifies
+     * the execution which has to land or abandon it.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    static final class Entry {
+        
+        private final String key;
+        
+        private final byte[] fingerprint;
+        
+        private List<CallCompletion> waiting = Lists.newArrayList();
+        
+        private byte[] bytes;
+        
+        private long expires;
+        
+        public Entry(String key, byte[] fingerprint, long expires) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.expires = expires;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+        
+        public boolean isExpired(long now) {
+            return now - expires >= 0;
+        }
+        
+        /**
+         * Completes all retries waiting for an expired key in flight.
+         */
+        public void fail() {
+            if (waiting == null) return;
+            final Exception cause = new IllegalStateException(String.format(
+                "Idempotency key %s expired before its response has been written", key));
+            for (CallCompletion completion : waiting) {
+                completion.complete(cause);
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The response of a retried request which is replayed from the {@link IdempotencyTable}
+ * instead of being executed again. Replays are passed upstream in place of the request
+ * content, the {@link XmlRpcHandler} writes them in request order once they are completed.
+ * A replay may be completed before or after its {@link CallCompletion} is set.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class IdempotentReplay implements CallCompletion {
+
+    private Object response;
+    
+    private CallCompletion completion;
+    
+    @Override
+    public void complete(Object response) {
+        Preconditions.checkNotNull(response, "Response");
+        final CallCompletion target;
+        synchronized (this) {
+            Preconditions.checkState(this.response == null, "Already completed");
+            this.response = response;
+            target = completion;
+        }
+        if (target != null) {
+            target.complete(response);
+        }
+    }
+    
+    /**
+     * Sets the completion which receives the replayed response. It is
+     * completed immediately if the response is already known.
+     * 
+     * @param completion the completion
+     * @throws IllegalStateException if the completion has already been set
+     */
+    void setCompletion(CallCompletion completion) {
+        Preconditions.checkNotNull(completion, "Completion");
+        final Object known;
+        synchronized (this) {
+            Preconditions.checkState(this.completion == null, "Completion already set");
+            this.completion = completion;
+            known = response;
+        }
+        if (known != null) {
+            completion.complete(known);
+        }
+    }
+    
+}
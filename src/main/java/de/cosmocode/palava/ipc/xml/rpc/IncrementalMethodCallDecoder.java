@@ -0,0 +1,245 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.xml.stream.XMLStreamException;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.aalto.AsyncByteArrayFeeder;
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * A stateful decoder which feeds {@link HttpChunk}s into a non-blocking parser as they
+ * arrive and produces an {@link XmlRpcCall} once the last chunk has been received.
+ * Parsing overlaps with the network transfer and the request body is never held in
+ * a contiguous buffer. This decoder replaces the
+ * {@link org.jboss.netty.handler.codec.http.HttpChunkAggregator} and the
+ * {@link StreamingMethodCallDecoder} when {@link DecodingMode#INCREMENTAL} is configured.
+ * 
+ * <p>
+ *   Requests which are not chunked arrive as a single {@link ChannelBuffer} and are parsed at once.
+ *   Requests exceeding {@link XmlRpc#MAX_CONTENT_LENGTH} bytes (default 1 MiB) are rejected
+ *   using a {@link TooLongFrameException}, which {@link XmlRpcHandler} answers with
+ *   {@code 413 Request Entity Too Large} before closing the channel.
+ * </p>
+ * 
+ * <p>
+ *   Requests to methods which are always validated according to the {@link ValidationPolicy}
+ *   are parsed again from the beginning as soon as the method name is known. Only the chunks
+ *   received up to that point are retained for this purpose.
+ * </p>
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@NotThreadSafe
+final class IncrementalMethodCallDecoder extends OneToOneDecoder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalMethodCallDecoder.class);
+    
+    private final AsyncXMLInputFactory factory;
+    
+    private final ValidationPolicy policy;
+    
+    private final DateTimeIso8601Codec codec;
+    
+    private int base64Threshold = 64 * 1024;
+    
+    private int maxContentLength = 1048576;
+    
+    private Request request;
+    
+    @Inject
+    public IncrementalMethodCallDecoder(@XmlRpc AsyncXMLInputFactory factory, ValidationPolicy policy, 
+        DateTimeIso8601Codec codec) {
+        this.factory = Preconditions.checkNotNull(factory, "Factory");
+        this.policy = Preconditions.checkNotNull(policy, "Policy");
+        this.codec = Preconditions.checkNotNull(codec, "Codec");
+    }
+    
+    @Inject(optional = true)
+    public void setBase64Threshold(@Named(XmlRpc.BASE64_THRESHOLD) int base64Threshold) {
+        Preconditions.checkArgument(base64Threshold >= 0, "Base64Threshold must not be negative");
+        this.base64Threshold = base64Threshold;
+    }
+    
+    @Inject(optional = true)
+    public void setMaxContentLength(@Named(XmlRpc.MAX_CONTENT_LENGTH) int maxContentLength) {
+        Preconditions.checkArgument(maxContentLength > 0, "MaxContentLength must be positive");
+        this.maxContentLength = maxContentLength;
+    }
+    
+    @Override
+    protected Object decode(ChannelHandlerContext context, Channel channel, Object message) throws Exception {
+        if (message instanceof HttpChunk) {
+            final HttpChunk chunk = HttpChunk.class.cast(message);
+            return feed(chunk.getContent(), chunk.isLast());
+        } else if (message instanceof ChannelBuffer) {
+            return feed(ChannelBuffer.class.cast(message), true);
+        } else {
+            return message;
+        }
+    }
+    
+    private XmlRpcCall feed(ChannelBuffer content, boolean last) throws TooLongFrameException {
+        if (request == null) {
+            request = new Request(policy.sampleRequest());
+        }
+        final Request current = request;
+        if (last) {
+            request = null;
+        }
+        
+        // remaining chunks of a rejected request are discarded
+        if (current.failed) return null;
+        
+        try {
+            current.feed(content);
+            if (last) {
+                final XmlRpcCall call = current.finish();
+                LOG.trace("Decoded {} bytes into {}", Integer.valueOf(current.length), call);
+                return call;
+            } else {
+                return null;
+            }
+        } catch (TooLongFrameException e) {
+            current.failed = true;
+            throw e;
+        } catch (XMLStreamException e) {
+            current.failed = true;
+            throw new XmlRpcFaultException(XmlRpcFaultException.NOT_WELL_FORMED, e);
+        } catch (IllegalArgumentException e) {
+            current.failed = true;
+            if (current.validate) {
+                policy.requestValidated(false);
+            }
+            throw new XmlRpcFaultException(XmlRpcFaultException.INVALID_XML_RPC, e);
+        }
+    }
+    
+    /**
+     * The parsing state of a single request.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private final class Request {
+        
+        private AsyncXMLStreamReader<AsyncByteArrayFeeder> reader;
+        
+        private MethodCallParser parser;
+        
+        private boolean validate;
+        
+        private List<ChannelBuffer> retained;
+        
+        private int length;
+        
+        private boolean failed;
+        
+        public Request(boolean sampled) {
+            this.validate = sampled;
+            this.reader = factory.createAsyncForByteArray();
+            this.parser = new MethodCallParser(sampled, codec, base64Threshold);
+            if (!sampled) {
+                this.retained = Lists.newArrayList();
+            }
+        }
+        
+        public void feed(ChannelBuffer content) throws XMLStreamException, TooLongFrameException {
+            length += content.readableBytes();
+            if (length > maxContentLength) {
+                throw new TooLongFrameException("Request content length exceeded " + maxContentLength + " bytes");
+            }
+            if (retained != null) {
+                retained.add(content);
+            }
+            push(content);
+            decide();
+        }
+        
+        private void push(ChannelBuffer content) throws XMLStreamException {
+            if (!content.readable()) return;
+            final int readable = content.readableBytes();
+            if (content.hasArray()) {
+                reader.getInputFeeder().feedInput(content.array(), content.arrayOffset() + content.readerIndex(), 
+                    readable);
+            } else {
+                final byte[] bytes = new byte[readable];
+                content.getBytes(content.readerIndex(), bytes);
+                reader.getInputFeeder().feedInput(bytes, 0, readable);
+            }
+            drain();
+        }
+        
+        private void drain() throws XMLStreamException {
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == AsyncXMLStreamReader.EVENT_INCOMPLETE) break;
+                parser.consume(event, reader);
+            }
+        }
+        
+        private void decide() throws XMLStreamException {
+            if (retained == null) return;
+            final String methodName = parser.getMethodName();
+            if (methodName == null) return;
+            
+            final List<ChannelBuffer> seen = retained;
+            retained = null;
+            
+            if (policy.isValidated(methodName)) {
+                validate = true;
+                reader.close();
+                reader = factory.createAsyncForByteArray();
+                parser = new MethodCallParser(true, codec, base64Threshold);
+                for (ChannelBuffer content : seen) {
+                    push(content);
+                }
+            }
+        }
+        
+        public XmlRpcCall finish() throws XMLStreamException {
+            reader.getInputFeeder().endOfInput();
+            drain();
+            reader.close();
+            final XmlRpcCall call = parser.getCall();
+            if (validate) {
+                policy.requestValidated(true);
+            }
+            return call;
+        }
+        
+    }
+    
+}
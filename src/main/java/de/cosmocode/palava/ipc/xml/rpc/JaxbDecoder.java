@@ -16,12 +16,18 @@
 
 package de.cosmocode.palava.ipc.xml.rpc;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.io.StringReader;
 
 import javax.annotation.concurrent.ThreadSafe;
-import javax.xml.bind.Marshaller;
+import javax.xml.bind.UnmarshalException;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
@@ -31,15 +37,21 @@ import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
-import com.google.inject.Provider;
 
 import de.cosmocode.palava.ipc.xml.rpc.generated.MethodCall;
 
 /**
  * Decoder which decodes {@link ChannelBuffer}s into {@link MethodCall}s.
+ * Unless all requests are validated by the unmarshaller, the {@link ValidationPolicy}
+ * decides which requests are validated against the schema after unmarshalling.
+ * Requests which are not well formed are rejected with {@link XmlRpcFaultException#NOT_WELL_FORMED},
+ * like the streaming decoders do.
  *
  * @since 1.0
  * @author Willi Schoenborn
@@ -50,35 +62,101 @@ final class JaxbDecoder extends OneToOneDecoder {
 
     private static final Logger LOG = LoggerFactory.getLogger(JaxbDecoder.class);
     
-    private final Provider<Unmarshaller> unmarshallerProvider;
-    private final Provider<Marshaller> marshallerProvider;
+    private static final SAXParserFactory FACTORY = SAXParserFactory.newInstance();
+    
+    /**
+     * Ignores all external entities.
+     */
+    private static final DefaultHandler HANDLER = new DefaultHandler() {
+        
+        @Override
+        public InputSource resolveEntity(String publicId, String systemId) {
+            return new InputSource(new StringReader(""));
+        }
+        
+    };
+    
+    private final UnmarshallerPool unmarshallerPool;
+    
+    private final ValidationPolicy policy;
+    
+    private final Schema schema;
     
     @Inject
-    public JaxbDecoder(@XmlRpc Provider<Unmarshaller> unmarshaller, @XmlRpc Provider<Marshaller> marshaller) {
-        this.unmarshallerProvider = Preconditions.checkNotNull(unmarshaller, "UnmarshallerProvider");
-        this.marshallerProvider = Preconditions.checkNotNull(marshaller, "MarshallerProvider");
+    public JaxbDecoder(UnmarshallerPool unmarshallerPool, ValidationPolicy policy, @XmlRpc Schema schema) {
+        this.unmarshallerPool = Preconditions.checkNotNull(unmarshallerPool, "UnmarshallerPool");
+        this.policy = Preconditions.checkNotNull(policy, "Policy");
+        this.schema = Preconditions.checkNotNull(schema, "Schema");
     }
 
     @Override
     protected Object decode(ChannelHandlerContext context, Channel channel, Object message) throws Exception {
         if (message instanceof ChannelBuffer) {
             final ChannelBuffer buffer = ChannelBuffer.class.cast(message);
-            final InputStream stream = new ChannelBufferInputStream(buffer);
-            final Unmarshaller unmarshaller = unmarshallerProvider.get();
-            final Object unmarshalled = unmarshaller.unmarshal(stream);
+            final InputStream stream = new ChannelBufferInputStream(buffer.duplicate());
+            final Unmarshaller unmarshaller = unmarshallerPool.borrow();
+            final Object unmarshalled;
             
-            if (LOG.isTraceEnabled()) {
-                final StringWriter writer = new StringWriter();
-                final Marshaller marshaller = marshallerProvider.get();
-                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-                marshaller.marshal(unmarshalled, writer);
-                LOG.trace("Xml-Rpc call:\n{}", writer);
+            try {
+                unmarshalled = unmarshaller.unmarshal(stream);
+            } catch (UnmarshalException e) {
+                if (policy.isValidateAll()) {
+                    policy.requestValidated(false);
+                }
+                // jaxb reports parse and validation errors alike
+                final int code = isWellFormed(buffer) ? 
+                    XmlRpcFaultException.INVALID_XML_RPC : XmlRpcFaultException.NOT_WELL_FORMED;
+                throw new XmlRpcFaultException(code, e);
+            } finally {
+                unmarshallerPool.release(unmarshaller);
             }
             
+            if (policy.isValidateAll()) {
+                policy.requestValidated(true);
+            } else if (policy.sampleRequest() || isValidated(unmarshalled)) {
+                validate(buffer);
+            }
+            
+            LOG.trace("Decoded {} into {}", buffer, unmarshalled);
             return unmarshalled;
         } else {
             return message;
         }
     }
     
+    private boolean isValidated(Object unmarshalled) {
+        return unmarshalled instanceof MethodCall && 
+            policy.isValidated(MethodCall.class.cast(unmarshalled).getMethodName());
+    }
+    
+    private boolean isWellFormed(ChannelBuffer buffer) throws IOException {
+        final SAXParser parser;
+        try {
+            synchronized (FACTORY) {
+                parser = FACTORY.newSAXParser();
+            }
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        } catch (SAXException e) {
+            throw new IllegalStateException(e);
+        }
+        try {
+            parser.parse(new ChannelBufferInputStream(buffer.duplicate()), HANDLER);
+            return true;
+        } catch (SAXException e) {
+            return false;
+        }
+    }
+    
+    private void validate(ChannelBuffer buffer) throws IOException {
+        final InputStream stream = new ChannelBufferInputStream(buffer.duplicate());
+        try {
+            schema.newValidator().validate(new StreamSource(stream));
+            policy.requestValidated(true);
+        } catch (SAXException e) {
+            policy.requestValidated(false);
+            throw new XmlRpcFaultException(XmlRpcFaultException.INVALID_XML_RPC, e);
+        }
+    }
+    
 }
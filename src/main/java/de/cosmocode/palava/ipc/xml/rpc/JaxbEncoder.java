@@ -17,7 +17,6 @@
 package de.cosmocode.palava.ipc.xml.rpc;
 
 import java.io.OutputStream;
-import java.io.StringWriter;
 
 import javax.annotation.concurrent.ThreadSafe;
 import javax.xml.bind.Marshaller;
@@ -34,7 +33,6 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
-import com.google.inject.Provider;
 
 import de.cosmocode.palava.ipc.xml.rpc.generated.MethodResponse;
 
@@ -50,11 +48,14 @@ final class JaxbEncoder extends OneToOneEncoder {
 
     private static final Logger LOG = LoggerFactory.getLogger(JaxbEncoder.class);
     
-    private final Provider<Marshaller> provider;
+    private final MarshallerPool pool;
+    
+    private final ResponseValidator validator;
     
     @Inject
-    public JaxbEncoder(@XmlRpc Provider<Marshaller> provider) {
-        this.provider = Preconditions.checkNotNull(provider, "Provider");
+    public JaxbEncoder(MarshallerPool pool, ResponseValidator validator) {
+        this.pool = Preconditions.checkNotNull(pool, "Pool");
+        this.validator = Preconditions.checkNotNull(validator, "Validator");
     }
     
     @Override
@@ -62,16 +63,16 @@ final class JaxbEncoder extends OneToOneEncoder {
         if (message instanceof MethodResponse) {
             final ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
             final OutputStream stream = new ChannelBufferOutputStream(buffer);
-            final Marshaller marshaller = provider.get();
-            marshaller.marshal(message, stream);
-
-            if (LOG.isTraceEnabled()) {
-                final StringWriter writer = new StringWriter();
-                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-                marshaller.marshal(message, writer);
-                LOG.trace("Xml-Rpc response:\n{}", writer);
+            final Marshaller marshaller = pool.borrow();
+            
+            try {
+                marshaller.marshal(message, stream);
+            } finally {
+                pool.release(marshaller);
             }
             
+            LOG.trace("Encoded {} into {}", message, buffer);
+            validator.validate(buffer);
             return buffer;
         } else {
             return message;
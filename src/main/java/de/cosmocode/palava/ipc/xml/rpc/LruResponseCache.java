@@ -0,0 +1,271 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * A size bounded least recently used {@link ResponseCache} which stores the serialized
+ * responses of the methods listed in {@link XmlRpc#CACHED_METHODS}. Responses are keyed
+ * by {@link CallKey}s. Arguments without a canonical form, e.g. streams, are never cached,
+ * neither are faults.
+ * 
+ * <p>
+ *   The cache holds up to {@link XmlRpc#CACHE_MAX_SIZE} responses (default 1024) for
+ *   {@link XmlRpc#CACHE_TTL} {@link XmlRpc#CACHE_TTL_UNIT} (default 60 seconds). Cached
+ *   responses are shared between sessions, only methods whose result does not
+ *   depend on the session may be listed.
+ * </p>
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class LruResponseCache implements ResponseCache, ResponseCacheStatistics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LruResponseCache.class);
+    
+    private final MethodResponseWriter writer;
+    
+    private final AtomicLong hits = new AtomicLong();
+    
+    private final AtomicLong misses = new AtomicLong();
+    
+    private final AtomicLong evictions = new AtomicLong();
+    
+    private final AtomicLong expirations = new AtomicLong();
+    
+    private final Map<CallKey, Entry> entries = new LinkedHashMap<CallKey, Entry>(16, 0.75f, true) {
+        
+        private static final long serialVersionUID = -3432479012366386155L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CallKey, Entry> eldest) {
+            if (size() > maxSize) {
+                evictions.incrementAndGet();
+                return true;
+            } else {
+                return false;
+            }
+        }
+        
+    };
+    
+    private Set<String> methods = ImmutableSet.of();
+    
+    private int maxSize = 1024;
+    
+    private long ttl = 60;
+    
+    private TimeUnit ttlUnit = TimeUnit.SECONDS;
+    
+    private Ticker ticker = Ticker.systemTicker();
+    
+    @Inject
+    public LruResponseCache(MethodResponseWriter writer) {
+        this.writer = Preconditions.checkNotNull(writer, "Writer");
+    }
+    
+    @Inject(optional = true)
+    public void setMethods(@Named(XmlRpc.CACHED_METHODS) String methods) {
+        Preconditions.checkNotNull(methods, "Methods");
+        this.methods = ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(methods));
+    }
+    
+    @Inject(optional = true)
+    public void setMaxSize(@Named(XmlRpc.CACHE_MAX_SIZE) int maxSize) {
+        Preconditions.checkArgument(maxSize > 0, "MaxSize must be positive");
+        this.maxSize = maxSize;
+    }
+    
+    @Inject(optional = true)
+    public void setTtl(@Named(XmlRpc.CACHE_TTL) long ttl) {
+        Preconditions.checkArgument(ttl > 0, "Ttl must be positive");
+        this.ttl = ttl;
+    }
+    
+    @Inject(optional = true)
+    public void setTtlUnit(@Named(XmlRpc.CACHE_TTL_UNIT) TimeUnit ttlUnit) {
+        this.ttlUnit = Preconditions.checkNotNull(ttlUnit, "TtlUnit");
+    }
+    
+    /**
+     * Sets the ticker used to expire responses, e.g. a fake one in tests.
+     * 
+     * @param ticker the ticker
+     */
+    void setTicker(Ticker ticker) {
+        this.ticker = Preconditions.checkNotNull(ticker, "Ticker");
+    }
+    
+    /**
+     * Checks whether responses of the specified method are cached.
+     * 
+     * @param methodName the method name
+     * @return true if the method is listed in {@link XmlRpc#CACHED_METHODS}
+     */
+    boolean isCached(String methodName) {
+        return methods.contains(methodName);
+    }
+    
+    /**
+     * Returns a new buffer holding the cached response for the specified key.
+     * 
+     * @param key the key of the call
+     * @return the serialized response or null if nothing is cached
+     */
+    ChannelBuffer get(CallKey key) {
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired(ticker.read())) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        } else {
+            hits.incrementAndGet();
+            return ChannelBuffers.wrappedBuffer(entry.bytes);
+        }
+    }
+    
+    /**
+     * Serializes and caches the specified result.
+     * 
+     * @param key the key of the call
+     * @param result the result of the command
+     * @return a new buffer holding the serialized response
+     */
+    ChannelBuffer put(CallKey key, Map<?, ?> result) {
+        Preconditions.checkNotNull(key, "Key");
+        final ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+        writer.writeResponse(result, buffer);
+        final byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.getBytes(buffer.readerIndex(), bytes);
+        final long expires = ticker.read() + ttlUnit.toNanos(ttl);
+        synchronized (entries) {
+            entries.put(key, new Entry(bytes, expires));
+        }
+        LOG.trace("Cached {} bytes for {}", bytes.length, key);
+        return ChannelBuffers.wrappedBuffer(bytes);
+    }
+    
+    @Override
+    public void invalidate(String methodName) {
+        Preconditions.checkNotNull(methodName, "MethodName");
+        synchronized (entries) {
+            final Iterator<CallKey> iterator = entries.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (methodName.equals(iterator.next().getMethodName())) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+    
+    @Override
+    public void invalidate(String methodName, Map<String, ?> arguments) {
+        Preconditions.checkNotNull(methodName, "MethodName");
+        Preconditions.checkNotNull(arguments, "Arguments");
+        final CallKey key = CallKey.of(methodName, arguments);
+        if (key == null) return;
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+    
+    @Override
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+    
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+    
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+    
+    @Override
+    public long getExpirations() {
+        return expirations.get();
+    }
+    
+    @Override
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    /**
+     * A cached response.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private static final class Entry {
+        
+        private final byte[] bytes;
+        
+        private final long expires;
+        
+        public Entry(byte[] bytes, long expires) {
+            this.bytes = bytes;
+            this.expires = expires;
+        }
+        
+        public boolean isExpired(long now) {
+            return now - expires >= 0;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.bind.Marshaller;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+
+/**
+ * A pool of {@link XmlRpc xmlrpc} {@link Marshaller}s.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class MarshallerPool extends AbstractPool<Marshaller> {
+
+    private final XmlRpcMarshallerProvider provider;
+
+    @Inject
+    public MarshallerPool(XmlRpcMarshallerProvider provider) {
+        this.provider = Preconditions.checkNotNull(provider, "Provider");
+    }
+    
+    @Override
+    protected Marshaller create() {
+        return provider.get();
+    }
+    
+    @Override
+    protected void reset(Marshaller instance) {
+        provider.reset(instance);
+    }
+    
+}
@@ -17,7 +17,6 @@
 package de.cosmocode.palava.ipc.xml.rpc;
 
 import java.io.Serializable;
-import java.util.AbstractList;
 import java.util.List;
 import java.util.Map;
 
@@ -31,12 +30,15 @@ import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
 import de.cosmocode.palava.ipc.IpcArguments;
 import de.cosmocode.palava.ipc.MapIpcArguments;
 import de.cosmocode.palava.ipc.xml.rpc.adapters.Adapter;
+import de.cosmocode.palava.ipc.xml.rpc.adapters.Adapters;
 import de.cosmocode.palava.ipc.xml.rpc.generated.MethodCall;
 import de.cosmocode.palava.ipc.xml.rpc.generated.MethodCall.Params;
 import de.cosmocode.palava.ipc.xml.rpc.generated.Param;
@@ -55,6 +57,15 @@ final class MethodCallDecoder extends OneToOneDecoder {
 
     private static final Logger LOG = LoggerFactory.getLogger(MethodCallDecoder.class);
     
+    private static final Function<Param, Value> PARAM_VALUE = new Function<Param, Value>() {
+        
+        @Override
+        public Value apply(Param from) {
+            return from.getValue();
+        }
+        
+    };
+    
     private final Adapter<Value, Map<String, Object>> mapAdapter;
     private final Adapter<Value, Object> objectAdapter;
     
@@ -112,35 +123,8 @@ final class MethodCallDecoder extends OneToOneDecoder {
     }
     
     private IpcArguments positional(Params params) {
-        return new XmlRpcArguments(new ParamsList(params.getParam(), objectAdapter));
-    }
-    
-    /**
-     * {@link List} of {@link Param} backed {@link List} implementation.
-     *
-     * @since 1.0
-     * @author Willi Schoenborn
-     */
-    private static final class ParamsList extends AbstractList<Object> {
-        
-        private final List<Param> params;
-        private final Adapter<Value, Object> objectAdapter;
-        
-        public ParamsList(List<Param> params, Adapter<Value, Object> objectAdapter) {
-            this.params = params;
-            this.objectAdapter = objectAdapter;
-        }
-
-        @Override
-        public Object get(int index) {
-            return objectAdapter.decode(params.get(index).getValue());
-        }
-
-        @Override
-        public int size() {
-            return params.size();
-        }
-        
+        final List<Value> values = Lists.transform(params.getParam(), PARAM_VALUE);
+        return new XmlRpcArguments(Adapters.decodedView(values, objectAdapter));
     }
     
 }
@@ -0,0 +1,514 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.xml.XMLConstants;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * An event driven parser which builds {@link XmlRpcCall}s directly from a stream
+ * of StAX events without creating an intermediate object tree. The produced arguments
+ * have the same shape as the ones created by the {@link MethodCallDecoder}.
+ * 
+ * <p>
+ *   If validation is enabled, the parser enforces the same structural and lexical
+ *   rules as the bundled {@code xmlrpc.xsd} in the same pass. Violations are reported
+ *   using {@link IllegalArgumentException}s.
+ * </p>
+ * 
+ * <p>
+ *   {@code base64} values are decoded incrementally by a {@link StreamingBase64Decoder}
+ *   which spills to a temporary file once the configured threshold is crossed.
+ * </p>
+ * 
+ * <p>
+ *   Instances are stateful and must be used for exactly one request.
+ * </p>
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@NotThreadSafe
+final class MethodCallParser {
+
+    private static final String XSI = XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI;
+
+    private final Deque<Frame> stack = new ArrayDeque<Frame>();
+    
+    private final boolean validate;
+    
+    private String methodName;
+    
+    private List<Object> params;
+    
+    private boolean complete;
+    
+    private final DateTimeIso8601Codec codec;
+    
+    private final int base64Threshold;
+    
+    public MethodCallParser(boolean validate, DateTimeIso8601Codec codec, int base64Threshold) {
+        this.validate = validate;
+        this.codec = Preconditions.checkNotNull(codec, "Codec");
+        Preconditions.checkArgument(base64Threshold >= 0, "Base64 threshold must not be negative");
+        this.base64Threshold = base64Threshold;
+    }
+    
+    /**
+     * Consumes the current event of the specified reader.
+     * 
+     * @since 1.1
+     * @param event the event type, as returned by {@link XMLStreamReader#next()}
+     * @param reader the reader positioned at the given event
+     * @throws IllegalArgumentException if the event violates the xml-rpc grammar
+     */
+    public void consume(int event, XMLStreamReader reader) {
+        switch (event) {
+            case XMLStreamConstants.START_ELEMENT: {
+                if (validate) {
+                    checkNamespace(reader);
+                    checkAttributes(reader);
+                }
+                startElement(reader.getLocalName());
+                break;
+            }
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE: {
+                characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                break;
+            }
+            case XMLStreamConstants.END_ELEMENT: {
+                endElement();
+                break;
+            }
+            default: {
+                // comments, processing instructions and document events carry no data
+                break;
+            }
+        }
+    }
+    
+    private void checkNamespace(XMLStreamReader reader) {
+        final String namespace = reader.getNamespaceURI();
+        Preconditions.checkArgument(namespace == null || namespace.length() == 0,
+            "Element %s must not be qualified", reader.getLocalName());
+    }
+    
+    private void checkAttributes(XMLStreamReader reader) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String name = reader.getAttributeLocalName(i);
+            final boolean schemaLocation = XSI.equals(reader.getAttributeNamespace(i)) && 
+                ("schemaLocation".equals(name) || "noNamespaceSchemaLocation".equals(name));
+            Preconditions.checkArgument(schemaLocation, "Attribute %s is not allowed", reader.getAttributeName(i));
+        }
+    }
+    
+    private void startElement(String localName) {
+        final Tag tag = Tag.of(localName);
+        final Frame parent = stack.peek();
+        if (parent == null) {
+            Preconditions.checkArgument(tag == Tag.METHOD_CALL && !complete, "Unexpected root element %s", localName);
+        } else {
+            Preconditions.checkArgument(parent.tag.accepts(tag), "%s is not allowed in %s", localName, parent.tag);
+            if (validate && parent.tag == Tag.MEMBER) {
+                // sequence of name and value
+                Preconditions.checkArgument(tag == Tag.NAME ? !parent.hasValue : parent.name != null,
+                    "Member requires name before value");
+            }
+        }
+        final Frame frame = new Frame(tag);
+        if (tag == Tag.BASE64) {
+            frame.base64 = new StreamingBase64Decoder(base64Threshold, validate);
+        }
+        stack.push(frame);
+    }
+    
+    private void characters(char[] text, int start, int length) {
+        final Frame frame = stack.peek();
+        if (frame == null) return;
+        if (frame.tag == Tag.BASE64) {
+            frame.base64.decode(text, start, length);
+        } else if (frame.tag.hasText()) {
+            frame.append(text, start, length);
+        } else if (validate) {
+            Preconditions.checkArgument(XmlRpcGrammar.isWhitespace(text, start, length),
+                "Text is not allowed in %s", frame.tag);
+        }
+    }
+    
+    private void endElement() {
+        final Frame frame = stack.pop();
+        if (validate) {
+            check(frame);
+        }
+        final Object value = valueOf(frame);
+        final Frame parent = stack.peek();
+        if (parent == null) {
+            complete = true;
+        } else {
+            add(parent, frame, value);
+        }
+    }
+    
+    private void check(Frame frame) {
+        switch (frame.tag) {
+            case METHOD_NAME: {
+                Preconditions.checkArgument(XmlRpcGrammar.isMethodName(frame.text()), 
+                    "Invalid methodName %s", frame.text());
+                break;
+            }
+            case STRING: {
+                Preconditions.checkArgument(XmlRpcGrammar.isString(frame.text()), "Invalid string %s", frame.text());
+                break;
+            }
+            case I4:
+            case INT: {
+                Preconditions.checkArgument(XmlRpcGrammar.isInt(frame.text()), 
+                    "Invalid %s %s", frame.tag, frame.text());
+                break;
+            }
+            case BOOLEAN: {
+                Preconditions.checkArgument(XmlRpcGrammar.isBoolean(frame.text()), "Invalid boolean %s", frame.text());
+                break;
+            }
+            case DOUBLE: {
+                Preconditions.checkArgument(XmlRpcGrammar.isDouble(frame.text()), "Invalid double %s", frame.text());
+                break;
+            }
+            case DATE_TIME: {
+                Preconditions.checkArgument(XmlRpcGrammar.isDateTime(frame.text()), 
+                    "Invalid dateTime.iso8601 %s", frame.text());
+                break;
+            }
+            case DATA: {
+                Preconditions.checkArgument(frame.list != null, "Data requires at least one value");
+                break;
+            }
+            default: {
+                break;
+            }
+        }
+    }
+    
+    private Object valueOf(Frame frame) {
+        switch (frame.tag) {
+            case METHOD_CALL: {
+                Preconditions.checkArgument(methodName != null, "Missing methodName");
+                return null;
+            }
+            case METHOD_NAME:
+            case NAME:
+            case STRING: {
+                return frame.text();
+            }
+            case VALUE: {
+                // untyped values are strings
+                return frame.hasValue ? frame.value : frame.text();
+            }
+            case I4:
+            case INT: {
+                return DatatypeConverter.parseInt(frame.text());
+            }
+            case BOOLEAN: {
+                return parseBoolean(frame.text());
+            }
+            case DOUBLE: {
+                return DatatypeConverter.parseDouble(frame.text());
+            }
+            case DATE_TIME: {
+                return codec.parseDate(frame.text());
+            }
+            case BASE64: {
+                return frame.base64.finish();
+            }
+            case STRUCT: {
+                return Collections.unmodifiableMap(frame.map());
+            }
+            case PARAMS:
+            case DATA: {
+                return Collections.unmodifiableList(frame.list());
+            }
+            case PARAM:
+            case ARRAY:
+            case MEMBER: {
+                Preconditions.checkArgument(frame.hasValue, "Missing content in %s", frame.tag);
+                Preconditions.checkArgument(frame.tag != Tag.MEMBER || frame.name != null, "Missing name in member");
+                return frame.value;
+            }
+            default: {
+                throw new AssertionError(frame.tag);
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void add(Frame parent, Frame child, Object value) {
+        switch (parent.tag) {
+            case METHOD_CALL: {
+                if (child.tag == Tag.METHOD_NAME) {
+                    Preconditions.checkArgument(methodName == null, "Multiple methodNames provided");
+                    methodName = (String) value;
+                } else {
+                    Preconditions.checkArgument(params == null, "Multiple params provided");
+                    params = (List<Object>) value;
+                }
+                break;
+            }
+            case PARAMS:
+            case DATA: {
+                parent.list().add(value);
+                break;
+            }
+            case STRUCT: {
+                parent.map().put(child.name, value);
+                break;
+            }
+            case MEMBER: {
+                if (child.tag == Tag.NAME) {
+                    Preconditions.checkArgument(parent.name == null, "Multiple names in member");
+                    parent.name = (String) value;
+                } else {
+                    parent.setValue(value);
+                }
+                break;
+            }
+            default: {
+                parent.setValue(value);
+                break;
+            }
+        }
+    }
+    
+    private Boolean parseBoolean(String text) {
+        final String trimmed = text.trim();
+        if ("1".equals(trimmed) || "true".equals(trimmed)) {
+            return Boolean.TRUE;
+        } else if ("0".equals(trimmed) || "false".equals(trimmed)) {
+            return Boolean.FALSE;
+        } else {
+            throw new IllegalArgumentException(String.format("%s is not a boolean", text));
+        }
+    }
+    
+    /**
+     * Returns the method name, as soon as it has been parsed.
+     * 
+     * @since 1.1
+     * @return the method name or null if it has not been parsed yet
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+    
+    /**
+     * Returns the parsed call.
+     * 
+     * @since 1.1
+     * @return the call described by the consumed events
+     * @throws IllegalStateException if the end of the method call has not been reached yet
+     */
+    public XmlRpcCall getCall() {
+        Preconditions.checkState(complete, "Method call is incomplete");
+        return new XmlRpcCall(methodName, XmlRpcArguments.of(params));
+    }
+    
+    /**
+     * The elements of the xml-rpc grammar.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private static enum Tag {
+        
+        METHOD_CALL("methodCall"),
+        
+        METHOD_NAME("methodName"),
+        
+        PARAMS("params"),
+        
+        PARAM("param"),
+        
+        VALUE("value"),
+        
+        ARRAY("array"),
+        
+        DATA("data"),
+        
+        STRUCT("struct"),
+        
+        MEMBER("member"),
+        
+        NAME("name"),
+        
+        BASE64("base64"),
+        
+        BOOLEAN("boolean"),
+        
+        DATE_TIME("dateTime.iso8601"),
+        
+        DOUBLE("double"),
+        
+        I4("i4"),
+        
+        INT("int"),
+        
+        STRING("string");
+        
+        private static final Map<String, Tag> TAGS;
+        
+        static {
+            final ImmutableMap.Builder<String, Tag> builder = ImmutableMap.builder();
+            for (Tag tag : values()) {
+                builder.put(tag.localName, tag);
+            }
+            TAGS = builder.build();
+        }
+        
+        private final String localName;
+        
+        private Tag(String localName) {
+            this.localName = localName;
+        }
+        
+        public boolean isScalar() {
+            return ordinal() >= BASE64.ordinal();
+        }
+        
+        public boolean hasText() {
+            return this == METHOD_NAME || this == NAME || this == VALUE || isScalar();
+        }
+        
+        public boolean accepts(Tag child) {
+            switch (this) {
+                case METHOD_CALL: {
+                    return child == METHOD_NAME || child == PARAMS;
+                }
+                case PARAMS: {
+                    return child == PARAM;
+                }
+                case PARAM:
+                case DATA: {
+                    return child == VALUE;
+                }
+                case VALUE: {
+                    return child == ARRAY || child == STRUCT || child.isScalar();
+                }
+                case ARRAY: {
+                    return child == DATA;
+                }
+                case STRUCT: {
+                    return child == MEMBER;
+                }
+                case MEMBER: {
+                    return child == NAME || child == VALUE;
+                }
+                default: {
+                    return false;
+                }
+            }
+        }
+        
+        public static Tag of(String localName) {
+            final Tag tag = TAGS.get(localName);
+            Preconditions.checkArgument(tag != null, "Unknown element %s", localName);
+            return tag;
+        }
+        
+        @Override
+        public String toString() {
+            return localName;
+        }
+        
+    }
+    
+    /**
+     * An element on the parser stack.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private static final class Frame {
+        
+        private final Tag tag;
+        
+        private StringBuilder text;
+        
+        private StreamingBase64Decoder base64;
+        
+        private List<Object> list;
+        
+        private Map<String, Object> map;
+        
+        private String name;
+        
+        private Object value;
+        
+        private boolean hasValue;
+        
+        public Frame(Tag tag) {
+            this.tag = tag;
+        }
+        
+        public void append(char[] chars, int start, int length) {
+            if (text == null) {
+                text = new StringBuilder(length);
+            }
+            text.append(chars, start, length);
+        }
+        
+        public String text() {
+            return text == null ? "" : text.toString();
+        }
+        
+        public List<Object> list() {
+            if (list == null) {
+                list = Lists.newArrayList();
+            }
+            return list;
+        }
+        
+        public Map<String, Object> map() {
+            if (map == null) {
+                map = Maps.newLinkedHashMap();
+            }
+            return map;
+        }
+        
+        public void setValue(Object v) {
+            Preconditions.checkArgument(!hasValue, "Multiple values in %s", tag);
+            this.value = v;
+            this.hasValue = true;
+        }
+        
+    }
+    
+}
@@ -16,6 +16,7 @@
 
 package de.cosmocode.palava.ipc.xml.rpc;
 
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.concurrent.ThreadSafe;
@@ -39,7 +40,8 @@ import de.cosmocode.palava.ipc.xml.rpc.generated.Param;
 import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
 
 /**
- * An encoder which encodes {@link Map}s into {@link MethodResponse}s.
+ * An encoder which encodes {@link Map}s, {@link List}s of multicall responses
+ * and {@link Throwable}s into {@link MethodResponse}s.
  *
  * @since 1.0
  * @author Willi Schoenborn
@@ -64,8 +66,8 @@ final class MethodResponseEncoder extends OneToOneEncoder {
     
     @Override
     protected Object encode(ChannelHandlerContext context, Channel channel, Object message) throws Exception {
-        if (message instanceof Map<?, ?>) {
-            final Map<?, ?> map = Map.class.cast(message);
+        if (message instanceof Map<?, ?> || message instanceof List<?>) {
+            final Object result = message;
             final MethodResponse response = factory.createMethodResponse();
             
             final Params params = factory.createMethodResponseParams();
@@ -74,10 +76,10 @@ final class MethodResponseEncoder extends OneToOneEncoder {
             final Param param = factory.createParam();
             params.setParam(param);
             
-            final Value value = objectAdapter.encode(map);
+            final Value value = objectAdapter.encode(result);
             param.setValue(value);
             
-            LOG.trace("Encoded {} into {}", map, response);
+            LOG.trace("Encoded {} into {}", result, response);
             return response;
         } else if (message instanceof Throwable) {
             final Throwable throwable = Throwable.class.cast(message);
@@ -0,0 +1,371 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.bind.DatatypeConverter;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+
+/**
+ * Writes xml-rpc method responses directly into {@link ChannelBuffer}s. The produced
+ * document is equivalent to the one created by the {@link MethodResponseEncoder} and
+ * {@link JaxbEncoder} pair, but no intermediate object tree is created.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class MethodResponseWriter {
+    
+    private static final byte[] DECLARATION = ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    
+    private static final byte[] RESPONSE_START = ascii("<methodResponse><params><param>");
+    private static final byte[] RESPONSE_END = ascii("</param></params></methodResponse>");
+    
+    private static final byte[] FAULT_START = ascii("<methodResponse><fault><value><struct>");
+    private static final byte[] FAULT_END = ascii("</struct></value></fault></methodResponse>");
+    
+    private static final byte[] VALUE_START = ascii("<value>");
+    private static final byte[] VALUE_END = ascii("</value>");
+    
+    private static final byte[] STRING_START = ascii("<string>");
+    private static final byte[] STRING_END = ascii("</string>");
+    
+    private static final byte[] I4_START = ascii("<i4>");
+    private static final byte[] I4_END = ascii("</i4>");
+    
+    private static final byte[] DOUBLE_START = ascii("<double>");
+    private static final byte[] DOUBLE_END = ascii("</double>");
+    
+    private static final byte[] TRUE = ascii("<boolean>1</boolean>");
+    private static final byte[] FALSE = ascii("<boolean>0</boolean>");
+    
+    private static final byte[] DATE_START = ascii("<dateTime.iso8601>");
+    private static final byte[] DATE_END = ascii("</dateTime.iso8601>");
+    
+    private static final byte[] BASE64_START = ascii("<base64>");
+    private static final byte[] BASE64_END = ascii("</base64>");
+    
+    private static final byte[] STRUCT_START = ascii("<struct>");
+    private static final byte[] STRUCT_END = ascii("</struct>");
+    
+    private static final byte[] MEMBER_START = ascii("<member><name>");
+    private static final byte[] MEMBER_NAME_END = ascii("</name>");
+    private static final byte[] MEMBER_END = ascii("</member>");
+    
+    private static final byte[] ARRAY_START = ascii("<array><data>");
+    private static final byte[] ARRAY_END = ascii("</data></array>");
+    
+    private static final byte[] LT = ascii("&lt;");
+    private static final byte[] GT = ascii("&gt;");
+    private static final byte[] AMP = ascii("&amp;");
+    private static final byte[] CR = ascii("&#13;");
+    
+    private static final byte[] BASE64_ALPHABET = 
+        ascii("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/");
+    
+    private static final int BASE64_BLOCK = 3 * 1024;
+    
+    private static final Flusher NEVER = new Flusher() {
+        
+        @Override
+        public void flush(ChannelBuffer buffer) {
+            // nothing to do
+        }
+        
+    };
+    
+    private static byte[] ascii(String s) {
+        final byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+    
+    private final DateTimeIso8601Codec codec;
+    
+    @Inject
+    public MethodResponseWriter(DateTimeIso8601Codec codec) {
+        this.codec = Preconditions.checkNotNull(codec, "Codec");
+    }
+    
+    /**
+     * Writes a successful method response containing the specified result.
+     * 
+     * @since 1.1
+     * @param result the result, usually a {@link Map}
+     * @param buffer the target buffer
+     * @throws NullPointerException if buffer is null
+     */
+    public void writeResponse(Object result, ChannelBuffer buffer) {
+        writeResponse(result, buffer, NEVER);
+    }
+    
+    /**
+     * Writes a successful method response containing the specified result and
+     * notifies the given flusher after every struct member, array element and
+     * base64 block.
+     * 
+     * @since 1.1
+     * @param result the result, usually a {@link Map}
+     * @param buffer the target buffer
+     * @param flusher the flusher which may consume the written bytes
+     * @throws NullPointerException if buffer or flusher is null
+     */
+    public void writeResponse(Object result, ChannelBuffer buffer, Flusher flusher) {
+        Preconditions.checkNotNull(buffer, "Buffer");
+        Preconditions.checkNotNull(flusher, "Flusher");
+        buffer.writeBytes(DECLARATION);
+        buffer.writeBytes(RESPONSE_START);
+        writeValue(result, buffer, flusher);
+        buffer.writeBytes(RESPONSE_END);
+    }
+    
+    /**
+     * Writes a fault response describing the specified throwable.
+     * 
+     * @since 1.1
+     * @param throwable the cause of the fault
+     * @param buffer the target buffer
+     * @throws NullPointerException if throwable or buffer is null
+     */
+    public void writeFault(Throwable throwable, ChannelBuffer buffer) {
+        Preconditions.checkNotNull(throwable, "Throwable");
+        Preconditions.checkNotNull(buffer, "Buffer");
+        buffer.writeBytes(DECLARATION);
+        buffer.writeBytes(FAULT_START);
+        writeMember(XmlRpc.FAULT_CODE, Integer.valueOf(XmlRpcFaultException.faultCodeOf(throwable)), buffer, NEVER);
+        writeMember(XmlRpc.FAULT_STRING, throwable.toString(), buffer, NEVER);
+        buffer.writeBytes(FAULT_END);
+    }
+    
+    private void writeValue(Object value, ChannelBuffer buffer, Flusher flusher) {
+        buffer.writeBytes(VALUE_START);
+        
+        // same dispatch order as the ObjectAdapter, from the most used to the least
+        if (value == null) {
+            writeString("null", buffer);
+        } else if (value instanceof String) {
+            writeString(String.class.cast(value), buffer);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            buffer.writeBytes(I4_START);
+            writeAscii(Integer.toString(Number.class.cast(value).intValue()), buffer);
+            buffer.writeBytes(I4_END);
+        } else if (value instanceof Number) {
+            buffer.writeBytes(DOUBLE_START);
+            writeAscii(DatatypeConverter.printDouble(Number.class.cast(value).doubleValue()), buffer);
+            buffer.writeBytes(DOUBLE_END);
+        } else if (value instanceof Boolean) {
+            buffer.writeBytes(Boolean.TRUE.equals(value) ? TRUE : FALSE);
+        } else if (value instanceof Map<?, ?>) {
+            writeStruct(Map.class.cast(value), buffer, flusher);
+        } else if (value instanceof List<?>) {
+            writeArray(List.class.cast(value), buffer, flusher);
+        } else if (value instanceof Date) {
+            writeDate(Date.class.cast(value), buffer);
+        } else if (value instanceof Calendar) {
+            writeDate(Calendar.class.cast(value).getTime(), buffer);
+        } else if (value instanceof InputStream) {
+            writeBase64(InputStream.class.cast(value), buffer, flusher);
+        } else {
+            writeString(value.toString(), buffer);
+        }
+        
+        buffer.writeBytes(VALUE_END);
+    }
+    
+    private void writeString(String value, ChannelBuffer buffer) {
+        buffer.writeBytes(STRING_START);
+        writeText(value, buffer);
+        buffer.writeBytes(STRING_END);
+    }
+    
+    private void writeStruct(Map<?, ?> map, ChannelBuffer buffer, Flusher flusher) {
+        buffer.writeBytes(STRUCT_START);
+        for (Entry<?, ?> entry : map.entrySet()) {
+            writeMember(String.valueOf(entry.getKey()), entry.getValue(), buffer, flusher);
+            flusher.flush(buffer);
+        }
+        buffer.writeBytes(STRUCT_END);
+    }
+    
+    private void writeMember(String name, Object value, ChannelBuffer buffer, Flusher flusher) {
+        buffer.writeBytes(MEMBER_START);
+        writeText(name, buffer);
+        buffer.writeBytes(MEMBER_NAME_END);
+        writeValue(value, buffer, flusher);
+        buffer.writeBytes(MEMBER_END);
+    }
+    
+    private void writeArray(List<?> list, ChannelBuffer buffer, Flusher flusher) {
+        buffer.writeBytes(ARRAY_START);
+        for (Object element : list) {
+            writeValue(element, buffer, flusher);
+            flusher.flush(buffer);
+        }
+        buffer.writeBytes(ARRAY_END);
+    }
+    
+    private void writeDate(Date date, ChannelBuffer buffer) {
+        buffer.writeBytes(DATE_START);
+        final byte[] bytes = new byte[DateTimeIso8601Codec.LENGTH];
+        codec.format(date.getTime(), bytes, 0);
+        buffer.writeBytes(bytes);
+        buffer.writeBytes(DATE_END);
+    }
+    
+    private void writeBase64(InputStream stream, ChannelBuffer buffer, Flusher flusher) {
+        buffer.writeBytes(BASE64_START);
+        
+        final byte[] block = new byte[BASE64_BLOCK];
+        int pending = 0;
+        
+        try {
+            while (true) {
+                final int read = stream.read(block, pending, block.length - pending);
+                if (read == -1) break;
+                final int available = pending + read;
+                final int complete = available - available % 3;
+                writeBase64(block, complete, buffer);
+                pending = available - complete;
+                System.arraycopy(block, complete, block, 0, pending);
+                flusher.flush(buffer);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        
+        writeBase64(block, pending, buffer);
+        buffer.writeBytes(BASE64_END);
+    }
+    
+    private void writeBase64(byte[] bytes, int length, ChannelBuffer buffer) {
+        int i = 0;
+        for (; i + 3 <= length; i += 3) {
+            final int bits = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+            buffer.writeByte(BASE64_ALPHABET[bits >>> 18]);
+            buffer.writeByte(BASE64_ALPHABET[(bits >>> 12) & 0x3F]);
+            buffer.writeByte(BASE64_ALPHABET[(bits >>> 6) & 0x3F]);
+            buffer.writeByte(BASE64_ALPHABET[bits & 0x3F]);
+        }
+        
+        final int remaining = length - i;
+        if (remaining == 1) {
+            final int bits = (bytes[i] & 0xFF) << 16;
+            buffer.writeByte(BASE64_ALPHABET[bits >>> 18]);
+            buffer.writeByte(BASE64_ALPHABET[(bits >>> 12) & 0x3F]);
+            buffer.writeByte('=');
+            buffer.writeByte('=');
+        } else if (remaining == 2) {
+            final int bits = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8;
+            buffer.writeByte(BASE64_ALPHABET[bits >>> 18]);
+            buffer.writeByte(BASE64_ALPHABET[(bits >>> 12) & 0x3F]);
+            buffer.writeByte(BASE64_ALPHABET[(bits >>> 6) & 0x3F]);
+            buffer.writeByte('=');
+        }
+    }
+    
+    private void writeAscii(String value, ChannelBuffer buffer) {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            buffer.writeByte(value.charAt(i));
+        }
+    }
+    
+    /**
+     * Writes the specified text as escaped utf-8. Unpaired surrogates are written as {@code ?}.
+     */
+    private void writeText(String text, ChannelBuffer buffer) {
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '<': {
+                        buffer.writeBytes(LT);
+                        break;
+                    }
+                    case '>': {
+                        buffer.writeBytes(GT);
+                        break;
+                    }
+                    case '&': {
+                        buffer.writeBytes(AMP);
+                        break;
+                    }
+                    case '\r': {
+                        buffer.writeBytes(CR);
+                        break;
+                    }
+                    default: {
+                        buffer.writeByte(c);
+                        break;
+                    }
+                }
+            } else if (c < 0x800) {
+                buffer.writeByte(0xC0 | (c >> 6));
+                buffer.writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.writeByte(0xF0 | (codePoint >> 18));
+                buffer.writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                buffer.writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                buffer.writeByte(0x80 | (codePoint & 0x3F));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // unpaired surrogates can't be encoded, replaced like String#getBytes does
+                buffer.writeByte('?');
+            } else {
+                buffer.writeByte(0xE0 | (c >> 12));
+                buffer.writeByte(0x80 | ((c >> 6) & 0x3F));
+                buffer.writeByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+    
+    /**
+     * A callback which is notified at points where the bytes written so far
+     * may be consumed, e.g. by sending them to the client.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    interface Flusher {
+        
+        /**
+         * Consumes none, some or all readable bytes of the specified buffer.
+         * 
+         * @since 1.1
+         * @param buffer the buffer being written
+         */
+        void flush(ChannelBuffer buffer);
+        
+    }
+    
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A batch of calls issued using {@link XmlRpc#MULTICALL system.multicall}. The single
+ * parameter of a multicall is an array of structs, each containing a {@code methodName}
+ * and an array of {@code params}. The response is an array containing either a one-element
+ * array holding the result or a fault struct for every call, in request order.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class Multicall {
+
+    private static final String METHOD_NAME = "methodName";
+    
+    private static final String PARAMS = "params";
+    
+    private final AtomicReferenceArray<Object> responses;
+    
+    private final AtomicInteger remaining;
+    
+    public Multicall(int size) {
+        Preconditions.checkArgument(size >= 0, "Size must not be negative");
+        this.responses = new AtomicReferenceArray<Object>(size);
+        this.remaining = new AtomicInteger(size);
+    }
+    
+    /**
+     * Returns the calls of the specified multicall.
+     * 
+     * @param call the multicall
+     * @return the list of call structs
+     * @throws XmlRpcFaultException if the parameters of the multicall are invalid
+     */
+    static List<?> entries(XmlRpcCall call) {
+        Preconditions.checkArgument(XmlRpc.MULTICALL.equals(call.getMethodName()), "%s is no multicall", call);
+        final Object entries = call.getArguments().get("0");
+        if (call.getArguments().size() != 1 || !(entries instanceof List<?>)) {
+            throw new XmlRpcFaultException(XmlRpcFaultException.INVALID_PARAMS, 
+                XmlRpc.MULTICALL + " expects a single array of calls");
+        }
+        return List.class.cast(entries);
+    }
+    
+    /**
+     * Creates a call of the specified entry.
+     * 
+     * @param entry the call struct
+     * @return a new call
+     * @throws XmlRpcFaultException if the entry is malformed or a nested multicall
+     */
+    static XmlRpcCall callOf(Object entry) {
+        if (!(entry instanceof Map<?, ?>)) {
+            throw new XmlRpcFaultException(XmlRpcFaultException.INVALID_PARAMS, "Call must be a struct");
+        }
+        final Map<?, ?> struct = Map.class.cast(entry);
+        final Object methodName = struct.get(METHOD_NAME);
+        if (!(methodName instanceof String)) {
+            throw new XmlRpcFaultException(XmlRpcFaultException.INVALID_PARAMS, "Missing methodName");
+        } else if (XmlRpc.MULTICALL.equals(methodName)) {
+            throw new XmlRpcFaultException(XmlRpcFaultException.INVALID_PARAMS, "Recursive multicall forbidden");
+        }
+        final Object params = struct.get(PARAMS);
+        if (params != null && !(params instanceof List<?>)) {
+            throw new XmlRpcFaultException(XmlRpcFaultException.INVALID_PARAMS, "Params must be an array");
+        }
+        return new XmlRpcCall(String.class.cast(methodName), XmlRpcArguments.of(List.class.cast(params)));
+    }
+    
+    /**
+     * Completes the call at the specified index.
+     * 
+     * @param index the index of the call
+     * @param response the result {@link Map} or a {@link Throwable}
+     * @return true if this was the last pending call of this batch
+     * @throws IllegalStateException if the call at index is already completed
+     */
+    public boolean complete(int index, Object response) {
+        Preconditions.checkNotNull(response, "Response");
+        final Object value;
+        if (response instanceof Throwable) {
+            final Throwable throwable = Throwable.class.cast(response);
+            value = ImmutableMap.<String, Object>of(
+                XmlRpc.FAULT_CODE, Integer.valueOf(XmlRpcFaultException.faultCodeOf(throwable)),
+                XmlRpc.FAULT_STRING, throwable.toString()
+            );
+        } else {
+            value = Collections.singletonList(response);
+        }
+        Preconditions.checkState(responses.compareAndSet(index, null, value), "%s already completed", index);
+        return remaining.decrementAndGet() == 0;
+    }
+    
+    /**
+     * Returns the responses of all calls in request order.
+     * 
+     * @return the responses
+     * @throws IllegalStateException if not all calls are completed
+     */
+    public List<Object> getResponses() {
+        Preconditions.checkState(remaining.get() == 0, "%s calls pending", remaining.get());
+        final Object[] array = new Object[responses.length()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = responses.get(i);
+        }
+        return Arrays.asList(array);
+    }
+    
+}
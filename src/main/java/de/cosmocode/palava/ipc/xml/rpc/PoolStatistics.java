@@ -0,0 +1,59 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+/**
+ * Exposes usage counters of an object pool, which can be used to size it.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public interface PoolStatistics {
+
+    /**
+     * Returns the number of requests which were served by a pooled instance.
+     * 
+     * @since 1.1
+     * @return the number of hits
+     */
+    long getHits();
+    
+    /**
+     * Returns the number of requests which required the creation of a new instance.
+     * 
+     * @since 1.1
+     * @return the number of misses
+     */
+    long getMisses();
+    
+    /**
+     * Returns the number of released instances which were dropped because the pool was full.
+     * 
+     * @since 1.1
+     * @return the number of discarded instances
+     */
+    long getDiscards();
+    
+    /**
+     * Returns the number of instances currently idling in the pool.
+     * 
+     * @since 1.1
+     * @return the current pool size
+     */
+    int getIdle();
+    
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Map;
+
+/**
+ * Invalidation hooks of the cache which stores serialized responses of the methods
+ * listed in {@link XmlRpc#CACHED_METHODS}. Commands which modify data read by cached
+ * methods should invalidate the affected responses.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public interface ResponseCache {
+
+    /**
+     * Invalidates all cached responses of the specified method.
+     * 
+     * @since 1.1
+     * @param methodName the method name
+     * @throws NullPointerException if methodName is null
+     */
+    void invalidate(String methodName);
+    
+    /**
+     * Invalidates the cached response of the specified method and arguments.
+     * 
+     * @since 1.1
+     * @param methodName the method name
+     * @param arguments the arguments as passed to the command
+     * @throws NullPointerException if methodName or arguments is null
+     */
+    void invalidate(String methodName, Map<String, ?> arguments);
+    
+    /**
+     * Invalidates all cached responses.
+     * 
+     * @since 1.1
+     */
+    void invalidateAll();
+    
+}
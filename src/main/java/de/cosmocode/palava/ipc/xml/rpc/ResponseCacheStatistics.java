@@ -0,0 +1,67 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+/**
+ * Exposes usage counters of the {@link ResponseCache}, which can be used to size it.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public interface ResponseCacheStatistics {
+
+    /**
+     * Returns the number of calls which were answered using a cached response.
+     * 
+     * @since 1.1
+     * @return the number of hits
+     */
+    long getHits();
+    
+    /**
+     * Returns the number of calls of cached methods which had to be executed.
+     * 
+     * @since 1.1
+     * @return the number of misses
+     */
+    long getMisses();
+    
+    /**
+     * Returns the number of responses which were evicted because the cache was full.
+     * 
+     * @since 1.1
+     * @return the number of evictions
+     */
+    long getEvictions();
+    
+    /**
+     * Returns the number of responses which were dropped because they expired.
+     * 
+     * @since 1.1
+     * @return the number of expirations
+     */
+    long getExpirations();
+    
+    /**
+     * Returns the number of currently cached responses.
+     * 
+     * @since 1.1
+     * @return the current cache size
+     */
+    int getSize();
+    
+}
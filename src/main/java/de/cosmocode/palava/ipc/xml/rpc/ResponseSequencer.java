@@ -0,0 +1,120 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Map;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.channel.Channel;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Writes the responses of pipelined requests to a {@link Channel} in the order
+ * the requests arrived, regardless of the order in which they complete.
+ * Every request {@link #register() registers} a sequence number when it arrives
+ * and {@link #complete(long, Object) completes} it once its response is known.
+ * Responses completing early are held back until all preceding responses have been written.
+ * Only one thread at a time writes, outside of the lock, so writes which block, e.g. while
+ * waiting for a slow client, never block threads completing other requests of the channel.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class ResponseSequencer {
+
+    private final Channel channel;
+    
+    private final Map<Long, Object> completed = Maps.newHashMap();
+    
+    private long registered;
+    
+    private long written;
+    
+    private boolean writing;
+    
+    public ResponseSequencer(Channel channel) {
+        this.channel = Preconditions.checkNotNull(channel, "Channel");
+    }
+    
+    /**
+     * Registers a new request.
+     * 
+     * @return the sequence number of the request
+     */
+    public synchronized long register() {
+        return registered++;
+    }
+    
+    /**
+     * Completes the request with the specified sequence number and writes
+     * all responses which are no longer waiting for a preceding one.
+     * 
+     * @param sequence the sequence number returned by {@link #register()}
+     * @param response the response message
+     * @throws NullPointerException if response is null
+     * @throws IllegalArgumentException if sequence was not registered or is already completed
+     */
+    public void complete(long sequence, Object response) {
+        Preconditions.checkNotNull(response, "Response");
+        synchronized (this) {
+            Preconditions.checkArgument(sequence >= written && sequence < registered, 
+                "Unknown sequence %s", sequence);
+            Preconditions.checkArgument(!completed.containsKey(sequence), "%s already completed", sequence);
+            completed.put(sequence, response);
+            // the writing thread picks up this response once it's next
+            if (writing) return;
+            writing = true;
+        }
+        
+        boolean done = false;
+        try {
+            while (true) {
+                final Object next;
+                synchronized (this) {
+                    next = completed.remove(written);
+                    if (next == null) {
+                        writing = false;
+                        done = true;
+                        return;
+                    }
+                    written++;
+                }
+                channel.write(next);
+            }
+        } finally {
+            if (!done) {
+                synchronized (this) {
+                    writing = false;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of registered requests which have not been written yet.
+     * 
+     * @return the number of pending responses
+     */
+    public synchronized int pending() {
+        return (int) (registered - written);
+    }
+    
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+
+/**
+ * Validates encoded responses against the xml schema off the response path.
+ * Validation runs on a single background thread with a bounded queue.
+ * Responses which can't be queued are skipped rather than slowing down the
+ * encoder. Invalid responses are logged and counted by the {@link ValidationPolicy}.
+ * The thread is stopped when the framework disposes this validator.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class ResponseValidator implements Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseValidator.class);
+    
+    private static final int QUEUE_SIZE = 256;
+    
+    private final Schema schema;
+    
+    private final ValidationPolicy policy;
+    
+    private final ExecutorService executor;
+    
+    @Inject
+    public ResponseValidator(@XmlRpc Schema schema, ValidationPolicy policy) {
+        this.schema = Preconditions.checkNotNull(schema, "Schema");
+        this.policy = Preconditions.checkNotNull(policy, "Policy");
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new DaemonThreadFactory(), new SkipPolicy());
+    }
+    
+    /**
+     * Validates the readable bytes of the specified buffer asynchronously, if the
+     * {@link ValidationPolicy} samples the current response. The buffer is not modified.
+     * 
+     * @since 1.1
+     * @param buffer the encoded response
+     */
+    public void validate(ChannelBuffer buffer) {
+        if (!policy.sampleResponse()) return;
+        final byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.getBytes(buffer.readerIndex(), bytes);
+        executor.execute(new Validation(bytes));
+    }
+    
+    /**
+     * Counts the current response as skipped, if the {@link ValidationPolicy} samples it.
+     * Used for responses which are never available as a whole, e.g. chunked ones.
+     * 
+     * @since 1.1
+     */
+    public void skip() {
+        if (!policy.sampleResponse()) return;
+        policy.responseSkipped();
+    }
+    
+    @Override
+    public void dispose() {
+        LOG.trace("Stopping response validation, dropping {} queued responses", 
+            executor.shutdownNow().size());
+    }
+    
+    /**
+     * A queued validation of a single response.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private final class Validation implements Runnable {
+        
+        private final byte[] bytes;
+        
+        public Validation(byte[] bytes) {
+            this.bytes = bytes;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                schema.newValidator().validate(new StreamSource(new ByteArrayInputStream(bytes)));
+                policy.responseValidated(true);
+            } catch (SAXException e) {
+                policy.responseValidated(false);
+                LOG.warn("Invalid xml-rpc response: {}", e.getMessage());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+    }
+    
+    /**
+     * Counts and drops validations which can't be queued.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private final class SkipPolicy implements RejectedExecutionHandler {
+        
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            policy.responseSkipped();
+        }
+        
+    }
+    
+    /**
+     * Creates the daemon thread which runs the validations.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "xml-rpc-response-validator");
+            thread.setDaemon(true);
+            return thread;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.ipc.IpcConnection;
+import de.cosmocode.palava.ipc.IpcSession;
+
+/**
+ * A view of an {@link IpcConnection} which is bound to the session of a single request.
+ * Pipelined requests of a keep-alive connection may belong to different sessions, the
+ * shared connection only knows the session of the latest request. Everything but
+ * {@link IpcConnection#getSession()} is delegated to the shared connection, except for
+ * {@link Object#equals(Object)}, {@link Object#hashCode()} and {@link Object#toString()}
+ * which are answered by the view itself, bound connections are only equal to themselves.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class SessionBoundConnection implements InvocationHandler {
+
+    private static final Method GET_SESSION;
+    
+    private static final Method EQUALS;
+    
+    private static final Method HASH_CODE;
+    
+    private static final Method TO_STRING;
+    
+    /**
+     * The constructor of the proxy class, looked up once instead of per request.
+     */
+    private static final Constructor<?> CONSTRUCTOR;
+    
+    static {
+        try {
+            GET_SESSION = IpcConnection.class.getMethod("getSession");
+            EQUALS = Object.class.getMethod("equals", Object.class);
+            HASH_CODE = Object.class.getMethod("hashCode");
+            TO_STRING = Object.class.getMethod("toString");
+            CONSTRUCTOR = Proxy.getProxyClass(IpcConnection.class.getClassLoader(), IpcConnection.class).
+                getConstructor(InvocationHandler.class);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
+    private final IpcConnection connection;
+    
+    private final IpcSession session;
+    
+    private SessionBoundConnection(IpcConnection connection, IpcSession session) {
+        this.connection = connection;
+        this.session = session;
+    }
+    
+    /**
+     * Binds the specified connection to its current session.
+     * 
+     * @param connection the shared connection of a channel
+     * @return a connection which keeps returning the current session of connection
+     * @throws NullPointerException if connection is null
+     */
+    static IpcConnection bind(IpcConnection connection) {
+        Preconditions.checkNotNull(connection, "Connection");
+        final IpcSession session = connection.getSession();
+        try {
+            return IpcConnection.class.cast(CONSTRUCTOR.newInstance(new SessionBoundConnection(connection, session)));
+        } catch (InstantiationException e) {
+            throw new IllegalStateException(e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (GET_SESSION.equals(method)) {
+            return session;
+        } else if (EQUALS.equals(method)) {
+            return proxy == args[0];
+        } else if (HASH_CODE.equals(method)) {
+            return System.identityHashCode(proxy);
+        } else if (TO_STRING.equals(method)) {
+            return String.format("%s bound to %s", connection, session);
+        }
+        try {
+            return method.invoke(connection, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+    
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.FileBackedOutputStream;
+
+/**
+ * An incremental base64 decoder which decodes {@code base64} content chunk by chunk,
+ * as it is reported by the xml parser. Decoded bytes are kept in memory until
+ * the configured threshold is crossed and spilled to a temporary file afterwards.
+ * 
+ * <p>
+ *   If validation is enabled, the decoder enforces the same lexical rules as
+ *   {@link XmlRpcGrammar#isBase64(String)}, otherwise invalid characters are skipped,
+ *   like {@link javax.xml.bind.DatatypeConverter#parseBase64Binary(String)} does.
+ * </p>
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@NotThreadSafe
+final class StreamingBase64Decoder {
+
+    private static final int BLOCK = 3 * 1024;
+    
+    private final boolean validate;
+    
+    private final FileBackedOutputStream output;
+    
+    private final byte[] block = new byte[BLOCK];
+    
+    private int position;
+    
+    private int quantum;
+    
+    private int digits;
+    
+    private int count;
+    
+    private int padding;
+    
+    private int last;
+    
+    public StreamingBase64Decoder(int threshold, boolean validate) {
+        Preconditions.checkArgument(threshold >= 0, "Threshold must not be negative");
+        this.validate = validate;
+        // temporary files of abandoned decoders are deleted on finalization
+        this.output = new FileBackedOutputStream(threshold, true);
+    }
+    
+    /**
+     * Decodes the specified characters.
+     * 
+     * @since 1.1
+     * @param chars the characters
+     * @param start the offset
+     * @param length the number of characters to decode
+     * @throws IllegalArgumentException if validation is enabled and the characters are not valid base64
+     * @throws IllegalStateException if writing to the underlying storage failed
+     */
+    public void decode(char[] chars, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            final char c = chars[i];
+            if (XmlRpcGrammar.isWhitespace(c)) continue;
+            if (c == '=') {
+                padding++;
+                count++;
+                continue;
+            }
+            final int digit = XmlRpcGrammar.base64Digit(c);
+            if (digit == -1 || padding > 0) {
+                // no data after padding
+                Preconditions.checkArgument(!validate, "Invalid base64");
+                continue;
+            }
+            count++;
+            last = digit;
+            quantum = quantum << 6 | digit;
+            if (++digits == 4) {
+                write(quantum >> 16);
+                write(quantum >> 8);
+                write(quantum);
+                quantum = 0;
+                digits = 0;
+            }
+        }
+    }
+    
+    private void write(int b) {
+        if (position == BLOCK) {
+            flush();
+        }
+        block[position++] = (byte) b;
+    }
+    
+    private void flush() {
+        try {
+            output.write(block, 0, position);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        position = 0;
+    }
+    
+    /**
+     * Completes decoding and provides the decoded bytes. Closing the returned stream
+     * releases the underlying storage.
+     * 
+     * @since 1.1
+     * @return a stream over the decoded bytes
+     * @throws IllegalArgumentException if validation is enabled and the content is not valid base64
+     * @throws IllegalStateException if accessing the underlying storage failed
+     */
+    public InputStream finish() {
+        if (validate) {
+            Preconditions.checkArgument(count % 4 == 0 && padding <= 2, "Invalid base64");
+            // unused bits of the last digit must be zero
+            final int unused = padding == 1 ? 0x3 : padding == 2 ? 0xF : 0;
+            Preconditions.checkArgument((last & unused) == 0, "Invalid base64");
+        }
+        
+        if (digits == 2) {
+            write(quantum >> 4);
+        } else if (digits == 3) {
+            write(quantum >> 10);
+            write(quantum >> 2);
+        }
+        flush();
+        
+        try {
+            output.close();
+            return new ReleasingInputStream(output.getSupplier().getInput(), output);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * An input stream which releases the backing storage when being closed.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private static final class ReleasingInputStream extends FilterInputStream {
+        
+        private final FileBackedOutputStream storage;
+        
+        public ReleasingInputStream(InputStream in, FileBackedOutputStream storage) {
+            super(in);
+            this.storage = storage;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                storage.reset();
+            }
+        }
+        
+    }
+    
+}
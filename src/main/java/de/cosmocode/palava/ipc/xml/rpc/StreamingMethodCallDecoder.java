@@ -0,0 +1,135 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * A decoder which decodes {@link ChannelBuffer}s directly into {@link XmlRpcCall}s
+ * using a StAX pull parser. This decoder replaces the {@link JaxbDecoder} and
+ * {@link MethodCallDecoder} pair when {@link DecodingMode#STREAMING} is configured.
+ * 
+ * <p>
+ *   Requests selected by the {@link ValidationPolicy} are validated by the {@link MethodCallParser}
+ *   while parsing instead of using the xml schema. Requests to methods which are always validated
+ *   are parsed a second time, if they weren't sampled in the first place. Malformed requests are
+ *   reported using {@link XmlRpcFaultException}s.
+ * </p>
+ * 
+ * <p>
+ *   Decoded {@code base64} values exceeding {@link XmlRpc#BASE64_THRESHOLD} bytes
+ *   (default 64 KiB) are spilled to temporary files.
+ * </p>
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@Sharable
+@ThreadSafe
+final class StreamingMethodCallDecoder extends OneToOneDecoder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingMethodCallDecoder.class);
+    
+    private final XMLInputFactory factory;
+    
+    private final ValidationPolicy policy;
+    
+    private final DateTimeIso8601Codec codec;
+    
+    private int base64Threshold = 64 * 1024;
+    
+    @Inject
+    public StreamingMethodCallDecoder(@XmlRpc XMLInputFactory factory, ValidationPolicy policy, 
+        DateTimeIso8601Codec codec) {
+        this.factory = Preconditions.checkNotNull(factory, "Factory");
+        this.policy = Preconditions.checkNotNull(policy, "Policy");
+        this.codec = Preconditions.checkNotNull(codec, "Codec");
+    }
+    
+    @Inject(optional = true)
+    public void setBase64Threshold(@Named(XmlRpc.BASE64_THRESHOLD) int base64Threshold) {
+        Preconditions.checkArgument(base64Threshold >= 0, "Base64Threshold must not be negative");
+        this.base64Threshold = base64Threshold;
+    }
+    
+    @Override
+    protected Object decode(ChannelHandlerContext context, Channel channel, Object message) throws Exception {
+        if (message instanceof ChannelBuffer) {
+            final ChannelBuffer buffer = ChannelBuffer.class.cast(message);
+            
+            final boolean sampled = policy.sampleRequest();
+            final XmlRpcCall call = decode(buffer, sampled);
+            
+            if (!sampled && policy.isValidated(call.getMethodName())) {
+                decode(buffer, true);
+            }
+            
+            LOG.trace("Decoded {} into {}", buffer, call);
+            return call;
+        } else {
+            return message;
+        }
+    }
+    
+    private XmlRpcCall decode(ChannelBuffer buffer, boolean validate) {
+        try {
+            final XmlRpcCall call = parse(buffer, validate);
+            if (validate) {
+                policy.requestValidated(true);
+            }
+            return call;
+        } catch (XMLStreamException e) {
+            throw new XmlRpcFaultException(XmlRpcFaultException.NOT_WELL_FORMED, e);
+        } catch (IllegalArgumentException e) {
+            if (validate) {
+                policy.requestValidated(false);
+            }
+            throw new XmlRpcFaultException(XmlRpcFaultException.INVALID_XML_RPC, e);
+        }
+    }
+    
+    private XmlRpcCall parse(ChannelBuffer buffer, boolean validate) throws XMLStreamException {
+        final XMLStreamReader reader = factory.createXMLStreamReader(new ChannelBufferInputStream(buffer.duplicate()));
+        
+        try {
+            final MethodCallParser parser = new MethodCallParser(validate, codec, base64Threshold);
+            while (reader.hasNext()) {
+                parser.consume(reader.next(), reader);
+            }
+            return parser.getCall();
+        } finally {
+            reader.close();
+        }
+    }
+    
+}
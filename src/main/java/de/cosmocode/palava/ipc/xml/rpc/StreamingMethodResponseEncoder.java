@@ -0,0 +1,190 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * An encoder which encodes {@link Map}s, {@link List}s of multicall responses
+ * and {@link Throwable}s directly into {@link ChannelBuffer}s.
+ * This encoder replaces the {@link MethodResponseEncoder} and {@link JaxbEncoder} pair
+ * when {@link EncodingMode#STREAMING} is configured.
+ * 
+ * <p>
+ *   If {@link XmlRpc#RESPONSE_CHUNK_SIZE} is configured, responses are sent as {@link HttpChunk}s
+ *   as soon as the encoded bytes cross the chunk size, while encoding is still in progress.
+ *   Smaller responses are sent as a whole. Chunked responses are not validated.
+ * </p>
+ * 
+ * <p>
+ *   Unless calls are executed {@link ExecutionMode#INLINE inline} on the i/o thread, which must not
+ *   block, encoding waits for each chunk to be written while the channel is not writable. This bounds
+ *   the memory per response by the channel's write buffer and the chunk size. Inline execution
+ *   queues all chunks of a response in the channel if the client reads slower than the response
+ *   is encoded.
+ * </p>
+ * 
+ * <p>
+ *   If encoding fails after the first chunks have been sent, the channel is closed,
+ *   as the response can't be replaced by a fault anymore.
+ * </p>
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@Sharable
+@ThreadSafe
+final class StreamingMethodResponseEncoder extends OneToOneEncoder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingMethodResponseEncoder.class);
+    
+    private final MethodResponseWriter writer;
+    
+    private final ResponseValidator validator;
+    
+    private int chunkSize;
+    
+    private ExecutionMode execution = ExecutionMode.INLINE;
+    
+    @Inject
+    public StreamingMethodResponseEncoder(MethodResponseWriter writer, ResponseValidator validator) {
+        this.writer = Preconditions.checkNotNull(writer, "Writer");
+        this.validator = Preconditions.checkNotNull(validator, "Validator");
+    }
+    
+    @Inject(optional = true)
+    public void setChunkSize(@Named(XmlRpc.RESPONSE_CHUNK_SIZE) int chunkSize) {
+        Preconditions.checkArgument(chunkSize >= 0, "ChunkSize must not be negative");
+        this.chunkSize = chunkSize;
+    }
+    
+    @Inject(optional = true)
+    public void setExecution(@Named(XmlRpc.EXECUTION) ExecutionMode execution) {
+        this.execution = Preconditions.checkNotNull(execution, "Execution");
+    }
+    
+    @Override
+    protected Object encode(ChannelHandlerContext context, Channel channel, Object message) throws Exception {
+        if (message instanceof Map<?, ?> || message instanceof List<?>) {
+            final ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+            if (chunkSize == 0) {
+                writer.writeResponse(message, buffer);
+            } else {
+                final ChunkingFlusher flusher = new ChunkingFlusher(context, channel);
+                try {
+                    writer.writeResponse(message, buffer, flusher);
+                } catch (RuntimeException e) {
+                    if (flusher.started) {
+                        // the client already received parts of the response, a fault can't follow
+                        LOG.warn("Closing channel " + channel + " after encoding a chunked response failed", e);
+                        channel.close();
+                        return null;
+                    } else {
+                        throw e;
+                    }
+                }
+                if (flusher.started) {
+                    flusher.send(buffer);
+                    LOG.trace("Encoded {} into {} chunks", message, Integer.valueOf(flusher.chunks));
+                    validator.skip();
+                    return HttpChunk.LAST_CHUNK;
+                }
+            }
+            LOG.trace("Encoded {} into {}", message, buffer);
+            validator.validate(buffer);
+            return buffer;
+        } else if (message instanceof Throwable) {
+            final ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+            writer.writeFault(Throwable.class.cast(message), buffer);
+            validator.validate(buffer);
+            return buffer;
+        } else {
+            return message;
+        }
+    }
+
+    /**
+     * A flusher which sends the encoded bytes as {@link HttpChunk}s once they
+     * cross the configured chunk size.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private final class ChunkingFlusher implements MethodResponseWriter.Flusher {
+        
+        private final ChannelHandlerContext context;
+        
+        private final Channel channel;
+        
+        private final boolean blocking = execution != ExecutionMode.INLINE;
+        
+        private boolean started;
+        
+        private int chunks;
+        
+        public ChunkingFlusher(ChannelHandlerContext context, Channel channel) {
+            this.context = context;
+            this.channel = channel;
+        }
+        
+        @Override
+        public void flush(ChannelBuffer buffer) {
+            if (buffer.readableBytes() < chunkSize) return;
+            started = true;
+            send(buffer);
+        }
+        
+        public void send(ChannelBuffer buffer) {
+            if (!buffer.readable()) return;
+            // the buffer is reused, its capacity bounds the memory used per response
+            final ChannelBuffer content = buffer.copy();
+            buffer.clear();
+            chunks++;
+            final ChannelFuture future = Channels.future(channel);
+            Channels.write(context, future, new DefaultHttpChunk(content));
+            if (blocking && !channel.isWritable()) {
+                // lets the client catch up instead of queueing the whole response
+                future.awaitUninterruptibly();
+                if (!future.isSuccess()) {
+                    throw new IllegalStateException("Writing chunk failed", future.getCause());
+                }
+            }
+        }
+        
+    }
+
+}
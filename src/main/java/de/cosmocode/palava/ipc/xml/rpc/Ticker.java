@@ -0,0 +1,53 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+/**
+ * A source of nanosecond time used to expire stored responses, replaceable in tests.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+abstract class Ticker {
+    
+    private static final Ticker SYSTEM = new Ticker() {
+        
+        @Override
+        public long read() {
+            return System.nanoTime();
+        }
+        
+    };
+    
+    /**
+     * Returns the current time in nanoseconds, relative to an arbitrary origin.
+     * 
+     * @return the current time
+     */
+    public abstract long read();
+    
+    /**
+     * Returns the ticker backed by {@link System#nanoTime()}.
+     * 
+     * @return the system ticker
+     */
+    public static Ticker systemTicker() {
+        return SYSTEM;
+    }
+    
+}
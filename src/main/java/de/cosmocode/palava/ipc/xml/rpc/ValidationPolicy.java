@@ -0,0 +1,182 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * Decides which requests and responses are validated. Besides the all-or-nothing
+ * {@link XmlRpc#VALIDATE} setting, requests can be validated by sampling a configurable
+ * fraction of them ({@link XmlRpc#VALIDATION_SAMPLE_RATE}) or by listing method names
+ * ({@link XmlRpc#VALIDATED_METHODS}, comma separated). Responses can be sampled
+ * using {@link XmlRpc#RESPONSE_VALIDATION_SAMPLE_RATE}, they are validated
+ * asynchronously by the {@link ResponseValidator}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class ValidationPolicy implements ValidationStatistics {
+
+    // sampled on all i/o threads, a shared random would contend on its seed
+    private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+        
+    };
+    
+    private final AtomicLong validatedRequests = new AtomicLong();
+    
+    private final AtomicLong invalidRequests = new AtomicLong();
+    
+    private final AtomicLong validatedResponses = new AtomicLong();
+    
+    private final AtomicLong invalidResponses = new AtomicLong();
+    
+    private final AtomicLong skippedResponses = new AtomicLong();
+    
+    private boolean validate;
+    
+    private double sampleRate;
+    
+    private double responseSampleRate;
+    
+    private Set<String> methods = ImmutableSet.of();
+    
+    @Inject(optional = true)
+    public void setValidate(@Named(XmlRpc.VALIDATE) boolean validate) {
+        this.validate = validate;
+    }
+    
+    @Inject(optional = true)
+    public void setSampleRate(@Named(XmlRpc.VALIDATION_SAMPLE_RATE) double sampleRate) {
+        Preconditions.checkArgument(sampleRate >= 0 && sampleRate <= 1, "SampleRate must be within [0, 1]");
+        this.sampleRate = sampleRate;
+    }
+    
+    @Inject(optional = true)
+    public void setMethods(@Named(XmlRpc.VALIDATED_METHODS) String methods) {
+        Preconditions.checkNotNull(methods, "Methods");
+        this.methods = ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(methods));
+    }
+    
+    @Inject(optional = true)
+    public void setResponseSampleRate(@Named(XmlRpc.RESPONSE_VALIDATION_SAMPLE_RATE) double responseSampleRate) {
+        Preconditions.checkArgument(responseSampleRate >= 0 && responseSampleRate <= 1, 
+            "ResponseSampleRate must be within [0, 1]");
+        this.responseSampleRate = responseSampleRate;
+    }
+    
+    /**
+     * Checks whether all requests and responses are validated synchronously.
+     * 
+     * @since 1.1
+     * @return true if {@link XmlRpc#VALIDATE} is enabled
+     */
+    public boolean isValidateAll() {
+        return validate;
+    }
+    
+    /**
+     * Decides whether the next request should be validated, before
+     * its method name is known.
+     * 
+     * @since 1.1
+     * @return true if the request should be validated
+     */
+    public boolean sampleRequest() {
+        return validate || sample(sampleRate);
+    }
+    
+    /**
+     * Checks whether requests to the specified method are always validated.
+     * 
+     * @since 1.1
+     * @param methodName the called method
+     * @return true if requests to the specified method should be validated
+     */
+    public boolean isValidated(String methodName) {
+        return methods.contains(methodName);
+    }
+    
+    /**
+     * Decides whether the next response should be validated asynchronously.
+     * 
+     * @since 1.1
+     * @return true if the response should be validated
+     */
+    public boolean sampleResponse() {
+        return sample(responseSampleRate);
+    }
+    
+    private boolean sample(double rate) {
+        return rate > 0 && (rate >= 1 || random.get().nextDouble() < rate);
+    }
+    
+    void requestValidated(boolean valid) {
+        validatedRequests.incrementAndGet();
+        if (!valid) invalidRequests.incrementAndGet();
+    }
+    
+    void responseValidated(boolean valid) {
+        validatedResponses.incrementAndGet();
+        if (!valid) invalidResponses.incrementAndGet();
+    }
+    
+    void responseSkipped() {
+        skippedResponses.incrementAndGet();
+    }
+    
+    @Override
+    public long getValidatedRequests() {
+        return validatedRequests.get();
+    }
+    
+    @Override
+    public long getInvalidRequests() {
+        return invalidRequests.get();
+    }
+    
+    @Override
+    public long getValidatedResponses() {
+        return validatedResponses.get();
+    }
+    
+    @Override
+    public long getInvalidResponses() {
+        return invalidResponses.get();
+    }
+    
+    @Override
+    public long getSkippedResponses() {
+        return skippedResponses.get();
+    }
+    
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+/**
+ * Exposes counters of the request and response validation, as configured
+ * by the {@link ValidationPolicy}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public interface ValidationStatistics {
+
+    /**
+     * Returns the number of requests which were validated.
+     * 
+     * @since 1.1
+     * @return the number of validated requests
+     */
+    long getValidatedRequests();
+    
+    /**
+     * Returns the number of validated requests which were rejected.
+     * 
+     * @since 1.1
+     * @return the number of invalid requests
+     */
+    long getInvalidRequests();
+    
+    /**
+     * Returns the number of responses which were validated asynchronously.
+     * 
+     * @since 1.1
+     * @return the number of validated responses
+     */
+    long getValidatedResponses();
+    
+    /**
+     * Returns the number of asynchronously validated responses which were invalid.
+     * 
+     * @since 1.1
+     * @return the number of invalid responses
+     */
+    long getInvalidResponses();
+    
+    /**
+     * Returns the number of sampled responses which were not validated
+     * because the validation queue was full.
+     * 
+     * @since 1.1
+     * @return the number of skipped responses
+     */
+    long getSkippedResponses();
+    
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.XMLConstants;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * Logs the raw bytes of requests and responses on trace level. Only a configurable
+ * fraction of requests ({@link XmlRpc#WIRE_LOG_SAMPLE_RATE}) is captured and every
+ * capture is limited to {@link XmlRpc#WIRE_LOG_MAX_SIZE} bytes. Captured messages
+ * are pretty printed lazily, i.e. only if the logging backend renders them. Pretty printing
+ * never resolves external entities, messages declaring a doctype are logged as they are.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class WireLogger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WireLogger.class);
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private static final TransformerFactory FACTORY = newTransformerFactory();
+    
+    // sampled on all i/o threads, a shared random would contend on its seed
+    private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+        
+    };
+    
+    private double sampleRate = 1.0;
+    
+    private int maxSize = 8192;
+    
+    @Inject(optional = true)
+    public void setSampleRate(@Named(XmlRpc.WIRE_LOG_SAMPLE_RATE) double sampleRate) {
+        Preconditions.checkArgument(sampleRate >= 0 && sampleRate <= 1, "SampleRate must be within [0, 1]");
+        this.sampleRate = sampleRate;
+    }
+    
+    @Inject(optional = true)
+    public void setMaxSize(@Named(XmlRpc.WIRE_LOG_MAX_SIZE) int maxSize) {
+        Preconditions.checkArgument(maxSize >= 0, "MaxSize must not be negative");
+        this.maxSize = maxSize;
+    }
+    
+    /**
+     * Decides whether the current request and its response should be captured.
+     * 
+     * @since 1.1
+     * @return true if trace logging is enabled and the request was sampled
+     */
+    public boolean sample() {
+        return LOG.isTraceEnabled() && sampled();
+    }
+    
+    /**
+     * Decides whether a request is sampled, regardless of the log level.
+     * 
+     * @return true with the probability of the configured sample rate
+     */
+    boolean sampled() {
+        if (sampleRate == 0) return false;
+        return sampleRate >= 1 || random.get().nextDouble() < sampleRate;
+    }
+    
+    /**
+     * Logs the readable bytes of the specified request content.
+     * The buffer is not modified.
+     * 
+     * @since 1.1
+     * @param channel the channel the request was received on
+     * @param content the request content
+     */
+    public void logRequest(Channel channel, ChannelBuffer content) {
+        LOG.trace("Xml-Rpc request on {}:\n{}", channel, capture(content));
+    }
+    
+    /**
+     * Logs the readable bytes of the specified response content.
+     * The buffer is not modified.
+     * 
+     * @since 1.1
+     * @param channel the channel the response is written to
+     * @param content the response content
+     */
+    public void logResponse(Channel channel, ChannelBuffer content) {
+        LOG.trace("Xml-Rpc response on {}:\n{}", channel, capture(content));
+    }
+    
+    /**
+     * Copies the readable bytes of the specified content, limited to the configured maximum size.
+     * 
+     * @param content the message content
+     * @return a capture which renders the message in {@link Object#toString()}
+     */
+    Object capture(ChannelBuffer content) {
+        return new Capture(content, maxSize);
+    }
+    
+    private static TransformerFactory newTransformerFactory() {
+        final TransformerFactory factory = TransformerFactory.newInstance();
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        } catch (TransformerConfigurationException e) {
+            LOG.warn("Secure processing is not supported by {}", factory);
+        }
+        // XMLConstants.ACCESS_EXTERNAL_DTD and ACCESS_EXTERNAL_STYLESHEET, available since java 7
+        for (String attribute : new String[] {"accessExternalDTD", "accessExternalStylesheet"}) {
+            try {
+                factory.setAttribute("http://javax.xml.XMLConstants/property/" + attribute, "");
+            } catch (IllegalArgumentException e) {
+                LOG.debug("{} does not support {}", factory, attribute);
+            }
+        }
+        return factory;
+    }
+    
+    /**
+     * A copy of at most maxSize bytes of a message which pretty prints
+     * itself in {@link #toString()}.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private static final class Capture {
+        
+        private final byte[] bytes;
+        
+        private final int length;
+        
+        public Capture(ChannelBuffer content, int maxSize) {
+            this.length = content.readableBytes();
+            this.bytes = new byte[Math.min(length, maxSize)];
+            content.getBytes(content.readerIndex(), bytes);
+        }
+        
+        @Override
+        public String toString() {
+            final String raw = new String(bytes, UTF_8);
+            if (bytes.length < length) {
+                return raw + "... (" + (length - bytes.length) + " more bytes)";
+            } else if (raw.contains("<!DOCTYPE")) {
+                // xml-rpc has no doctype, don't let the transformer resolve anything
+                return raw;
+            }
+            
+            try {
+                final Transformer transformer;
+                synchronized (FACTORY) {
+                    transformer = FACTORY.newTransformer();
+                }
+                transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+                transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+                final StringWriter writer = new StringWriter();
+                transformer.transform(new StreamSource(new StringReader(raw)), new StreamResult(writer));
+                return writer.toString();
+            } catch (TransformerException e) {
+                return raw;
+            }
+        }
+        
+    }
+    
+}
@@ -43,6 +43,8 @@ public @interface XmlRpc {
     
     String FAULT_STRING = "faultString";
     
+    String MULTICALL = "system.multicall";
+    
     String PREFIX = Ipc.PREFIX + "xmlrpc.";
     
     String SCHEMA = PREFIX + "schema";
@@ -51,4 +53,66 @@ public @interface XmlRpc {
     
     String COOKIE_NAME = PREFIX + "cookieName";
     
+    String DECODING = PREFIX + "decoding";
+    
+    String ENCODING = PREFIX + "encoding";
+    
+    String POOL_SIZE = PREFIX + "poolSize";
+    
+    String MARSHALLER_POOL = PREFIX + "marshallerPool";
+    
+    String UNMARSHALLER_POOL = PREFIX + "unmarshallerPool";
+    
+    String VALIDATION_SAMPLE_RATE = PREFIX + "validationSampleRate";
+    
+    String VALIDATED_METHODS = PREFIX + "validatedMethods";
+    
+    String RESPONSE_VALIDATION_SAMPLE_RATE = PREFIX + "responseValidationSampleRate";
+    
+    String WIRE_LOG_SAMPLE_RATE = PREFIX + "wireLogSampleRate";
+    
+    String WIRE_LOG_MAX_SIZE = PREFIX + "wireLogMaxSize";
+    
+    String TIME_ZONE = PREFIX + "timeZone";
+    
+    String BASE64_THRESHOLD = PREFIX + "base64Threshold";
+    
+    String MAX_CONTENT_LENGTH = PREFIX + "maxContentLength";
+    
+    String RESPONSE_CHUNK_SIZE = PREFIX + "responseChunkSize";
+    
+    String COMPRESSION = PREFIX + "compression";
+    
+    String COMPRESSION_LEVEL = PREFIX + "compressionLevel";
+    
+    String COMPRESSION_THRESHOLD = PREFIX + "compressionThreshold";
+    
+    String PIPELINING_DEPTH = PREFIX + "pipeliningDepth";
+    
+    String EXECUTION = PREFIX + "execution";
+    
+    String EXECUTOR = "xmlrpc";
+    
+    String FUTURE = PREFIX + "future";
+    
+    String PARALLEL_METHODS = PREFIX + "parallelMethods";
+    
+    String MULTICALL_PARALLELISM = PREFIX + "multicallParallelism";
+    
+    String CACHED_METHODS = PREFIX + "cachedMethods";
+    
+    String CACHE_MAX_SIZE = PREFIX + "cacheMaxSize";
+    
+    String CACHE_TTL = PREFIX + "cacheTtl";
+    
+    String CACHE_TTL_UNIT = PREFIX + "cacheTtlUnit";
+    
+    String COALESCED_METHODS = PREFIX + "coalescedMethods";
+    
+    String IDEMPOTENCY_MAX_SIZE = PREFIX + "idempotencyMaxSize";
+    
+    String IDEMPOTENCY_TTL = PREFIX + "idempotencyTtl";
+    
+    String IDEMPOTENCY_TTL_UNIT = PREFIX + "idempotencyTtlUnit";
+    
 }
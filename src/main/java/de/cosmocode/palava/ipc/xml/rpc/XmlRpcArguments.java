@@ -16,58 +16,331 @@
 
 package de.cosmocode.palava.ipc.xml.rpc;
 
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
+import com.google.common.base.Functions;
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 
 import de.cosmocode.collections.utility.Utility;
 import de.cosmocode.collections.utility.UtilitySet;
 import de.cosmocode.palava.ipc.AbstractIpcArguments;
 import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.MapIpcArguments;
 
 /**
  * Xml-rpc implementation of the {@link IpcArguments} interface which supports
- * named and positional parameters.
+ * named and positional parameters. Arguments are backed directly by the decoded
+ * params, positional params are available using their index as key
+ * ({@code "0"}, {@code "1"}, ...). Lookups resolve keys on demand without copying
+ * or decoding other params. Modifications are stored in an overlay which
+ * shadows the backing params, removed params are hidden using tombstones.
  *
  * @since 1.0
  * @author Willi Schoenborn
  */
 final class XmlRpcArguments extends AbstractIpcArguments {
 
-    private final Map<String, Object> arguments = Maps.newHashMap();
+    private final List<?> positional;
+    
+    private final Map<?, ?> named;
+    
+    /**
+     * Marks removed backing params in the overlay.
+     */
+    private static final Object REMOVED = new Object();
+    
+    private final Map<String, Object> overlay = Maps.newHashMap();
+    
+    private boolean cleared;
     
     public XmlRpcArguments(List<?> params) {
-        Preconditions.checkNotNull(params, "Params");
+        this.positional = Preconditions.checkNotNull(params, "Params");
+        this.named = null;
+    }
+    
+    public XmlRpcArguments(Map<?, ?> params) {
+        this.positional = null;
+        this.named = Preconditions.checkNotNull(params, "Params");
+    }
+
+    /**
+     * Creates arguments from the specified decoded params. A single struct
+     * parameter will be treated as named parameters, everything else as positional.
+     * 
+     * @since 1.1
+     * @param params the decoded params, may be null
+     * @return arguments backed by the given params
+     */
+    static IpcArguments of(@Nullable List<?> params) {
+        if (params == null || params.isEmpty()) {
+            return MapIpcArguments.empty();
+        } else if (params.size() == 1 && params.get(0) instanceof Map<?, ?>) {
+            return new XmlRpcArguments(Map.class.cast(params.get(0)));
+        } else {
+            return new XmlRpcArguments(params);
+        }
+    }
     
-        int index = 0;
-        for (Object param : params) {
-            arguments.put(Integer.toString(index++), param);
+    /**
+     * Parses the specified key as position of a positional param.
+     * Only the canonical form produced by {@link Integer#toString(int)} is accepted.
+     * 
+     * @param key the key
+     * @return the position or -1 if key does not denote a positional param
+     */
+    private int positionOf(String key) {
+        final int length = key.length();
+        if (length == 0 || length > 10 || (length > 1 && key.charAt(0) == '0')) return -1;
+        long position = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = key.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            position = position * 10 + (c - '0');
         }
+        return position < positional.size() ? (int) position : -1;
     }
     
-    public XmlRpcArguments(Map<?, ?> params) {
-        Preconditions.checkNotNull(params, "Params");
-        
-        for (Entry<?, ?> entry : params.entrySet()) {
-            arguments.put(entry.getKey().toString(), entry.getValue());
+    private boolean backs(String key) {
+        if (cleared) {
+            return false;
+        } else if (positional == null) {
+            return named.containsKey(key);
+        } else {
+            return positionOf(key) != -1;
+        }
+    }
+    
+    private Object resolve(String key) {
+        if (positional == null) {
+            return named.get(key);
+        } else {
+            final int position = positionOf(key);
+            return position == -1 ? null : positional.get(position);
         }
     }
 
     @Override
     public Object get(Object key) {
-        return super.get(key == null ? null : key.toString());
+        if (key == null) return null;
+        final String name = key.toString();
+        if (overlay.containsKey(name)) {
+            final Object value = overlay.get(name);
+            return value == REMOVED ? null : value;
+        } else {
+            return backs(name) ? resolve(name) : null;
+        }
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        if (key == null) return false;
+        final String name = key.toString();
+        if (overlay.containsKey(name)) {
+            return overlay.get(name) != REMOVED;
+        } else {
+            return backs(name);
+        }
     }
     
     @Override
     public UtilitySet<Entry<String, Object>> entrySet() {
-        return Utility.asUtilitySet(arguments.entrySet());
+        return Utility.asUtilitySet(new EntrySet());
     }
 
     @Override
     public Object put(String key, Object value) {
-        return arguments.put(key, value);
+        Preconditions.checkNotNull(key, "Key");
+        final Object previous = get(key);
+        overlay.put(key, value);
+        return previous;
+    }
+    
+    @Override
+    public Object remove(Object key) {
+        if (key == null) return null;
+        final String name = key.toString();
+        final Object previous = get(name);
+        if (backs(name)) {
+            overlay.put(name, REMOVED);
+        } else {
+            overlay.remove(name);
+        }
+        return previous;
+    }
+    
+    @Override
+    public void clear() {
+        cleared = true;
+        overlay.clear();
+    }
+    
+    private Iterator<String> keys() {
+        final Iterator<String> backing = Iterators.filter(backingKeys(), new Predicate<String>() {
+            
+            @Override
+            public boolean apply(String input) {
+                return !overlay.containsKey(input) || overlay.get(input) != REMOVED;
+            }
+            
+        });
+        final Iterator<String> added = Iterators.filter(overlay.keySet().iterator(), new Predicate<String>() {
+            
+            @Override
+            public boolean apply(String input) {
+                return !backs(input);
+            }
+            
+        });
+        return Iterators.concat(backing, added);
+    }
+    
+    private Iterator<String> backingKeys() {
+        if (cleared) {
+            return ImmutableSet.<String>of().iterator();
+        } else if (positional == null) {
+            return Iterators.transform(named.keySet().iterator(), Functions.toStringFunction());
+        } else {
+            return new AbstractIterator<String>() {
+                
+                private int position;
+                
+                @Override
+                protected String computeNext() {
+                    if (position < positional.size()) {
+                        return Integer.toString(position++);
+                    } else {
+                        return endOfData();
+                    }
+                }
+                
+            };
+        }
+    }
+    
+    /**
+     * Entry set view which combines the backing params with the overlay.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private final class EntrySet extends AbstractSet<Entry<String, Object>> {
+        
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            // iterating a snapshot of the keys allows removal while values are still resolved lazily
+            final Iterator<String> keys = ImmutableList.copyOf(keys()).iterator();
+            return new Iterator<Entry<String, Object>>() {
+                
+                private String current;
+                
+                @Override
+                public boolean hasNext() {
+                    return keys.hasNext();
+                }
+                
+                @Override
+                public Entry<String, Object> next() {
+                    current = keys.next();
+                    return new ArgumentEntry(current);
+                }
+                
+                @Override
+                public void remove() {
+                    Preconditions.checkState(current != null, "next() has not been called");
+                    XmlRpcArguments.this.remove(current);
+                    current = null;
+                }
+                
+            };
+        }
+        
+        @Override
+        public int size() {
+            int size = 0;
+            if (!cleared) {
+                size = positional == null ? named.size() : positional.size();
+            }
+            for (Entry<String, Object> entry : overlay.entrySet()) {
+                if (!backs(entry.getKey())) {
+                    size++;
+                } else if (entry.getValue() == REMOVED) {
+                    size--;
+                }
+            }
+            return size;
+        }
+        
+        @Override
+        public void clear() {
+            XmlRpcArguments.this.clear();
+        }
+        
+    }
+    
+    /**
+     * Entry of an argument which resolves its value on demand and writes through to the arguments.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    private final class ArgumentEntry implements Entry<String, Object> {
+        
+        private final String key;
+        
+        public ArgumentEntry(String key) {
+            this.key = key;
+        }
+        
+        @Override
+        public String getKey() {
+            return key;
+        }
+        
+        @Override
+        public Object getValue() {
+            return get(key);
+        }
+        
+        @Override
+        public Object setValue(Object value) {
+            return put(key, value);
+        }
+        
+        @Override
+        public boolean equals(Object that) {
+            if (this == that) {
+                return true;
+            } else if (that instanceof Entry<?, ?>) {
+                final Entry<?, ?> other = Entry.class.cast(that);
+                return Objects.equal(key, other.getKey()) && Objects.equal(getValue(), other.getValue());
+            } else {
+                return false;
+            }
+        }
+        
+        @Override
+        public int hashCode() {
+            final Object value = getValue();
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+        
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+        
     }
 
 }
@@ -0,0 +1,171 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.ipc.netty.ConnectionManager;
+
+/**
+ * {@link Provider} implementation for the {@link XmlRpc xmlrpc} {@link ChannelPipeline}
+ * which assembles the handlers according to the configured modes.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+final class XmlRpcChannelPipelineProvider implements Provider<ChannelPipeline> {
+
+    private final ConnectionManager manager;
+    
+    private final Provider<HttpRequestDecoder> httpRequestDecoder;
+    
+    private final Provider<HttpChunkAggregator> chunkAggregator;
+    
+    private final Provider<HttpResponseEncoder> httpResponseEncoder;
+    
+    private final CompressionHandler compressionHandler;
+    
+    private final HttpHandler httpHandler;
+    
+    private final JaxbDecoder jaxbDecoder;
+    
+    private final JaxbEncoder jaxbEncoder;
+    
+    private final MethodCallDecoder callDecoder;
+    
+    private final StreamingMethodCallDecoder streamingDecoder;
+    
+    private final Provider<IncrementalMethodCallDecoder> incrementalDecoder;
+    
+    private final MethodResponseEncoder responseEncoder;
+    
+    private final StreamingMethodResponseEncoder streamingEncoder;
+    
+    private final XmlRpcHandler handler;
+    
+    private DecodingMode decoding = DecodingMode.JAXB;
+    
+    private EncodingMode encoding = EncodingMode.JAXB;
+    
+    private boolean compression;
+
+    @Inject
+    public XmlRpcChannelPipelineProvider(
+        ConnectionManager manager,
+        Provider<HttpRequestDecoder> httpRequestDecoder, Provider<HttpChunkAggregator> chunkAggregator,
+        Provider<HttpResponseEncoder> httpResponseEncoder,
+        CompressionHandler compressionHandler, HttpHandler httpHandler,
+        JaxbDecoder jaxbDecoder, JaxbEncoder jaxbEncoder,
+        MethodCallDecoder callDecoder, StreamingMethodCallDecoder streamingDecoder,
+        Provider<IncrementalMethodCallDecoder> incrementalDecoder,
+        MethodResponseEncoder responseEncoder, StreamingMethodResponseEncoder streamingEncoder,
+        XmlRpcHandler handler) {
+        this.manager = Preconditions.checkNotNull(manager, "Manager");
+        this.httpRequestDecoder = Preconditions.checkNotNull(httpRequestDecoder, "HttpRequestDecoder");
+        this.chunkAggregator = Preconditions.checkNotNull(chunkAggregator, "ChunkAggregator");
+        this.httpResponseEncoder = Preconditions.checkNotNull(httpResponseEncoder, "HttpResponseEncoder");
+        this.compressionHandler = Preconditions.checkNotNull(compressionHandler, "CompressionHandler");
+        this.httpHandler = Preconditions.checkNotNull(httpHandler, "HttpHandler");
+        this.jaxbDecoder = Preconditions.checkNotNull(jaxbDecoder, "JaxbDecoder");
+        this.jaxbEncoder = Preconditions.checkNotNull(jaxbEncoder, "JaxbEncoder");
+        this.callDecoder = Preconditions.checkNotNull(callDecoder, "CallDecoder");
+        this.streamingDecoder = Preconditions.checkNotNull(streamingDecoder, "StreamingDecoder");
+        this.incrementalDecoder = Preconditions.checkNotNull(incrementalDecoder, "IncrementalDecoder");
+        this.responseEncoder = Preconditions.checkNotNull(responseEncoder, "ResponseEncoder");
+        this.streamingEncoder = Preconditions.checkNotNull(streamingEncoder, "StreamingEncoder");
+        this.handler = Preconditions.checkNotNull(handler, "Handler");
+    }
+    
+    @Inject(optional = true)
+    public void setDecoding(@Named(XmlRpc.DECODING) DecodingMode decoding) {
+        this.decoding = Preconditions.checkNotNull(decoding, "Decoding");
+    }
+    
+    @Inject(optional = true)
+    public void setEncoding(@Named(XmlRpc.ENCODING) EncodingMode encoding) {
+        this.encoding = Preconditions.checkNotNull(encoding, "Encoding");
+    }
+    
+    @Inject(optional = true)
+    public void setCompression(@Named(XmlRpc.COMPRESSION) boolean compression) {
+        this.compression = compression;
+    }
+    
+    @Override
+    public ChannelPipeline get() {
+        final ChannelPipeline pipeline = Channels.pipeline();
+        
+        pipeline.addLast("manager", manager);
+        pipeline.addLast("httpRequestDecoder", httpRequestDecoder.get());
+        if (decoding != DecodingMode.INCREMENTAL) {
+            pipeline.addLast("chunkAggregator", chunkAggregator.get());
+        }
+        pipeline.addLast("httpResponseEncoder", httpResponseEncoder.get());
+        if (compression) {
+            pipeline.addLast("compression", compressionHandler);
+        }
+        pipeline.addLast("httpHandler", httpHandler);
+        
+        switch (decoding) {
+            case JAXB: {
+                pipeline.addLast("jaxbDecoder", jaxbDecoder);
+                pipeline.addLast("callDecoder", callDecoder);
+                break;
+            }
+            case STREAMING: {
+                pipeline.addLast("streamingDecoder", streamingDecoder);
+                break;
+            }
+            case INCREMENTAL: {
+                pipeline.addLast("incrementalDecoder", incrementalDecoder.get());
+                break;
+            }
+            default: {
+                throw new AssertionError(decoding);
+            }
+        }
+        
+        switch (encoding) {
+            case JAXB: {
+                pipeline.addLast("jaxbEncoder", jaxbEncoder);
+                pipeline.addLast("responseEncoder", responseEncoder);
+                break;
+            }
+            case STREAMING: {
+                pipeline.addLast("streamingEncoder", streamingEncoder);
+                break;
+            }
+            default: {
+                throw new AssertionError(encoding);
+            }
+        }
+        
+        pipeline.addLast("handler", handler);
+        
+        return pipeline;
+    }
+    
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.name.Named;
+
+/**
+ * {@link Provider} implementation for the {@link Executor} which runs xml-rpc calls
+ * according to the configured {@link ExecutionMode} (default {@link ExecutionMode#INLINE}).
+ * {@link ExecutionMode#EXECUTOR} requires an {@link ExecutorService} bound using {@link XmlRpc},
+ * usually by installing {@code new ExecutorModule(XmlRpc.class, XmlRpc.EXECUTOR)}.
+ * {@link ExecutionMode#VIRTUAL} starts a virtual thread per call. Virtual threads are
+ * created reflectively, the executor holds no threads while idle and therefore needs no shutdown.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+final class XmlRpcExecutorProvider implements Provider<Executor> {
+
+    private ExecutionMode execution = ExecutionMode.INLINE;
+    
+    private ExecutorService service;
+    
+    @Inject(optional = true)
+    public void setExecution(@Named(XmlRpc.EXECUTION) ExecutionMode execution) {
+        this.execution = Preconditions.checkNotNull(execution, "Execution");
+    }
+    
+    @Inject(optional = true)
+    public void setService(@XmlRpc ExecutorService service) {
+        this.service = Preconditions.checkNotNull(service, "Service");
+    }
+    
+    @Override
+    public Executor get() {
+        switch (execution) {
+            case INLINE: {
+                return MoreExecutors.sameThreadExecutor();
+            }
+            case EXECUTOR: {
+                Preconditions.checkState(service != null, 
+                    "%s requires an ExecutorService bound using @XmlRpc", execution);
+                return service;
+            }
+            case VIRTUAL: {
+                return newVirtualThreadPerTaskExecutor();
+            }
+            default: {
+                throw new AssertionError(execution);
+            }
+        }
+    }
+    
+    /**
+     * Creates an executor which starts a new virtual thread named {@code xmlrpc-<n>} per task,
+     * equivalent to {@code Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("xmlrpc-", 0).factory())}.
+     * 
+     * @return a new executor
+     * @throws IllegalStateException if the current runtime does not support virtual threads
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            // the builder implementations are not accessible, their public interfaces are
+            final Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            final Object named = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, "xmlrpc-", 0L);
+            final ThreadFactory factory = ThreadFactory.class.cast(ofVirtual.getMethod("factory").invoke(named));
+            final Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return ExecutorService.class.cast(method.invoke(null, factory));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later", e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+    
+}
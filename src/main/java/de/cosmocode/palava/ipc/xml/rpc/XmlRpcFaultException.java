@@ -0,0 +1,90 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+/**
+ * A {@link RuntimeException} which carries an explicit xml-rpc fault code.
+ * Fault codes follow the
+ * <a href="http://xmlrpc-epi.sourceforge.net/specs/rfc.fault_codes.php">fault code interoperability</a>
+ * conventions.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public class XmlRpcFaultException extends RuntimeException {
+    
+    /**
+     * Parse error, the request is not well formed.
+     */
+    public static final int NOT_WELL_FORMED = -32700;
+    
+    /**
+     * Server error, the request is not conforming to the xml-rpc grammar.
+     */
+    public static final int INVALID_XML_RPC = -32600;
+    
+    /**
+     * Server error, the requested method was not found.
+     */
+    public static final int METHOD_NOT_FOUND = -32601;
+    
+    /**
+     * Server error, the method parameters are invalid.
+     */
+    public static final int INVALID_PARAMS = -32602;
+    
+    private static final long serialVersionUID = -1187207376429547834L;
+
+    private final int faultCode;
+    
+    public XmlRpcFaultException(int faultCode, String message) {
+        super(message);
+        this.faultCode = faultCode;
+    }
+    
+    public XmlRpcFaultException(int faultCode, Throwable cause) {
+        super(cause);
+        this.faultCode = faultCode;
+    }
+    
+    public XmlRpcFaultException(int faultCode, String message, Throwable cause) {
+        super(message, cause);
+        this.faultCode = faultCode;
+    }
+    
+    public int getFaultCode() {
+        return faultCode;
+    }
+    
+    /**
+     * Returns the fault code which should be reported for the specified throwable.
+     * 
+     * @since 1.1
+     * @param throwable the cause of the fault
+     * @return the explicit fault code if throwable is a {@link XmlRpcFaultException},
+     *         the hash code of throwable otherwise
+     * @throws NullPointerException if throwable is null
+     */
+    public static int faultCodeOf(Throwable throwable) {
+        if (throwable instanceof XmlRpcFaultException) {
+            return XmlRpcFaultException.class.cast(throwable).getFaultCode();
+        } else {
+            return throwable.hashCode();
+        }
+    }
+    
+}
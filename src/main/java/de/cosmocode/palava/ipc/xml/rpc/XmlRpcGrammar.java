@@ -0,0 +1,258 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+/**
+ * Lexical rules of the xml-rpc grammar, as defined by the simple types
+ * of the bundled {@code xmlrpc.xsd}. All methods operate on the logical
+ * text content, i.e. after entity references have been resolved.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+final class XmlRpcGrammar {
+
+    private static final int DATE_TIME_LENGTH = "yyyyMMddTHH:mm:ss".length();
+    
+    private XmlRpcGrammar() {
+        
+    }
+    
+    /**
+     * Checks whether c is xml whitespace.
+     * 
+     * @param c the character
+     * @return true if c is a space, tab, carriage return or line feed
+     */
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+    
+    /**
+     * Checks whether the specified characters are xml whitespace only.
+     * 
+     * @param chars the characters
+     * @param start the offset
+     * @param length the number of characters to check
+     * @return true if all characters are whitespace
+     */
+    static boolean isWhitespace(char[] chars, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            if (!isWhitespace(chars[i])) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Removes leading and trailing xml whitespace, as required by the
+     * collapse whitespace facet of the built-in non-string types.
+     */
+    private static String trim(String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && isWhitespace(text.charAt(start))) start++;
+        while (end > start && isWhitespace(text.charAt(end - 1))) end--;
+        return text.substring(start, end);
+    }
+    
+    /**
+     * Validates a method name against the pattern {@code [A-Za-z0-9/\.:_]*}.
+     * 
+     * @param text the method name
+     * @return true if text is a valid method name
+     */
+    static boolean isMethodName(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) continue;
+            if (c == '/' || c == '.' || c == ':' || c == '_') continue;
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Validates a string against the pattern {@code ([ -~]|\n|\r|\t)*}.
+     * 
+     * @param text the string
+     * @return true if text is a valid string
+     */
+    static boolean isString(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if ((c >= ' ' && c <= '~') || c == '\n' || c == '\r' || c == '\t') continue;
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Validates a boolean against the pattern {@code 0|1}.
+     * 
+     * @param text the boolean
+     * @return true if text is a valid boolean
+     */
+    static boolean isBoolean(String text) {
+        final String trimmed = trim(text);
+        return "0".equals(trimmed) || "1".equals(trimmed);
+    }
+    
+    /**
+     * Validates a 32 bit signed integer, as defined by {@code xsd:int}.
+     * 
+     * @param text the integer
+     * @return true if text is a valid integer
+     */
+    static boolean isInt(String text) {
+        final String trimmed = trim(text);
+        final int length = trimmed.length();
+        int i = 0;
+        boolean negative = false;
+        
+        if (length > 0 && (trimmed.charAt(0) == '+' || trimmed.charAt(0) == '-')) {
+            negative = trimmed.charAt(0) == '-';
+            i++;
+        }
+        
+        if (i == length) return false;
+        
+        long value = 0;
+        for (; i < length; i++) {
+            final char c = trimmed.charAt(i);
+            if (c < '0' || c > '9') return false;
+            value = value * 10 + (c - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) return false;
+        }
+        
+        return negative || value <= Integer.MAX_VALUE;
+    }
+    
+    /**
+     * Validates a double, as defined by {@code xsd:double}.
+     * 
+     * @param text the double
+     * @return true if text is a valid double
+     */
+    static boolean isDouble(String text) {
+        final String trimmed = trim(text);
+        if ("INF".equals(trimmed) || "-INF".equals(trimmed) || "NaN".equals(trimmed)) return true;
+        
+        for (int i = 0; i < trimmed.length(); i++) {
+            final char c = trimmed.charAt(i);
+            if ((c >= '0' && c <= '9') || c == '.' || c == '+' || c == '-' || c == 'e' || c == 'E') continue;
+            return false;
+        }
+        
+        try {
+            Double.parseDouble(trimmed);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Validates a date against the pattern
+     * {@code \d{4}((0[1-9])|(1[0-2]))((0[1-9])|([1-2][0-9])|(3[0-1]))T(([0-1][0-9])|(2[0-3])):([0-5][0-9]):([0-5][0-9])}.
+     * 
+     * @param text the date
+     * @return true if text is a valid date
+     */
+    static boolean isDateTime(String text) {
+        if (text.length() != DATE_TIME_LENGTH) return false;
+        for (int i = 0; i < 4; i++) {
+            if (!Character.isDigit(text.charAt(i))) return false;
+        }
+        return isTwoDigits(text, 4, 1, 12) && 
+            isTwoDigits(text, 6, 1, 31) && 
+            text.charAt(8) == 'T' &&
+            isTwoDigits(text, 9, 0, 23) &&
+            text.charAt(11) == ':' &&
+            isTwoDigits(text, 12, 0, 59) &&
+            text.charAt(14) == ':' &&
+            isTwoDigits(text, 15, 0, 59);
+    }
+    
+    private static boolean isTwoDigits(String text, int offset, int min, int max) {
+        final char high = text.charAt(offset);
+        final char low = text.charAt(offset + 1);
+        if (high < '0' || high > '9' || low < '0' || low > '9') return false;
+        final int value = (high - '0') * 10 + (low - '0');
+        return value >= min && value <= max;
+    }
+    
+    /**
+     * Validates base64 encoded binary data, as defined by {@code xsd:base64Binary}.
+     * Whitespace is allowed anywhere.
+     * 
+     * @param text the encoded data
+     * @return true if text is valid base64
+     */
+    static boolean isBase64(String text) {
+        int count = 0;
+        int padding = 0;
+        int last = 0;
+        
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (isWhitespace(c)) continue;
+            if (c == '=') {
+                padding++;
+            } else {
+                final int digit = base64Digit(c);
+                // no data after padding
+                if (digit == -1 || padding > 0) return false;
+                last = digit;
+            }
+            count++;
+        }
+        
+        if (count % 4 != 0 || padding > 2) return false;
+        
+        // unused bits of the last digit must be zero
+        if (padding == 1) {
+            return (last & 0x3) == 0;
+        } else if (padding == 2) {
+            return (last & 0xF) == 0;
+        } else {
+            return true;
+        }
+    }
+    
+    /**
+     * Returns the value of the specified base64 digit.
+     * 
+     * @param c the digit
+     * @return the 6 bit value of c or -1 if c is not a base64 digit
+     */
+    static int base64Digit(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        } else if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        } else if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        } else if (c == '+') {
+            return 62;
+        } else if (c == '/') {
+            return 63;
+        } else {
+            return -1;
+        }
+    }
+    
+}
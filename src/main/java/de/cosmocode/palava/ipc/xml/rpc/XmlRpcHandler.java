@@ -16,20 +16,40 @@
 
 package de.cosmocode.palava.ipc.xml.rpc;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.annotation.concurrent.ThreadSafe;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandler.Sharable;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import de.cosmocode.palava.core.Registry.Proxy;
 import de.cosmocode.palava.core.Registry.SilentProxy;
@@ -43,7 +63,32 @@ import de.cosmocode.palava.ipc.protocol.DetachedConnection;
 
 /**
  * A {@link ChannelHandler} which processes incoming xml
- * requests using configured protocols.
+ * requests using configured protocols. Calls are run by the {@link XmlRpc} {@link Executor},
+ * see {@link ExecutionMode}. Responses are written in request order using
+ * a {@link ResponseSequencer} per channel.
+ * 
+ * <p>
+ *   Commands may complete asynchronously by putting futures into their result, see {@link AsyncResults}.
+ *   The response of such a call is written once all futures are done, the call is destroyed at that
+ *   time as well. Completion happens in the call scope using the {@link XmlRpc} {@link Executor}.
+ * </p>
+ * 
+ * <p>
+ *   Calls of {@link XmlRpc#MULTICALL system.multicall} are split into their sub-calls, each
+ *   of them is processed as a separate call in its own scope, see {@link Multicall}. Sub-calls of
+ *   methods listed in {@link XmlRpc#PARALLEL_METHODS} run in parallel on the {@link XmlRpc}
+ *   {@link ExecutorService}, if bound, using at most {@link XmlRpc#MULTICALL_PARALLELISM} threads
+ *   (default 4) per batch, including the calling thread. Sub-calls failing with any {@link Throwable}
+ *   are answered with a fault.
+ * </p>
+ * 
+ * <p>
+ *   Responses of methods listed in {@link XmlRpc#CACHED_METHODS} are served
+ *   from the {@link ResponseCache} if possible, see {@link LruResponseCache}. Identical calls
+ *   of methods listed in {@link XmlRpc#COALESCED_METHODS} which arrive while one of them is
+ *   running share its response, see {@link CallCoalescer}. Retried requests which are answered
+ *   from the {@link IdempotencyTable} arrive as {@link IdempotentReplay}s and are written in order as well.
+ * </p>
  * 
  * @since 1.0
  * @author Willi Schoenborn
@@ -64,56 +109,433 @@ final class XmlRpcHandler extends SimpleChannelHandler {
     
     private final IpcCallScope scope;
     
+    private final Executor execution;
+    
+    private final LruResponseCache cache;
+    
+    private final CallCoalescer coalescer;
+    
+    private ExecutorService pool;
+    
+    private Set<String> parallelMethods = ImmutableSet.of();
+    
+    private int parallelism = 4;
+    
     @Inject
     public XmlRpcHandler(
         ConnectionManager manager,
         IpcCommandExecutor executor,
         @Proxy IpcCallCreateEvent createEvent, 
         @SilentProxy IpcCallDestroyEvent destroyEvent,
-        IpcCallScope scope) {
+        IpcCallScope scope,
+        @XmlRpc Executor execution,
+        LruResponseCache cache,
+        CallCoalescer coalescer) {
         this.manager = Preconditions.checkNotNull(manager, "Manager");
         this.executor = Preconditions.checkNotNull(executor, "Executor");
         this.createEvent = Preconditions.checkNotNull(createEvent, "CreateEvent");
         this.destroyEvent = Preconditions.checkNotNull(destroyEvent, "DestroyEvent");
         this.scope = Preconditions.checkNotNull(scope, "Scope");
+        this.execution = Preconditions.checkNotNull(execution, "Execution");
+        this.cache = Preconditions.checkNotNull(cache, "Cache");
+        this.coalescer = Preconditions.checkNotNull(coalescer, "Coalescer");
+    }
+    
+    @Inject(optional = true)
+    public void setPool(@XmlRpc ExecutorService pool) {
+        this.pool = Preconditions.checkNotNull(pool, "Pool");
+    }
+    
+    @Inject(optional = true)
+    public void setParallelMethods(@Named(XmlRpc.PARALLEL_METHODS) String methods) {
+        Preconditions.checkNotNull(methods, "Methods");
+        this.parallelMethods = ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(methods));
+    }
+    
+    @Inject(optional = true)
+    public void setParallelism(@Named(XmlRpc.MULTICALL_PARALLELISM) int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+    
+    @Override
+    public void channelOpen(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        context.setAttachment(new ResponseSequencer(event.getChannel()));
+        super.channelOpen(context, event);
+    }
+    
+    private ResponseSequencer getSequencer(ChannelHandlerContext context) {
+        final ResponseSequencer sequencer = ResponseSequencer.class.cast(context.getAttachment());
+        Preconditions.checkState(sequencer != null, "No sequencer set");
+        return sequencer;
     }
     
     @Override
     public void messageReceived(ChannelHandlerContext context, MessageEvent event) throws Exception {
         if (event.getMessage() instanceof XmlRpcCall) {
+            final ResponseSequencer sequencer = getSequencer(context);
+            final long sequence = sequencer.register();
             final XmlRpcCall call = XmlRpcCall.class.cast(event.getMessage());
             final Channel channel = event.getChannel();
             final DetachedConnection connection = manager.get(channel);
-            call.attachTo(connection);
-            final Object result = process(call);
-            event.getChannel().write(result);
+            // the connection is attached to the session of the request being decoded right now,
+            // pipelined requests may attach it to other sessions while this call is running
+            call.attachTo(SessionBoundConnection.bind(connection));
+            try {
+                execution.execute(new Runnable() {
+                    
+                    @Override
+                    public void run() {
+                        final AtomicBoolean completed = new AtomicBoolean();
+                        // scope and events have to happen on the executing thread
+                        final CallCompletion completion = new CallCompletion() {
+                            
+                            @Override
+                            public void complete(Object response) {
+                                if (completed.compareAndSet(false, true)) {
+                                    sequencer.complete(sequence, response);
+                                } else {
+                                    LOG.warn("Dropping late response of {}: {}", call.getMethodName(), response);
+                                }
+                            }
+                            
+                        };
+                        try {
+                            if (XmlRpc.MULTICALL.equals(call.getMethodName())) {
+                                multicall(call, completion);
+                            } else {
+                                dispatch(call, completion);
+                            }
+                        /* CHECKSTYLE:OFF */
+                        } catch (Throwable e) {
+                        /* CHECKSTYLE:ON */
+                            LOG.error("Call " + call.getMethodName() + " in channel " + channel + " failed", e);
+                            // an unanswered slot would hold back all following responses of the channel
+                            if (!completed.get()) {
+                                completion.complete(e);
+                            }
+                            Throwables.propagateIfInstanceOf(e, Error.class);
+                        }
+                    }
+                    
+                });
+            } catch (RejectedExecutionException e) {
+                LOG.warn("Rejecting call {} in channel {}: {}", new Object[] {
+                    call.getMethodName(), channel, e.getMessage()
+                });
+                sequencer.complete(sequence, e);
+            }
+        } else if (event.getMessage() instanceof IdempotentReplay) {
+            final ResponseSequencer sequencer = getSequencer(context);
+            final long sequence = sequencer.register();
+            final IdempotentReplay replay = IdempotentReplay.class.cast(event.getMessage());
+            replay.setCompletion(new CallCompletion() {
+                
+                @Override
+                public void complete(final Object response) {
+                    // replays may complete while another channel writes, handing them off
+                    // avoids taking two sequencer locks at once
+                    final Runnable write = new Runnable() {
+                        
+                        @Override
+                        public void run() {
+                            sequencer.complete(sequence, response);
+                        }
+                        
+                    };
+                    try {
+                        pool.execute(write);
+                    } catch (RejectedExecutionException e) {
+                        write.run();
+                    }
+                }
+                
+            });
         } else {
             throw new IllegalStateException(String.format("Unknown message %s", event.getMessage()));
         }
     }
     
-    private Object process(XmlRpcCall call) {
+    private void dispatch(XmlRpcCall call, CallCompletion completion) {
+        final String methodName = call.getMethodName();
+        final boolean cached = cache.isCached(methodName);
+        final boolean coalesced = coalescer.isCoalesced(methodName);
+        if (!cached && !coalesced) {
+            process(call, completion);
+            return;
+        }
+        
+        final CallKey key = CallKey.of(methodName, call.getArguments());
+        if (key == null) {
+            LOG.trace("Arguments of {} can't be cached nor coalesced", methodName);
+            process(call, completion);
+            return;
+        }
+        
+        if (cached) {
+            final ChannelBuffer hit = cache.get(key);
+            if (hit != null) {
+                LOG.trace("Serving cached response of {}", methodName);
+                completion.complete(hit);
+                return;
+            }
+        }
+        
+        if (coalesced) {
+            if (!coalescer.join(key, completion)) return;
+            final AtomicBoolean landed = new AtomicBoolean();
+            final CallCompletion landing = new CallCompletion() {
+                
+                @Override
+                public void complete(Object response) {
+                    if (landed.compareAndSet(false, true)) {
+                        coalescer.land(key, response);
+                    }
+                }
+                
+            };
+            try {
+                process(call, cached ? caching(key, landing) : landing);
+            /* CHECKSTYLE:OFF */
+            } catch (Throwable e) {
+            /* CHECKSTYLE:ON */
+                // a flight which never lands would swallow all identical calls
+                landing.complete(e);
+                throw Throwables.propagate(e);
+            }
+        } else {
+            process(call, caching(key, completion));
+        }
+    }
+    
+    private CallCompletion caching(final CallKey key, final CallCompletion completion) {
+        return new CallCompletion() {
+            
+            @Override
+            public void complete(Object response) {
+                if (response instanceof Map<?, ?>) {
+                    final ChannelBuffer serialized;
+                    try {
+                        serialized = cache.put(key, Map.class.cast(response));
+                    /* CHECKSTYLE:OFF */
+                    } catch (RuntimeException e) {
+                    /* CHECKSTYLE:ON */
+                        LOG.warn("Unable to cache response of {}: {}", key, e.getMessage());
+                        completion.complete(response);
+                        return;
+                    }
+                    completion.complete(serialized);
+                } else {
+                    completion.complete(response);
+                }
+            }
+            
+        };
+    }
+    
+    private void multicall(XmlRpcCall call, final CallCompletion completion) {
+        final List<?> entries;
+        try {
+            entries = Multicall.entries(call);
+        } catch (XmlRpcFaultException e) {
+            completion.complete(e);
+            return;
+        }
+        
+        LOG.trace("Processing multicall of {} calls", entries.size());
+        if (entries.isEmpty()) {
+            completion.complete(Collections.emptyList());
+            return;
+        }
+        
+        final Multicall batch = new Multicall(entries.size());
+        final List<Runnable> sequential = Lists.newArrayList();
+        final List<Runnable> parallel = Lists.newArrayList();
+        
+        for (int i = 0; i < entries.size(); i++) {
+            final int index = i;
+            final AtomicBoolean completed = new AtomicBoolean();
+            final CallCompletion element = new CallCompletion() {
+                
+                @Override
+                public void complete(Object response) {
+                    completed.set(true);
+                    if (batch.complete(index, response)) {
+                        completion.complete(batch.getResponses());
+                    }
+                }
+                
+            };
+            
+            final XmlRpcCall subCall;
+            try {
+                subCall = Multicall.callOf(entries.get(i));
+            } catch (XmlRpcFaultException e) {
+                element.complete(e);
+                continue;
+            }
+            subCall.attachTo(call.getConnection());
+            
+            final Runnable task = new Runnable() {
+                
+                @Override
+                public void run() {
+                    try {
+                        process(subCall, element);
+                    /* CHECKSTYLE:OFF */
+                    } catch (Throwable e) {
+                    /* CHECKSTYLE:ON */
+                        if (completed.get()) {
+                            LOG.warn("Completion of " + subCall.getMethodName() + " failed", e);
+                        } else {
+                            LOG.error("Processing " + subCall.getMethodName() + " failed", e);
+                            element.complete(e);
+                        }
+                    }
+                }
+                
+            };
+            
+            if (parallelMethods.contains(subCall.getMethodName())) {
+                parallel.add(task);
+            } else {
+                sequential.add(task);
+            }
+        }
+        
+        final Runnable worker = fork(parallel);
+        for (Runnable task : sequential) {
+            task.run();
+        }
+        // the current thread helps with the parallel calls instead of waiting
+        worker.run();
+    }
+    
+    /**
+     * Forks workers which run the specified tasks. The number of workers is bounded by the
+     * configured parallelism, including the current thread which has to run the returned worker.
+     * Without a pool all tasks are run by the returned worker.
+     * 
+     * @param tasks the tasks
+     * @return the worker of the current thread
+     */
+    private Runnable fork(final List<Runnable> tasks) {
+        final AtomicInteger next = new AtomicInteger();
+        final Runnable worker = new Runnable() {
+            
+            @Override
+            public void run() {
+                int index;
+                while ((index = next.getAndIncrement()) < tasks.size()) {
+                    tasks.get(index).run();
+                }
+            }
+            
+        };
+        
+        final int forks = pool == null ? 0 : Math.min(parallelism, tasks.size()) - 1;
+        for (int i = 0; i < forks; i++) {
+            try {
+                pool.execute(worker);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Running remaining calls on the current thread: {}", e.getMessage());
+                break;
+            }
+        }
+        return worker;
+    }
+    
+    private void process(final XmlRpcCall call, final CallCompletion completion) {
         createEvent.eventIpcCallCreate(call);
         scope.enter(call);
+        Object response;
+        Map<String, Object> pending = null;
         try {
-            return executor.execute(call.getMethodName(), call);
+            final Map<String, Object> result = executor.execute(call.getMethodName(), call);
+            if (AsyncResults.isPending(result)) {
+                pending = result;
+            }
+            response = result;
         } catch (IpcCommandExecutionException e) {
-            return e;
+            response = e;
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            response = e;
+        } finally {
+            if (pending == null) {
+                destroyEvent.eventIpcCallDestroy(call);
+            }
+            scope.exit();
+        }
+        
+        if (pending == null) {
+            completion.complete(response);
+        } else {
+            LOG.trace("Awaiting asynchronous result of {}", call.getMethodName());
+            await(call, pending, completion);
+        }
+    }
+    
+    private void await(final XmlRpcCall call, final Map<String, Object> result, final CallCompletion completion) {
+        final Runnable task = new Runnable() {
+            
+            @Override
+            public void run() {
+                complete(call, result, completion);
+            }
+            
+        };
+        
+        AsyncResults.addListener(result, new Runnable() {
+            
+            @Override
+            public void run() {
+                try {
+                    execution.execute(task);
+                } catch (RejectedExecutionException e) {
+                    LOG.warn("Completing {} on the completing thread: {}", call.getMethodName(), e.getMessage());
+                    task.run();
+                }
+            }
+            
+        }, MoreExecutors.sameThreadExecutor());
+    }
+    
+    private void complete(XmlRpcCall call, Map<String, Object> result, CallCompletion completion) {
+        scope.enter(call);
+        Object response;
+        try {
+            response = AsyncResults.resolve(result);
+        } catch (ExecutionException e) {
+            response = e.getCause();
         /* CHECKSTYLE:OFF */
         } catch (RuntimeException e) {
         /* CHECKSTYLE:ON */
-            return e;
+            response = e;
         } finally {
             destroyEvent.eventIpcCallDestroy(call);
             scope.exit();
         }
+        completion.complete(response);
     }
     
     @Override
     public void exceptionCaught(ChannelHandlerContext context, ExceptionEvent event) throws Exception {
         final Channel channel = event.getChannel();
-        LOG.error("Exception in channel " + channel, event.getCause());
-        channel.close();
+        final Throwable cause = event.getCause();
+        if (cause instanceof XmlRpcFaultException) {
+            LOG.debug("Rejecting malformed request in channel {}: {}", channel, cause.getMessage());
+            // the fault takes the place of the response of the malformed request
+            final ResponseSequencer sequencer = getSequencer(context);
+            sequencer.complete(sequencer.register(), cause);
+        } else if (cause instanceof TooLongFrameException) {
+            LOG.debug("Rejecting oversized request in channel {}: {}", channel, cause.getMessage());
+            HttpHandler.rejectTooLarge(channel);
+        } else {
+            LOG.error("Exception in channel " + channel, cause);
+            channel.close();
+        }
     }
 
 }
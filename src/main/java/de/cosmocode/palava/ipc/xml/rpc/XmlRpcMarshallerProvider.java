@@ -68,4 +68,21 @@ final class XmlRpcMarshallerProvider implements Provider<Marshaller> {
         return marshaller;
     }
     
+    /**
+     * Resets the specified marshaller to the state of a newly provided one.
+     * 
+     * @since 1.1
+     * @param marshaller the marshaller to reset
+     */
+    void reset(Marshaller marshaller) {
+        marshaller.setSchema(validate ? schema : null);
+        
+        try {
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.FALSE);
+            marshaller.setEventHandler(null);
+        } catch (JAXBException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+    
 }
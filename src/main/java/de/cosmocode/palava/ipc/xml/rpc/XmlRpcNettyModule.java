@@ -16,28 +16,32 @@
 
 package de.cosmocode.palava.ipc.xml.rpc;
 
+import java.util.concurrent.Executor;
+
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 
 import org.jboss.netty.channel.ChannelPipeline;
-import org.jboss.netty.channel.Channels;
 import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
 import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
 import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
 
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
 import com.google.inject.Binder;
 import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.Provides;
 import com.google.inject.Scopes;
 import com.google.inject.Singleton;
+import com.google.inject.name.Names;
 
-import de.cosmocode.palava.ipc.netty.ConnectionManager;
 import de.cosmocode.palava.ipc.xml.rpc.adapters.AdapterModule;
 import de.cosmocode.palava.ipc.xml.rpc.generated.ObjectFactory;
 
@@ -52,70 +56,52 @@ public final class XmlRpcNettyModule implements Module {
     @Override
     public void configure(Binder binder) {
         binder.bind(HttpRequestDecoder.class).in(Scopes.NO_SCOPE);
-        binder.bind(HttpResponseEncoder.class).in(Singleton.class);
+        binder.bind(HttpChunkAggregator.class).toProvider(HttpChunkAggregatorProvider.class);
+        // http message encoders keep per response state about chunking
+        binder.bind(HttpResponseEncoder.class).in(Scopes.NO_SCOPE);
         binder.bind(HttpHandler.class).in(Singleton.class);
+        binder.bind(CompressionHandler.class).in(Singleton.class);
+        binder.bind(CompressionStatistics.class).to(CompressionHandler.class);
         binder.bind(JaxbDecoder.class).in(Singleton.class);
         binder.bind(JaxbEncoder.class).in(Singleton.class);
         binder.bind(MethodCallDecoder.class).in(Singleton.class);
         binder.bind(MethodResponseEncoder.class).in(Singleton.class);
+        binder.bind(StreamingMethodCallDecoder.class).in(Singleton.class);
+        binder.bind(IncrementalMethodCallDecoder.class).in(Scopes.NO_SCOPE);
+        binder.bind(StreamingMethodResponseEncoder.class).in(Singleton.class);
+        binder.bind(MethodResponseWriter.class).in(Singleton.class);
         binder.bind(XmlRpcHandler.class).in(Singleton.class);
+        binder.bind(Key.get(Executor.class, XmlRpc.class)).toProvider(XmlRpcExecutorProvider.class).in(Singleton.class);
+        
+        binder.bind(XmlRpcChannelPipelineProvider.class).in(Singleton.class);
+        binder.bind(Key.get(ChannelPipeline.class, XmlRpc.class)).toProvider(XmlRpcChannelPipelineProvider.class);
         
         binder.bind(Key.get(Schema.class, XmlRpc.class)).toProvider(XmlRpcSchemaProvider.class).in(Singleton.class);
         binder.bind(Marshaller.class).annotatedWith(XmlRpc.class).toProvider(XmlRpcMarshallerProvider.class);
         binder.bind(Unmarshaller.class).annotatedWith(XmlRpc.class).toProvider(XmlRpcUnmarshallerProvider.class);
         
+        binder.bind(MarshallerPool.class).in(Singleton.class);
+        binder.bind(UnmarshallerPool.class).in(Singleton.class);
+        binder.bind(PoolStatistics.class).annotatedWith(Names.named(XmlRpc.MARSHALLER_POOL)).to(
+            MarshallerPool.class);
+        binder.bind(PoolStatistics.class).annotatedWith(Names.named(XmlRpc.UNMARSHALLER_POOL)).to(
+            UnmarshallerPool.class);
+        
+        binder.bind(ValidationPolicy.class).in(Singleton.class);
+        binder.bind(ValidationStatistics.class).to(ValidationPolicy.class);
+        binder.bind(ResponseValidator.class).in(Singleton.class);
+        binder.bind(WireLogger.class).in(Singleton.class);
+        binder.bind(LruResponseCache.class).in(Singleton.class);
+        binder.bind(ResponseCache.class).to(LruResponseCache.class);
+        binder.bind(ResponseCacheStatistics.class).to(LruResponseCache.class);
+        binder.bind(CallCoalescer.class).in(Singleton.class);
+        binder.bind(CoalescingStatistics.class).to(CallCoalescer.class);
+        binder.bind(IdempotencyTable.class).in(Singleton.class);
+        binder.bind(DateTimeIso8601Codec.class).toProvider(DateTimeIso8601CodecProvider.class).in(Singleton.class);
+        
         binder.install(new AdapterModule());
     }
 
-    /**
-     * Provides a stateful http chunk aggregator.
-     * 
-     * @since 1.0
-     * @return a new {@link HttpChunkAggregator}
-     */
-    @Provides
-    HttpChunkAggregator provideHttpChunkAggregator() {
-        return new HttpChunkAggregator(1048576);
-    }
-    
-    /**
-     * Provides a channel pipeline.
-     * 
-     * @since 1.0
-     * @param manager the connection manager
-     * @param httpRequestDecoder the http request decoder
-     * @param chunkAggregator the http chunk aggregator
-     * @param httpResponseEncoder the http response encoder
-     * @param httpHandler the http handler
-     * @param jaxbDecoder the xml-rpc decoder
-     * @param jaxbEncoder the xml-rpc encoder
-     * @param callDecoder the call decoder
-     * @param responseEncoder the response encoder
-     * @param handler the xml-rpc handler
-     * @return a new {@link ChannelPipeline}
-     */
-    @Provides
-    @XmlRpc
-    ChannelPipeline provideChannelPipeline(
-        ConnectionManager manager,
-        HttpRequestDecoder httpRequestDecoder, HttpChunkAggregator chunkAggregator,
-        HttpResponseEncoder httpResponseEncoder, 
-        HttpHandler httpHandler,
-        JaxbDecoder jaxbDecoder, JaxbEncoder jaxbEncoder,
-        MethodCallDecoder callDecoder,
-        MethodResponseEncoder responseEncoder,
-        XmlRpcHandler handler) {
-        return Channels.pipeline(
-            manager,
-            httpRequestDecoder, chunkAggregator,
-            httpResponseEncoder, 
-            httpHandler,
-            jaxbDecoder, jaxbEncoder,
-            callDecoder, responseEncoder,
-            handler
-        );
-    }
-    
     /**
      * Provides an object factory.
      * 
@@ -156,4 +142,36 @@ public final class XmlRpcNettyModule implements Module {
         return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
     }
     
+    /**
+     * Provides a {@link XMLInputFactory} used by the streaming decoder.
+     * 
+     * @since 1.1
+     * @return a new xml input factory
+     */
+    @Provides
+    @Singleton
+    @XmlRpc
+    XMLInputFactory provideXmlInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+    
+    /**
+     * Provides a non-blocking {@link AsyncXMLInputFactory} used by the incremental decoder.
+     * 
+     * @since 1.1
+     * @return a new async xml input factory
+     */
+    @Provides
+    @Singleton
+    @XmlRpc
+    AsyncXMLInputFactory provideAsyncXmlInputFactory() {
+        final AsyncXMLInputFactory factory = new InputFactoryImpl();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+    
 }
@@ -68,4 +68,20 @@ final class XmlRpcUnmarshallerProvider implements Provider<Unmarshaller> {
         return unmarshaller;
     }
     
+    /**
+     * Resets the specified unmarshaller to the state of a newly provided one.
+     * 
+     * @since 1.1
+     * @param unmarshaller the unmarshaller to reset
+     */
+    void reset(Unmarshaller unmarshaller) {
+        unmarshaller.setSchema(validate ? schema : null);
+        
+        try {
+            unmarshaller.setEventHandler(null);
+        } catch (JAXBException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+    
 }
@@ -16,6 +16,8 @@
 
 package de.cosmocode.palava.ipc.xml.rpc.adapters;
 
+import java.util.List;
+
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 
@@ -85,6 +87,23 @@ public final class Adapters {
         };
     }
     
+    /**
+     * Creates a lazy, unmodifiable view of the specified list which decodes every
+     * element using {@link Adapter#decode(Object)} at most once, on first access.
+     * 
+     * @since 1.1
+     * @param <F> source type
+     * @param <T> target type
+     * @param list the backing list
+     * @param adapter the adapter used for decoding
+     * @return a memoizing, decoded view of the given list
+     * @throws NullPointerException if list or adapter is null
+     */
+    public static <F, T> List<T> decodedView(List<F> list, Adapter<? super F, ? extends T> adapter) {
+        Preconditions.checkNotNull(list, "List");
+        return new MemoizingList<F, T>(list, Adapters.<F, T>asDecoder(adapter));
+    }
+    
     /**
      * Creates an inverse version of the specified {@link Adapter} which uses
      * {@link Adapter#decode(Object)} when asked to encode and vice versa.
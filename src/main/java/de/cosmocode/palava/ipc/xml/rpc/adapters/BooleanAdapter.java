@@ -16,8 +16,6 @@
 
 package de.cosmocode.palava.ipc.xml.rpc.adapters;
 
-import javax.xml.bind.JAXBElement;
-
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.google.inject.TypeLiteral;
@@ -32,7 +30,7 @@ import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
  * @since 1.0
  * @author Willi Schoenborn
  */
-final class BooleanAdapter implements Adapter<Value, Boolean> {
+final class BooleanAdapter implements Adapter<Value, Boolean>, ValueDecoder<Boolean> {
 
     static final TypeLiteral<Adapter<Value, Boolean>> LITERAL =
         new TypeLiteral<Adapter<Value, Boolean>>() { };
@@ -47,9 +45,12 @@ final class BooleanAdapter implements Adapter<Value, Boolean> {
     @Override
     public Boolean decode(Value input) {
         Preconditions.checkNotNull(input, "Input");
-        @SuppressWarnings("unchecked")
-        final JAXBElement<Boolean> element = JAXBElement.class.cast(input.getContent().get(0));
-        return element.getValue();
+        return ValueType.decode(input, this);
+    }
+    
+    @Override
+    public Boolean decode(Value input, ValueType type, Object content) {
+        return Boolean.class.cast(content);
     }
     
     @Override
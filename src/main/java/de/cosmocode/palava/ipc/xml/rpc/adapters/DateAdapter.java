@@ -16,17 +16,13 @@
 
 package de.cosmocode.palava.ipc.xml.rpc.adapters;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
-import javax.xml.bind.JAXBElement;
-
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.google.inject.TypeLiteral;
 
+import de.cosmocode.palava.ipc.xml.rpc.DateTimeIso8601Codec;
 import de.cosmocode.palava.ipc.xml.rpc.XmlRpc;
 import de.cosmocode.palava.ipc.xml.rpc.generated.ObjectFactory;
 import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
@@ -37,37 +33,37 @@ import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
  * @since 1.0
  * @author Willi Schoenborn
  */
-final class DateAdapter implements Adapter<Value, Date> {
+final class DateAdapter implements Adapter<Value, Date>, ValueDecoder<Date> {
     
     static final TypeLiteral<Adapter<Value, Date>> LITERAL =
         new TypeLiteral<Adapter<Value, Date>>() { };
-        
-    private final DateFormat pseudoIso8061 = new SimpleDateFormat("yyyyMMdd'T'HH:mm:ss");
 
     private final ObjectFactory factory;
     
+    private final DateTimeIso8601Codec codec;
+    
     @Inject
-    public DateAdapter(@XmlRpc ObjectFactory factory) {
+    public DateAdapter(@XmlRpc ObjectFactory factory, DateTimeIso8601Codec codec) {
         this.factory = Preconditions.checkNotNull(factory, "Factory");
+        this.codec = Preconditions.checkNotNull(codec, "Codec");
     }
 
     @Override
     public Date decode(Value input) {
         Preconditions.checkNotNull(input, "Input");
-        try {
-            @SuppressWarnings("unchecked")
-            final JAXBElement<String> element = JAXBElement.class.cast(input.getContent().get(0));
-            return pseudoIso8061.parse(element.getValue());
-        } catch (ParseException e) {
-            throw new IllegalArgumentException(e);
-        }
+        return ValueType.decode(input, this);
+    }
+    
+    @Override
+    public Date decode(Value input, ValueType type, Object content) {
+        return codec.parseDate(String.class.cast(content));
     }
     
     @Override
     public Value encode(Date input) {
         Preconditions.checkNotNull(input, "Input");
         final Value value = factory.createValue();
-        value.getContent().add(factory.createValueDateTimeIso8601(pseudoIso8061.format(input)));
+        value.getContent().add(factory.createValueDateTimeIso8601(codec.format(input)));
         return value;
     }
     
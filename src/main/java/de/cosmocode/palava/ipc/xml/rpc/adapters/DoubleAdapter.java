@@ -30,7 +30,7 @@ import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
  * @since 1.0
  * @author Willi Schoenborn
  */
-final class DoubleAdapter implements Adapter<Value, Double> {
+final class DoubleAdapter implements Adapter<Value, Double>, ValueDecoder<Double> {
 
     static final TypeLiteral<Adapter<Value, Double>> LITERAL =
         new TypeLiteral<Adapter<Value, Double>>() { };
@@ -45,7 +45,12 @@ final class DoubleAdapter implements Adapter<Value, Double> {
     @Override
     public Double decode(Value input) {
         Preconditions.checkNotNull(input, "Input");
-        return Double.class.cast(input.getContent().get(0));
+        return ValueType.decode(input, this);
+    }
+    
+    @Override
+    public Double decode(Value input, ValueType type, Object content) {
+        return Double.class.cast(content);
     }
     
     @Override
@@ -18,6 +18,8 @@ package de.cosmocode.palava.ipc.xml.rpc.adapters;
 
 import java.util.Map.Entry;
 
+import javax.annotation.concurrent.ThreadSafe;
+
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.google.inject.TypeLiteral;
@@ -50,24 +52,7 @@ final class EntryAdapter implements Adapter<Member, Entry<String, Object>> {
     @Override
     public Entry<String, Object> decode(final Member input) {
         Preconditions.checkNotNull(input, "Input");
-        return new Entry<String, Object>() {
-            
-            @Override
-            public String getKey() {
-                return input.getName();
-            }
-            
-            @Override
-            public Object getValue() {
-                return objectAdapter.decode(input.getValue());
-            }
-            
-            @Override
-            public Object setValue(Object value) {
-                throw new UnsupportedOperationException();
-            }
-            
-        };
+        return new MemoizingEntry(input);
     }
     
     @Override
@@ -80,4 +65,48 @@ final class EntryAdapter implements Adapter<Member, Entry<String, Object>> {
         return member;
     }
     
+    /**
+     * An unmodifiable entry view of a {@link Member} which decodes its value at most once.
+     *
+     * @since 1.1
+     * @author Willi Schoenborn
+     */
+    @ThreadSafe
+    private final class MemoizingEntry implements Entry<String, Object> {
+        
+        private final Member member;
+        
+        private volatile boolean decoded;
+        
+        private Object value;
+        
+        public MemoizingEntry(Member member) {
+            this.member = member;
+        }
+        
+        @Override
+        public String getKey() {
+            return member.getName();
+        }
+        
+        @Override
+        public Object getValue() {
+            if (!decoded) {
+                synchronized (this) {
+                    if (!decoded) {
+                        value = objectAdapter.decode(member.getValue());
+                        decoded = true;
+                    }
+                }
+            }
+            return value;
+        }
+        
+        @Override
+        public Object setValue(Object newValue) {
+            throw new UnsupportedOperationException();
+        }
+        
+    }
+    
 }
@@ -20,8 +20,6 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import javax.xml.bind.JAXBElement;
-
 import com.google.common.base.Preconditions;
 import com.google.common.io.ByteStreams;
 import com.google.inject.Inject;
@@ -37,7 +35,7 @@ import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
  * @since 1.0
  * @author Willi Schoenborn
  */
-final class InputStreamAdapter implements Adapter<Value, InputStream> {
+final class InputStreamAdapter implements Adapter<Value, InputStream>, ValueDecoder<InputStream> {
 
     static final TypeLiteral<Adapter<Value, InputStream>> LITERAL =
         new TypeLiteral<Adapter<Value, InputStream>>() { };
@@ -52,9 +50,12 @@ final class InputStreamAdapter implements Adapter<Value, InputStream> {
     @Override
     public InputStream decode(Value input) {
         Preconditions.checkNotNull(input, "Input");
-        @SuppressWarnings("unchecked")
-        final JAXBElement<byte[]> element = JAXBElement.class.cast(input.getContent().get(0));
-        return new ByteArrayInputStream(element.getValue());
+        return ValueType.decode(input, this);
+    }
+    
+    @Override
+    public InputStream decode(Value input, ValueType type, Object content) {
+        return new ByteArrayInputStream(byte[].class.cast(content));
     }
     
     @Override
@@ -16,8 +16,6 @@
 
 package de.cosmocode.palava.ipc.xml.rpc.adapters;
 
-import javax.xml.bind.JAXBElement;
-
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.google.inject.TypeLiteral;
@@ -32,7 +30,7 @@ import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
  * @since 1.0
  * @author Willi Schoenborn
  */
-final class IntegerAdapter implements Adapter<Value, Integer> {
+final class IntegerAdapter implements Adapter<Value, Integer>, ValueDecoder<Integer> {
 
     static final TypeLiteral<Adapter<Value, Integer>> LITERAL =
         new TypeLiteral<Adapter<Value, Integer>>() { };
@@ -47,9 +45,12 @@ final class IntegerAdapter implements Adapter<Value, Integer> {
     @Override
     public Integer decode(Value input) {
         Preconditions.checkNotNull(input, "Input");
-        @SuppressWarnings("unchecked")
-        final JAXBElement<Integer> element = JAXBElement.class.cast(input.getContent().get(0));
-        return element.getValue();
+        return ValueType.decode(input, this);
+    }
+    
+    @Override
+    public Integer decode(Value input, ValueType type, Object content) {
+        return Integer.class.cast(content);
     }
     
     @Override
@@ -16,11 +16,9 @@
 
 package de.cosmocode.palava.ipc.xml.rpc.adapters;
 
-import java.util.AbstractList;
 import java.util.List;
 
-import javax.xml.bind.JAXBElement;
-
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.google.inject.TypeLiteral;
@@ -37,39 +35,32 @@ import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
  * @since 1.0
  * @author Willi Schoenborn
  */
-final class ListAdapter implements Adapter<Value, List<Object>> {
+final class ListAdapter implements Adapter<Value, List<Object>>, ValueDecoder<List<Object>> {
 
     static final TypeLiteral<Adapter<Value, List<Object>>> LITERAL =
         new TypeLiteral<Adapter<Value, List<Object>>>() { };
         
     private final ObjectFactory factory;
     private final Adapter<Value, Object> objectAdapter;
+    private final Function<Value, Object> objectDecoder;
     
     @Inject
     public ListAdapter(@XmlRpc ObjectFactory factory, Adapter<Value, Object> objectAdapter) {
         this.factory = Preconditions.checkNotNull(factory, "Factory");
         this.objectAdapter = Preconditions.checkNotNull(objectAdapter, "ObjectAdapter");
+        this.objectDecoder = Adapters.asDecoder(objectAdapter);
     }
 
     @Override
     public List<Object> decode(Value input) {
         Preconditions.checkNotNull(input, "Input");
-        @SuppressWarnings("unchecked")
-        final JAXBElement<Array> element = JAXBElement.class.cast(input.getContent().get(0));
-        final List<Value> values = element.getValue().getData().getValue();
-        return new AbstractList<Object>() {
-
-            @Override
-            public Object get(int index) {
-                return objectAdapter.decode(values.get(index));
-            }
-
-            @Override
-            public int size() {
-                return values.size();
-            }
-            
-        };
+        return ValueType.decode(input, this);
+    }
+    
+    @Override
+    public List<Object> decode(Value input, ValueType type, Object content) {
+        final List<Value> values = Array.class.cast(content).getData().getValue();
+        return new MemoizingList<Value, Object>(values, objectDecoder);
     }
     
     @Override
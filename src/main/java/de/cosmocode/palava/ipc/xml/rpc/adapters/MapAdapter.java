@@ -16,19 +16,11 @@
 
 package de.cosmocode.palava.ipc.xml.rpc.adapters;
 
-import java.util.AbstractMap;
-import java.util.AbstractSet;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
-
-import javax.xml.bind.JAXBElement;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Iterators;
 import com.google.inject.Inject;
 import com.google.inject.TypeLiteral;
 
@@ -44,7 +36,7 @@ import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
  * @since 1.0
  * @author Willi Schoenborn
  */
-final class MapAdapter implements Adapter<Value, Map<String, Object>> {
+final class MapAdapter implements Adapter<Value, Map<String, Object>>, ValueDecoder<Map<String, Object>> {
 
     static final TypeLiteral<Adapter<Value, Map<String, Object>>> LITERAL =
         new TypeLiteral<Adapter<Value, Map<String, Object>>>() { };
@@ -63,29 +55,12 @@ final class MapAdapter implements Adapter<Value, Map<String, Object>> {
     @Override
     public Map<String, Object> decode(Value input) {
         Preconditions.checkNotNull(input, "Input");
-        @SuppressWarnings("unchecked")
-        final JAXBElement<Struct> element = JAXBElement.class.cast(input.getContent().get(0));
-        final List<Member> members = element.getValue().getMember();
-        return new AbstractMap<String, Object>() {
-
-            @Override
-            public Set<Entry<String, Object>> entrySet() {
-                return new AbstractSet<Entry<String, Object>>() {
-
-                    @Override
-                    public Iterator<Entry<String, Object>> iterator() {
-                        return Iterators.unmodifiableIterator(Iterators.transform(members.iterator(), entryDecoder));
-                    }
-
-                    @Override
-                    public int size() {
-                        return members.size();
-                    }
-                    
-                };
-            }
-            
-        };
+        return ValueType.decode(input, this);
+    }
+    
+    @Override
+    public Map<String, Object> decode(Value input, ValueType type, Object content) {
+        return new StructMap(Struct.class.cast(content).getMember(), entryDecoder);
     }
     
     @Override
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc.adapters;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+
+/**
+ * An unmodifiable, lazily transformed view of a list which applies the transformation
+ * at most once per element. Once transformed, elements are read without locking.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ * @param <F> the source type
+ * @param <T> the target type
+ */
+@ThreadSafe
+final class MemoizingList<F, T> extends AbstractList<T> implements RandomAccess {
+
+    private static final Object NULL = new Object();
+    
+    private final List<F> backing;
+    
+    private final Function<? super F, ? extends T> function;
+    
+    private final AtomicReferenceArray<Object> cache;
+    
+    public MemoizingList(List<F> backing, Function<? super F, ? extends T> function) {
+        this.backing = Preconditions.checkNotNull(backing, "Backing");
+        this.function = Preconditions.checkNotNull(function, "Function");
+        this.cache = new AtomicReferenceArray<Object>(backing.size());
+    }
+    
+    @Override
+    public T get(int index) {
+        final Object cached = cache.get(index);
+        return unmask(cached == null ? compute(index) : cached);
+    }
+    
+    private synchronized Object compute(int index) {
+        final Object cached = cache.get(index);
+        if (cached != null) return cached;
+        final T value = function.apply(backing.get(index));
+        final Object masked = value == null ? NULL : value;
+        cache.set(index, masked);
+        return masked;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private T unmask(Object cached) {
+        return cached == NULL ? null : (T) cached;
+    }
+    
+    @Override
+    public int size() {
+        return cache.length();
+    }
+    
+}
@@ -16,8 +16,6 @@
 
 package de.cosmocode.palava.ipc.xml.rpc.adapters;
 
-import javax.xml.bind.JAXBElement;
-
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.google.inject.TypeLiteral;
@@ -32,7 +30,7 @@ import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
  * @since 1.0
  * @author Willi Schoenborn
  */
-final class NumberAdapter implements Adapter<Value, Number> {
+final class NumberAdapter implements Adapter<Value, Number>, ValueDecoder<Number> {
 
     static final TypeLiteral<Adapter<Value, Number>> LITERAL =
         new TypeLiteral<Adapter<Value, Number>>() { };
@@ -47,17 +45,15 @@ final class NumberAdapter implements Adapter<Value, Number> {
     @Override
     public Number decode(Value input) {
         Preconditions.checkNotNull(input, "Input");
-        final ValueType type = ValueType.of(input);
+        return ValueType.decode(input, this);
+    }
+    
+    @Override
+    public Number decode(Value input, ValueType type, Object content) {
         switch (type) {
-            case I4: {
-                @SuppressWarnings("unchecked")
-                final JAXBElement<Integer> element = JAXBElement.class.cast(input.getContent().get(0));
-                return element.getValue();
-            }
+            case I4:
             case DOUBLE: {
-                @SuppressWarnings("unchecked")
-                final JAXBElement<Double> element = JAXBElement.class.cast(input.getContent().get(0));
-                return element.getValue();
+                return Number.class.cast(content);
             }
             default: {
                 throw new IllegalArgumentException(type.toString());
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +31,8 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedMap.Builder;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.inject.Inject;
 import com.google.inject.TypeLiteral;
@@ -45,7 +48,7 @@ import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
  * @since 1.0
  * @author Willi Schoenborn
  */
-final class ObjectAdapter implements Adapter<Value, Object> {
+final class ObjectAdapter implements Adapter<Value, Object>, ValueDecoder<Object> {
 
     static final TypeLiteral<Adapter<Value, Object>> LITERAL =
         new TypeLiteral<Adapter<Value, Object>>() { };
@@ -72,10 +75,22 @@ final class ObjectAdapter implements Adapter<Value, Object> {
         
     };
 
+    /**
+     * Marks classes without a configured adapter in the encoder cache.
+     */
+    private static final Object NONE = new Object();
+
     private final Value nullValue;
     
     private final SortedMap<Class<?>, Adapter<Value, ?>> adapters;
     
+    private final Map<ValueType, ValueDecoder<?>> decoders = Maps.newEnumMap(ValueType.class);
+    
+    /**
+     * Resolved encoders per concrete class, weak keys allow classes to be unloaded.
+     */
+    private final ConcurrentMap<Class<?>, Object> encoders = new MapMaker().weakKeys().makeMap();
+    
     @Inject
     public ObjectAdapter(
         @XmlRpc ObjectFactory factory,
@@ -107,18 +122,53 @@ final class ObjectAdapter implements Adapter<Value, Object> {
         builder.put(String.class, stringAdapter);
         
         this.adapters = builder.build();
+        
+        for (ValueType type : ValueType.values()) {
+            final Adapter<Value, ?> adapter = adapters.get(type.getType());
+            Preconditions.checkState(adapter != null, "No adapter configured for %s", type.getType());
+            decoders.put(type, asValueDecoder(adapter));
+        }
     }
     
-    private Adapter<Value, ?> getDecoder(Value value) {
-        final ValueType type = ValueType.of(value);
-        final Class<?> javaType = type.getType();
-        final Adapter<Value, ?> adapter = adapters.get(javaType);
-        Preconditions.checkState(adapter != null, "No adapter configured for %s", javaType);
-        return adapter;
+    private static ValueDecoder<?> asValueDecoder(final Adapter<Value, ?> adapter) {
+        if (adapter instanceof ValueDecoder<?>) {
+            return (ValueDecoder<?>) adapter;
+        } else {
+            return new ValueDecoder<Object>() {
+                
+                @Override
+                public Object decode(Value input, ValueType type, Object content) {
+                    return adapter.decode(input);
+                }
+                
+            };
+        }
     }
     
     @SuppressWarnings("unchecked")
     private Adapter<Value, Object> getEncoder(Class<?> type) {
+        final Object cached = encoders.get(type);
+        if (cached == null) {
+            final Adapter<Value, Object> resolved = resolveEncoder(type);
+            encoders.put(type, resolved == null ? NONE : resolved);
+            return resolved;
+        } else {
+            return cached == NONE ? null : (Adapter<Value, Object>) cached;
+        }
+    }
+    
+    /**
+     * Checks whether the encoder of the specified class has already been resolved.
+     * 
+     * @param type the class
+     * @return true if the encoder, or the lack of one, is cached
+     */
+    boolean isResolved(Class<?> type) {
+        return encoders.containsKey(type);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Adapter<Value, Object> resolveEncoder(Class<?> type) {
         for (Entry<Class<?>, Adapter<Value, ?>> entry : adapters.entrySet()) {
             if (entry.getKey().isAssignableFrom(type)) {
                 return (Adapter<Value, Object>) entry.getValue();
@@ -130,7 +180,12 @@ final class ObjectAdapter implements Adapter<Value, Object> {
     @Override
     public Object decode(Value input) {
         Preconditions.checkNotNull(input, "Input");
-        return getDecoder(input).decode(input);
+        return ValueType.decode(input, this);
+    }
+    
+    @Override
+    public Object decode(Value input, ValueType type, Object content) {
+        return decoders.get(type).decode(input, type, content);
     }
     
     @Override
@@ -16,10 +16,6 @@
 
 package de.cosmocode.palava.ipc.xml.rpc.adapters;
 
-import java.io.Serializable;
-
-import javax.xml.bind.JAXBElement;
-
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.google.inject.TypeLiteral;
@@ -34,7 +30,7 @@ import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
  * @since 1.0
  * @author Willi Schoenborn
  */
-final class StringAdapter implements Adapter<Value, String> {
+final class StringAdapter implements Adapter<Value, String>, ValueDecoder<String> {
 
     static final TypeLiteral<Adapter<Value, String>> LITERAL =
         new TypeLiteral<Adapter<Value, String>>() { };
@@ -49,12 +45,12 @@ final class StringAdapter implements Adapter<Value, String> {
     @Override
     public String decode(Value input) {
         Preconditions.checkNotNull(input, "Input");
-        final Serializable first = input.getContent().get(0);
-        if (first instanceof String) {
-            return first.toString();
-        } else {
-            return JAXBElement.class.cast(first).getValue().toString();
-        }
+        return ValueType.decode(input, this);
+    }
+    
+    @Override
+    public String decode(Value input, ValueType type, Object content) {
+        return content.toString();
     }
     
     @Override
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc.adapters;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+
+import de.cosmocode.palava.ipc.xml.rpc.generated.Member;
+
+/**
+ * An unmodifiable map view of the members of a struct. Values are decoded
+ * lazily and at most once. Key lookups use an open addressing index over
+ * the member names which is built on the first lookup, values of other
+ * members are not decoded. If a name occurs multiple times, the first member wins.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class StructMap extends AbstractMap<String, Object> {
+
+    private final List<Member> members;
+    
+    private final List<Entry<String, Object>> entries;
+    
+    /**
+     * Member positions plus one, zero marks a free slot. Lookups probe linearly.
+     */
+    private volatile int[] index;
+    
+    public StructMap(List<Member> members, Function<Member, Entry<String, Object>> entryDecoder) {
+        this.members = Preconditions.checkNotNull(members, "Members");
+        this.entries = new MemoizingList<Member, Entry<String, Object>>(members, entryDecoder);
+    }
+    
+    private int[] index() {
+        int[] table = index;
+        if (table == null) {
+            // building is idempotent, concurrent builds are harmless
+            table = build();
+            index = table;
+        }
+        return table;
+    }
+    
+    private int[] build() {
+        final int size = members.size();
+        int capacity = 2;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        final int[] table = new int[capacity];
+        final int mask = capacity - 1;
+        
+        for (int i = 0; i < size; i++) {
+            final String name = members.get(i).getName();
+            int slot = hash(name) & mask;
+            while (true) {
+                if (table[slot] == 0) {
+                    table[slot] = i + 1;
+                    break;
+                } else if (Objects.equal(name, members.get(table[slot] - 1).getName())) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        
+        return table;
+    }
+    
+    private int indexOf(Object key) {
+        if (key != null && !(key instanceof String)) return -1;
+        final int[] table = index();
+        final int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+            final int position = table[slot] - 1;
+            if (Objects.equal(key, members.get(position).getName())) return position;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    private static int hash(Object key) {
+        if (key == null) return 0;
+        final int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+    
+    @Override
+    public Object get(Object key) {
+        final int position = indexOf(key);
+        return position == -1 ? null : entries.get(position).getValue();
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+    
+    @Override
+    public int size() {
+        return members.size();
+    }
+    
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return Iterators.unmodifiableIterator(entries.iterator());
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+            
+        };
+    }
+    
+}
@@ -21,6 +21,7 @@ import com.google.inject.Inject;
 import com.google.inject.TypeLiteral;
 
 import de.cosmocode.palava.ipc.xml.rpc.XmlRpc;
+import de.cosmocode.palava.ipc.xml.rpc.XmlRpcFaultException;
 import de.cosmocode.palava.ipc.xml.rpc.generated.Member;
 import de.cosmocode.palava.ipc.xml.rpc.generated.MethodResponse.Fault;
 import de.cosmocode.palava.ipc.xml.rpc.generated.ObjectFactory;
@@ -59,7 +60,7 @@ final class ThrowableAdapter implements Adapter<Fault.Value, Throwable> {
         final Member faultCode = factory.createMember();
         faultCode.setName(XmlRpc.FAULT_CODE);
         final Value code = factory.createValue();
-        code.getContent().add(factory.createValueI4(throwable.hashCode()));
+        code.getContent().add(factory.createValueI4(XmlRpcFaultException.faultCodeOf(throwable)));
         faultCode.setValue(code);
         struct.getMember().add(faultCode);
         
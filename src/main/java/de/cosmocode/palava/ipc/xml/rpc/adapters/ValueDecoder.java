@@ -0,0 +1,43 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc.adapters;
+
+import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
+
+/**
+ * Decodes {@link Value}s whose {@link ValueType} and content have already been resolved,
+ * which allows {@link ObjectAdapter} to classify every value only once.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ * @param <T> the decoded type
+ */
+interface ValueDecoder<T> {
+
+    /**
+     * Decodes the specified value.
+     * 
+     * @since 1.1
+     * @param input the value
+     * @param type the type of input
+     * @param content the content of input, see {@link ValueType#contentOf(Value)}
+     * @return the decoded value
+     * @throws IllegalArgumentException if input is of an unsupported type
+     */
+    T decode(Value input, ValueType type, Object content);
+    
+}
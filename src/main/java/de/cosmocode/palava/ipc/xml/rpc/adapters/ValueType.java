@@ -23,13 +23,10 @@ import java.util.List;
 import java.util.Map;
 
 import javax.xml.bind.JAXBElement;
-import javax.xml.namespace.QName;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableMap;
 
-import de.cosmocode.palava.ipc.xml.rpc.generated.Array;
-import de.cosmocode.palava.ipc.xml.rpc.generated.Struct;
 import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
 
 /**
@@ -40,28 +37,41 @@ import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
  */
 enum ValueType {
 
-    ARRAY(List.class),
+    ARRAY(List.class, "array"),
     
-    BASE64(InputStream.class),
+    BASE64(InputStream.class, "base64"),
     
-    BOOLEAN(Boolean.class),
+    BOOLEAN(Boolean.class, "boolean"),
     
-    DATETIME_ISO801(Date.class),
+    DATETIME_ISO801(Date.class, "dateTime.iso8601"),
     
-    DOUBLE(Double.class),
+    DOUBLE(Double.class, "double"),
     
-    I4(Integer.class),
+    I4(Integer.class, "i4", "int"),
     
-    STRING(String.class),
+    STRING(String.class, "string"),
     
-    STRUCT(Map.class);
+    STRUCT(Map.class, "struct");
 
-    private static final QName DATETIME_ISO8601_NAME = QName.valueOf("dateTime.iso8601");
+    private static final Map<String, ValueType> BY_NAME;
+    
+    static {
+        final ImmutableMap.Builder<String, ValueType> builder = ImmutableMap.builder();
+        for (ValueType type : values()) {
+            for (String name : type.names) {
+                builder.put(name, type);
+            }
+        }
+        BY_NAME = builder.build();
+    }
     
     private final Class<?> type;
     
-    private ValueType(Class<?> type) {
+    private final String[] names;
+    
+    private ValueType(Class<?> type, String... names) {
         this.type = Preconditions.checkNotNull(type, "Type");
+        this.names = names;
     }
     
     public Class<?> getType() {
@@ -69,55 +79,80 @@ enum ValueType {
     }
     
     /**
-     * Returns the type associated with a given value.
+     * Returns the type associated with a given value. The type is resolved
+     * using the local name of the typed element, untyped values are strings.
      * 
      * @since 1.0
      * @param value the value
      * @return the {@link ValueType} representing the type of the specified value
      * @throws NullPointerException if value is null
+     * @throws IllegalArgumentException if value is of an unknown type
      */
     public static ValueType of(Value value) {
         Preconditions.checkNotNull(value, "Value");
-        final Serializable first = Iterables.getOnlyElement(value.getContent());
-        final JAXBElement<?> element;
-        final Object content;
-        
-        if (first instanceof JAXBElement<?>) {
-            element = JAXBElement.class.cast(first);
-            content = element.getValue();
-        } else {
-            element = null;
-            content = first;
-        }
-        
-        // ordering from the most used to the least
-        if (first instanceof String) {
-            return STRING;
-        } else if (DATETIME_ISO8601_NAME.equals(element.getName())) {
-            return DATETIME_ISO801;
+        return of(value, elementOf(value));
+    }
+    
+    private static ValueType of(Value value, JAXBElement<?> element) {
+        if (element == null) return STRING;
+        final ValueType type = BY_NAME.get(element.getName().getLocalPart());
+        Preconditions.checkArgument(type != null, "%s is of unknown type", value);
+        return type;
+    }
+    
+    /**
+     * Returns the content of the typed element of the specified value
+     * or the text of untyped values.
+     * 
+     * @since 1.1
+     * @param value the value
+     * @return the content of value
+     * @throws NullPointerException if value is null
+     */
+    static Object contentOf(Value value) {
+        return contentOf(value, elementOf(value));
+    }
+    
+    private static Object contentOf(Value value, JAXBElement<?> element) {
+        if (element == null) {
+            final List<Serializable> content = value.getContent();
+            if (content.size() == 1) return content.get(0).toString();
+            final StringBuilder builder = new StringBuilder();
+            for (Serializable text : content) {
+                builder.append(text);
+            }
+            return builder.toString();
         } else {
-            return of(value, content);
+            return element.getValue();
         }
     }
     
-    private static ValueType of(Value value, Object content) {
-        if (content instanceof String) {
-            return  STRING;
-        } else if (content instanceof Boolean) {
-            return BOOLEAN;
-        } else if (content instanceof Integer) {
-            return I4;
-        } else if (content instanceof Struct) {
-            return STRUCT;
-        } else if (content instanceof Array) {
-            return ARRAY;
-        } else if (content instanceof Double) {
-            return DOUBLE;
-        } else if (content instanceof byte[]) {
-            return BASE64;
-        } else {
-            throw new IllegalArgumentException(String.format("%s is of unknown type", value));
+    /**
+     * Resolves type and content of the specified value in a single pass
+     * and passes them to the specified decoder.
+     * 
+     * @since 1.1
+     * @param <T> the decoded type
+     * @param value the value
+     * @param decoder the decoder
+     * @return the decoded value
+     * @throws NullPointerException if value is null
+     * @throws IllegalArgumentException if value is of an unknown type
+     */
+    static <T> T decode(Value value, ValueDecoder<T> decoder) {
+        Preconditions.checkNotNull(value, "Value");
+        final JAXBElement<?> element = elementOf(value);
+        return decoder.decode(value, of(value, element), contentOf(value, element));
+    }
+    
+    private static JAXBElement<?> elementOf(Value value) {
+        // typed elements may be surrounded by whitespace in mixed content
+        for (Serializable content : value.getContent()) {
+            if (content instanceof JAXBElement<?>) {
+                return JAXBElement.class.cast(content);
+            }
         }
+        return null;
     }
     
 }
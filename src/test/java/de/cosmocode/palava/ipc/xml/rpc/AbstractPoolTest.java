@@ -0,0 +1,153 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cosmocode.palava.core.Framework;
+import de.cosmocode.palava.core.Palava;
+
+/**
+ * Tests {@link AbstractPool} and {@link MarshallerPool}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class AbstractPoolTest {
+    
+    /**
+     * A pool of string builders which are cleared on release.
+     */
+    private static final class BuilderPool extends AbstractPool<StringBuilder> {
+        
+        private int created;
+        
+        @Override
+        protected StringBuilder create() {
+            created++;
+            return new StringBuilder();
+        }
+        
+        @Override
+        protected void reset(StringBuilder instance) {
+            instance.setLength(0);
+        }
+        
+    }
+    
+    /**
+     * Tests that released instances are reset and handed out again, counting hits and misses.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void reuse() {
+        final BuilderPool pool = new BuilderPool();
+        final StringBuilder first = pool.borrow();
+        Assert.assertEquals(1, pool.getMisses());
+        Assert.assertEquals(0, pool.getHits());
+        
+        first.append("dirty");
+        pool.release(first);
+        Assert.assertEquals(1, pool.getIdle());
+        
+        final StringBuilder second = pool.borrow();
+        Assert.assertSame(first, second);
+        Assert.assertEquals(0, second.length());
+        Assert.assertEquals(1, pool.getHits());
+        Assert.assertEquals(1, pool.getMisses());
+        Assert.assertEquals(0, pool.getIdle());
+        Assert.assertEquals(1, pool.created);
+    }
+    
+    /**
+     * Tests that instances released into a full pool are discarded.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void capacity() {
+        final BuilderPool pool = new BuilderPool();
+        pool.setCapacity(2);
+        final StringBuilder a = pool.borrow();
+        final StringBuilder b = pool.borrow();
+        final StringBuilder c = pool.borrow();
+        Assert.assertEquals(3, pool.getMisses());
+        
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        Assert.assertEquals(2, pool.getIdle());
+        Assert.assertEquals(1, pool.getDiscards());
+        
+        pool.borrow();
+        pool.borrow();
+        pool.borrow();
+        Assert.assertEquals(2, pool.getHits());
+        Assert.assertEquals(4, pool.getMisses());
+        Assert.assertEquals(4, pool.created);
+    }
+    
+    /**
+     * Tests that a pool without capacity never keeps instances.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void disabled() {
+        final BuilderPool pool = new BuilderPool();
+        pool.setCapacity(0);
+        pool.release(pool.borrow());
+        Assert.assertEquals(0, pool.getIdle());
+        Assert.assertEquals(1, pool.getDiscards());
+        pool.borrow();
+        Assert.assertEquals(2, pool.getMisses());
+    }
+    
+    /**
+     * Tests that marshallers are reset before they are handed out again.
+     * 
+     * @since 1.1
+     * @throws JAXBException should not happen
+     */
+    @Test
+    public void marshallerReset() throws JAXBException {
+        final Framework framework = Palava.newFramework();
+        framework.start();
+        
+        try {
+            final MarshallerPool pool = framework.getInstance(MarshallerPool.class);
+            final long hits = pool.getHits();
+            final Marshaller marshaller = pool.borrow();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            pool.release(marshaller);
+            
+            final Marshaller reused = pool.borrow();
+            Assert.assertSame(marshaller, reused);
+            Assert.assertEquals(Boolean.FALSE, reused.getProperty(Marshaller.JAXB_FORMATTED_OUTPUT));
+            Assert.assertEquals(hits + 1, pool.getHits());
+            pool.release(reused);
+        } finally {
+            framework.stop();
+        }
+    }
+    
+}
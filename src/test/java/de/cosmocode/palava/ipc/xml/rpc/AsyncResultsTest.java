@@ -0,0 +1,97 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Tests {@link AsyncResults}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class AsyncResultsTest {
+    
+    /**
+     * Tests that the listener runs once all futures are done and
+     * that futures are replaced by their values.
+     * 
+     * @since 1.1
+     * @throws ExecutionException should not happen
+     */
+    @Test
+    public void resolve() throws ExecutionException {
+        final SettableFuture<Object> name = SettableFuture.create();
+        final SettableFuture<Object> rest = SettableFuture.create();
+        final Map<String, Object> result = Maps.newLinkedHashMap();
+        result.put("id", 42);
+        result.put("name", name);
+        result.put(XmlRpc.FUTURE, rest);
+        Assert.assertTrue(AsyncResults.isPending(result));
+        
+        final AtomicInteger calls = new AtomicInteger();
+        AsyncResults.addListener(result, new Runnable() {
+            
+            @Override
+            public void run() {
+                calls.incrementAndGet();
+            }
+            
+        }, MoreExecutors.sameThreadExecutor());
+        
+        name.set("async");
+        Assert.assertEquals(0, calls.get());
+        rest.set(ImmutableMap.of("status", "ok"));
+        Assert.assertEquals(1, calls.get());
+        
+        final Map<String, Object> resolved = AsyncResults.resolve(result);
+        Assert.assertEquals(ImmutableMap.of("id", 42, "name", "async", "status", "ok"), resolved);
+        Assert.assertFalse(AsyncResults.isPending(resolved));
+    }
+    
+    /**
+     * Tests that failed futures are reported.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void failure() {
+        final SettableFuture<Object> future = SettableFuture.create();
+        final IllegalStateException cause = new IllegalStateException("remote failed");
+        future.setException(cause);
+        
+        final Map<String, Object> result = Maps.newHashMap();
+        result.put("value", future);
+        try {
+            AsyncResults.resolve(result);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertSame(cause, e.getCause());
+        }
+    }
+    
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.TimeZone;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests {@link CallCoalescer}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class CallCoalescerTest {
+    
+    private CallCoalescer unit() {
+        final CallCoalescer coalescer = new CallCoalescer(
+            new MethodResponseWriter(new DateTimeIso8601Codec(TimeZone.getTimeZone("UTC"))));
+        coalescer.setMethods("lookup");
+        return coalescer;
+    }
+    
+    /**
+     * Tests that identical calls in flight share one serialized response
+     * and that a new flight starts after landing.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void coalesce() {
+        final CallCoalescer coalescer = unit();
+        Assert.assertTrue(coalescer.isCoalesced("lookup"));
+        Assert.assertFalse(coalescer.isCoalesced("update"));
+        
+        final CallKey key = CallKey.of("lookup", ImmutableMap.of("id", 1));
+        final RecordingCompletion leader = new RecordingCompletion();
+        final RecordingCompletion first = new RecordingCompletion();
+        final RecordingCompletion second = new RecordingCompletion();
+        Assert.assertTrue(coalescer.join(key, leader));
+        Assert.assertFalse(coalescer.join(key, first));
+        Assert.assertFalse(coalescer.join(key, second));
+        Assert.assertTrue(coalescer.join(CallKey.of("lookup", ImmutableMap.of("id", 2)), new RecordingCompletion()));
+        Assert.assertEquals(2, coalescer.getInFlight());
+        
+        coalescer.land(key, ImmutableMap.of("name", "one"));
+        Assert.assertEquals(1, coalescer.getInFlight());
+        Assert.assertEquals(2, coalescer.getExecutions());
+        Assert.assertEquals(2, coalescer.getCoalescedCalls());
+        
+        final ChannelBuffer expected = ChannelBuffer.class.cast(leader.getResponses().get(0));
+        Assert.assertEquals(expected, first.getResponses().get(0));
+        Assert.assertEquals(expected, second.getResponses().get(0));
+        Assert.assertNotSame(expected, first.getResponses().get(0));
+        
+        Assert.assertTrue(coalescer.join(key, new RecordingCompletion()));
+    }
+    
+    /**
+     * Tests that failures are shared as well.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void failure() {
+        final CallCoalescer coalescer = unit();
+        final CallKey key = CallKey.of("lookup", ImmutableMap.<String, Object>of());
+        final RecordingCompletion leader = new RecordingCompletion();
+        final RecordingCompletion follower = new RecordingCompletion();
+        coalescer.join(key, leader);
+        coalescer.join(key, follower);
+        final Exception failure = new IllegalStateException();
+        coalescer.land(key, failure);
+        Assert.assertSame(failure, leader.getResponses().get(0));
+        Assert.assertSame(failure, follower.getResponses().get(0));
+    }
+    
+}
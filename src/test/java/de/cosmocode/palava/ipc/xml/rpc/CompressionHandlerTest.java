@@ -0,0 +1,149 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Tests {@link CompressionHandler}, {@link ContentDeflater} and {@link ContentInflater}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class CompressionHandlerTest {
+    
+    private static final int SIZE = 100000;
+    
+    private byte[] content() {
+        final Random random = new Random(0);
+        final byte[] bytes = new byte[SIZE];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) "<value>12345</value>".charAt(random.nextInt(20));
+        }
+        return bytes;
+    }
+    
+    private ChannelBuffer inflate(ContentInflater inflater, byte[] compressed, int chunkSize) 
+        throws TooLongFrameException {
+        final ChannelBuffer output = ChannelBuffers.dynamicBuffer();
+        for (int offset = 0; offset < compressed.length; offset += chunkSize) {
+            final int length = Math.min(chunkSize, compressed.length - offset);
+            output.writeBytes(inflater.inflate(ChannelBuffers.wrappedBuffer(compressed, offset, length)));
+        }
+        inflater.finish();
+        return output;
+    }
+    
+    /**
+     * Tests that chunked gzip compression is readable by {@link GZIPInputStream}.
+     * 
+     * @since 1.1
+     * @throws IOException should not happen
+     */
+    @Test
+    public void deflate() throws IOException {
+        final byte[] content = content();
+        final ContentDeflater deflater = new ContentDeflater(true, 6);
+        final ChannelBuffer compressed = ChannelBuffers.dynamicBuffer();
+        for (int offset = 0; offset < content.length; offset += 8192) {
+            final int length = Math.min(8192, content.length - offset);
+            compressed.writeBytes(deflater.deflate(ChannelBuffers.wrappedBuffer(content, offset, length)));
+        }
+        compressed.writeBytes(deflater.finish());
+        
+        final byte[] bytes = new byte[compressed.readableBytes()];
+        compressed.readBytes(bytes);
+        Assert.assertTrue(bytes.length < content.length / 2);
+        final GZIPInputStream stream = new GZIPInputStream(new ByteArrayInputStream(bytes));
+        Assert.assertArrayEquals(content, ByteStreams.toByteArray(stream));
+    }
+    
+    /**
+     * Tests that {@link GZIPOutputStream} output can be decompressed in small chunks.
+     * 
+     * @since 1.1
+     * @throws IOException should not happen
+     * @throws TooLongFrameException should not happen
+     */
+    @Test
+    public void inflate() throws IOException, TooLongFrameException {
+        final byte[] content = content();
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(stream);
+        gzip.write(content);
+        gzip.close();
+        
+        final ChannelBuffer output = inflate(new ContentInflater(true, SIZE), stream.toByteArray(), 7);
+        Assert.assertEquals(ChannelBuffers.wrappedBuffer(content), output);
+    }
+    
+    /**
+     * Tests that deflate content round trips and that the maximum length is enforced.
+     * 
+     * @since 1.1
+     * @throws TooLongFrameException should not happen
+     */
+    @Test
+    public void deflateRoundTrip() throws TooLongFrameException {
+        final byte[] content = content();
+        final ContentDeflater deflater = new ContentDeflater(false, 9);
+        final ChannelBuffer compressed = ChannelBuffers.wrappedBuffer(
+            deflater.deflate(ChannelBuffers.wrappedBuffer(content)), deflater.finish());
+        final byte[] bytes = new byte[compressed.readableBytes()];
+        compressed.readBytes(bytes);
+        
+        final ChannelBuffer output = inflate(new ContentInflater(false, SIZE), bytes, 512);
+        Assert.assertEquals(ChannelBuffers.wrappedBuffer(content), output);
+        
+        try {
+            inflate(new ContentInflater(false, SIZE - 1), bytes, 512);
+            Assert.fail("Maximum length exceeded");
+        } catch (TooLongFrameException e) {
+            // expected
+        }
+    }
+    
+    /**
+     * Tests the accept encoding negotiation.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void negotiate() {
+        Assert.assertNull(CompressionHandler.negotiate(null));
+        Assert.assertNull(CompressionHandler.negotiate("identity"));
+        Assert.assertNull(CompressionHandler.negotiate("gzip;q=0, deflate;q=0"));
+        Assert.assertEquals("gzip", CompressionHandler.negotiate("gzip, deflate"));
+        Assert.assertEquals("gzip", CompressionHandler.negotiate("*"));
+        Assert.assertEquals("deflate", CompressionHandler.negotiate("gzip;q=0.5, deflate"));
+        Assert.assertEquals("deflate", CompressionHandler.negotiate("deflate, *;q=0"));
+    }
+    
+}
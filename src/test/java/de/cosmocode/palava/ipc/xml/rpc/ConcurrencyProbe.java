@@ -0,0 +1,84 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Command which records the maximum number of concurrent executions. It echos
+ * its arguments after a short delay or fails with an {@link AssertionError} if
+ * the first argument is {@code true}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class ConcurrencyProbe implements IpcCommand {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrencyProbe.class);
+    
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+    
+    private static final AtomicInteger MAXIMUM = new AtomicInteger();
+    
+    /**
+     * Resets the recorded maximum.
+     */
+    public static void reset() {
+        MAXIMUM.set(0);
+    }
+    
+    /**
+     * Returns the maximum number of concurrent executions since the last {@link #reset()}.
+     * 
+     * @return the maximum
+     */
+    public static int getMaximum() {
+        return MAXIMUM.get();
+    }
+
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        final int active = ACTIVE.incrementAndGet();
+        try {
+            int maximum;
+            while ((maximum = MAXIMUM.get()) < active && !MAXIMUM.compareAndSet(maximum, active)) {
+                continue;
+            }
+            LOG.trace("{} concurrent executions", active);
+            if (Boolean.TRUE.equals(call.getArguments().get("0"))) {
+                throw new AssertionError("Failing as requested");
+            }
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            ACTIVE.decrementAndGet();
+        }
+        result.putAll(call.getArguments());
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Benchmarks {@link DateTimeIso8601Codec}, run using the {@code benchmark} profile.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class DateTimeIso8601CodecBenchmark {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(DateTimeIso8601CodecBenchmark.class);
+    
+    private static final int THREADS = 8;
+    
+    private static final int ITERATIONS = 50000;
+    
+    /**
+     * Round trips random dates on multiple threads sharing one codec.
+     *
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void concurrent() throws Exception {
+        final TimeZone timeZone = TimeZone.getTimeZone("Europe/Berlin");
+        final DateTimeIso8601Codec codec = new DateTimeIso8601Codec(timeZone);
+        final ExecutorService service = Executors.newFixedThreadPool(THREADS);
+        
+        try {
+            final List<Future<Long>> futures = Lists.newArrayList();
+            for (int t = 0; t < THREADS; t++) {
+                final long seed = t;
+                futures.add(service.submit(new Callable<Long>() {
+                    
+                    @Override
+                    public Long call() throws Exception {
+                        final long start = System.nanoTime();
+                        DateTimeIso8601CodecTest.roundTrip(codec, timeZone, seed, ITERATIONS);
+                        return System.nanoTime() - start;
+                    }
+                
+                }));
+            }
+            long elapsed = 0;
+            for (Future<Long> future : futures) {
+                elapsed += future.get().longValue();
+            }
+            LOG.info("{} round trips on {} threads took {}ms", new Object[] {
+                THREADS * ITERATIONS, THREADS, elapsed / THREADS / 1000000
+            });
+        } finally {
+            service.shutdownNow();
+        }
+    }
+    
+    /**
+     * Compares the throughput of the codec with a thread confined {@link SimpleDateFormat}.
+     *
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void throughput() throws Exception {
+        final TimeZone timeZone = TimeZone.getDefault();
+        final DateTimeIso8601Codec codec = new DateTimeIso8601Codec(timeZone);
+        final DateFormat format = DateTimeIso8601CodecTest.reference(timeZone);
+        final char[] chars = new char[DateTimeIso8601Codec.LENGTH];
+        final long millis = 1287398400000L;
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            format.parse(format.format(new Date(millis + i * 1000L)));
+        }
+        final long reference = System.nanoTime() - start;
+        
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            codec.format(millis + i * 1000L, chars, 0);
+            Assert.assertEquals(millis + i * 1000L, codec.parse(new String(chars)));
+        }
+        final long own = System.nanoTime() - start;
+        
+        LOG.info("{} round trips: SimpleDateFormat {}ms, codec {}ms", new Object[] {
+            ITERATIONS, reference / 1000000, own / 1000000
+        });
+    }
+
+}
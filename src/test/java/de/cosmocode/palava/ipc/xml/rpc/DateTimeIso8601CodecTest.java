@@ -0,0 +1,164 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link DateTimeIso8601Codec}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class DateTimeIso8601CodecTest {
+    
+    private static final String PATTERN = "yyyyMMdd'T'HH:mm:ss";
+    
+    private static final int THREADS = 4;
+    
+    private static final int ITERATIONS = 2000;
+    
+    /**
+     * Covers the years 0001 to 9999.
+     */
+    private static final long MIN = -62135596800000L;
+    private static final long MAX = 253402300799000L;
+    
+    static DateFormat reference(TimeZone timeZone) {
+        final GregorianCalendar calendar = new GregorianCalendar(timeZone);
+        // the codec uses the proleptic gregorian calendar
+        calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+        final DateFormat format = new SimpleDateFormat(PATTERN);
+        format.setCalendar(calendar);
+        format.setLenient(false);
+        return format;
+    }
+    
+    /**
+     * Tests formatting and parsing of a well known date.
+     *
+     * @since 1.1
+     */
+    @Test
+    public void known() {
+        final DateTimeIso8601Codec codec = new DateTimeIso8601Codec(TimeZone.getTimeZone("UTC"));
+        Assert.assertEquals("19980717T14:08:55", codec.format(new Date(900684535000L)));
+        Assert.assertEquals(900684535000L, codec.parse("19980717T14:08:55"));
+        
+        final byte[] bytes = new byte[DateTimeIso8601Codec.LENGTH + 2];
+        codec.format(900684535000L, bytes, 2);
+        Assert.assertEquals("19980717T14:08:55", new String(bytes, 2, DateTimeIso8601Codec.LENGTH));
+        Assert.assertEquals(900684535000L, codec.parse(bytes, 2));
+    }
+    
+    /**
+     * Tests that malformed dates are rejected.
+     *
+     * @since 1.1
+     */
+    @Test
+    public void invalid() {
+        final DateTimeIso8601Codec codec = new DateTimeIso8601Codec(TimeZone.getTimeZone("UTC"));
+        final String[] invalid = {
+            "", "19980717T14:08", "19980717 14:08:55", "1998-07-17T14:08", "19981317T14:08:55",
+            "19980732T14:08:55", "19980230T14:08:55", "19980717T24:08:55", "19980717T14:60:55",
+            "1998O717T14:08:55", "19980717T14:08:55Z"
+        };
+        for (String text : invalid) {
+            try {
+                codec.parse(text);
+                Assert.fail(text);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+    
+    /**
+     * Round trips random dates on multiple threads sharing one codec
+     * and compares the results with a thread confined {@link SimpleDateFormat}.
+     *
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void concurrent() throws Exception {
+        final TimeZone timeZone = TimeZone.getTimeZone("Europe/Berlin");
+        final DateTimeIso8601Codec codec = new DateTimeIso8601Codec(timeZone);
+        final ExecutorService service = Executors.newFixedThreadPool(THREADS);
+        
+        try {
+            final List<Future<Void>> futures = Lists.newArrayList();
+            for (int t = 0; t < THREADS; t++) {
+                final long seed = t;
+                futures.add(service.submit(new Callable<Void>() {
+                    
+                    @Override
+                    public Void call() throws Exception {
+                        roundTrip(codec, timeZone, seed, ITERATIONS);
+                        return null;
+                    }
+                
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            service.shutdownNow();
+        }
+    }
+    
+    /**
+     * Round trips random dates and compares the results with a {@link SimpleDateFormat}.
+     * 
+     * @param codec the codec under test
+     * @param timeZone the time zone of codec
+     * @param seed the random seed
+     * @param iterations the number of dates
+     * @throws Exception if parsing using the reference format failed
+     */
+    static void roundTrip(DateTimeIso8601Codec codec, TimeZone timeZone, long seed, int iterations) throws Exception {
+        final DateFormat format = reference(timeZone);
+        final Random random = new Random(seed);
+        final byte[] bytes = new byte[DateTimeIso8601Codec.LENGTH];
+        for (int i = 0; i < iterations; i++) {
+            final long seconds = MIN / 1000 + (long) (random.nextDouble() * (MAX - MIN) / 1000);
+            final long millis = seconds * 1000;
+            final String expected = format.format(new Date(millis));
+            codec.format(millis, bytes, 0);
+            Assert.assertEquals(expected, new String(bytes, "US-ASCII"));
+            Assert.assertEquals(format.parse(expected).getTime(), codec.parse(bytes, 0));
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.cosmocode.palava.core.Framework;
+import de.cosmocode.palava.core.Palava;
+import de.cosmocode.palava.ipc.IpcCallScope;
+
+/**
+ * Benchmarks the {@link ExecutionMode}s with blocking calls. A fixed number of
+ * worker threads, standing in for the netty workers, hands calls to the executor.
+ * Run using the {@code benchmark} profile.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class ExecutionBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionBenchmark.class);
+    
+    private static final int WORKERS = 4;
+    
+    private static final int POOL_SIZE = 16;
+    
+    private static final int CALLS = 200;
+    
+    private static final long BLOCKING_MILLIS = 10;
+    
+    private long run(final Executor executor, final IpcCallScope scope) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(CALLS);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+        
+        final Runnable blocking = new Runnable() {
+            
+            @Override
+            public void run() {
+                final XmlRpcCall call = new XmlRpcCall("blocking", XmlRpcArguments.of(Collections.emptyList()));
+                try {
+                    // mirrors XmlRpcHandler#process
+                    scope.enter(call);
+                    try {
+                        // simulates jdbc or a remote service
+                        Thread.sleep(BLOCKING_MILLIS);
+                    } finally {
+                        scope.exit();
+                    }
+                /* CHECKSTYLE:OFF */
+                } catch (Throwable e) {
+                /* CHECKSTYLE:ON */
+                    failure.compareAndSet(null, e);
+                } finally {
+                    latch.countDown();
+                }
+            }
+            
+        };
+        
+        final long start = System.nanoTime();
+        try {
+            for (int i = 0; i < WORKERS; i++) {
+                workers.execute(new Runnable() {
+                    
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < CALLS / WORKERS; j++) {
+                            executor.execute(blocking);
+                        }
+                    }
+                    
+                });
+            }
+            Assert.assertTrue(latch.await(1, TimeUnit.MINUTES));
+        } finally {
+            workers.shutdownNow();
+        }
+        final long elapsed = System.nanoTime() - start;
+        
+        Assert.assertNull(failure.get());
+        return elapsed;
+    }
+    
+    private Executor executor(ExecutionMode mode, ExecutorService service) {
+        final XmlRpcExecutorProvider provider = new XmlRpcExecutorProvider();
+        provider.setExecution(mode);
+        if (service != null) {
+            provider.setService(service);
+        }
+        return provider.get();
+    }
+    
+    /**
+     * Compares inline, platform thread pool and virtual thread execution of blocking calls.
+     * Virtual threads are skipped if the current runtime does not support them.
+     * 
+     * @since 1.1
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void blocking() throws InterruptedException {
+        final Framework framework = Palava.newFramework();
+        framework.start();
+        
+        final ExecutorService pool = Executors.newFixedThreadPool(POOL_SIZE);
+        
+        try {
+            final IpcCallScope scope = framework.getInstance(IpcCallScope.class);
+            
+            final long inline = run(executor(ExecutionMode.INLINE, null), scope);
+            LOG.info("{} blocking calls inline on {} workers: {}ms", new Object[] {
+                CALLS, WORKERS, inline / 1000000
+            });
+            
+            final long platform = run(executor(ExecutionMode.EXECUTOR, pool), scope);
+            LOG.info("{} blocking calls on {} platform threads: {}ms", new Object[] {
+                CALLS, POOL_SIZE, platform / 1000000
+            });
+            
+            final ExecutorService virtual;
+            try {
+                virtual = ExecutorService.class.cast(executor(ExecutionMode.VIRTUAL, null));
+            } catch (IllegalStateException e) {
+                LOG.info("Skipping virtual threads: {}", e.getMessage());
+                return;
+            }
+            
+            try {
+                final long elapsed = run(virtual, scope);
+                LOG.info("{} blocking calls on virtual threads: {}ms", CALLS, elapsed / 1000000);
+            } finally {
+                virtual.shutdown();
+            }
+        } finally {
+            pool.shutdownNow();
+            framework.stop();
+        }
+    }
+    
+}
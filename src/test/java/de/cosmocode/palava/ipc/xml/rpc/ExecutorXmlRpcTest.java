@@ -0,0 +1,55 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+
+import de.cosmocode.palava.core.Framework;
+import de.cosmocode.palava.core.Palava;
+
+/**
+ * Runs all tests of {@link XmlRpcTest} with calls executed by the
+ * {@link XmlRpc} executor, see {@link ExecutionMode#EXECUTOR}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class ExecutorXmlRpcTest extends XmlRpcTest {
+
+    @Override
+    protected Framework newFramework() {
+        final Properties properties = new Properties();
+        final InputStream stream = getClass().getResourceAsStream("/application.properties");
+        Preconditions.checkState(stream != null, "application.properties not found");
+        try {
+            properties.load(stream);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            Closeables.closeQuietly(stream);
+        }
+        properties.setProperty(XmlRpc.EXECUTION, ExecutionMode.EXECUTOR.name());
+        return Palava.newFramework(properties);
+    }
+    
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Ticker} which only advances when told to.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+final class FakeTicker extends Ticker {
+    
+    private final AtomicLong nanos = new AtomicLong();
+    
+    @Override
+    public long read() {
+        return nanos.get();
+    }
+    
+    /**
+     * Advances this ticker by the specified duration.
+     * 
+     * @param duration the duration
+     * @param unit the unit of duration
+     */
+    public void advance(long duration, TimeUnit unit) {
+        nanos.addAndGet(unit.toNanos(duration));
+    }
+    
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link IdempotencyTable} and {@link IdempotentReplay}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class IdempotencyTableTest {
+    
+    private static final byte[] REQUEST = {1, 2, 3};
+    
+    private static final byte[] RESPONSE = {4, 5, 6};
+    
+    /**
+     * Tests that retries attach to the running execution and replay the stored response afterwards.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void replay() {
+        final IdempotencyTable table = new IdempotencyTable();
+        final IdempotencyTable.Entry entry = table.join("a", REQUEST, new RecordingCompletion());
+        Assert.assertNotNull(entry);
+        
+        final RecordingCompletion waiting = new RecordingCompletion();
+        Assert.assertNull(table.join("a", REQUEST.clone(), waiting));
+        Assert.assertTrue(waiting.getResponses().isEmpty());
+        
+        table.land(entry, RESPONSE);
+        Assert.assertEquals(ChannelBuffers.wrappedBuffer(RESPONSE), waiting.getResponses().get(0));
+        
+        final RecordingCompletion late = new RecordingCompletion();
+        Assert.assertNull(table.join("a", REQUEST, late));
+        Assert.assertEquals(ChannelBuffers.wrappedBuffer(RESPONSE), late.getResponses().get(0));
+        
+        final RecordingCompletion different = new RecordingCompletion();
+        Assert.assertNull(table.join("a", new byte[] {7}, different));
+        Assert.assertTrue(different.getResponses().get(0) instanceof XmlRpcFaultException);
+    }
+    
+    /**
+     * Tests that abandoned keys fail waiting retries and execute again.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void abandon() {
+        final IdempotencyTable table = new IdempotencyTable();
+        final IdempotencyTable.Entry entry = table.join("a", REQUEST, new RecordingCompletion());
+        final RecordingCompletion waiting = new RecordingCompletion();
+        table.join("a", REQUEST, waiting);
+        final Exception cause = new IllegalStateException();
+        table.abandon(entry, cause);
+        Assert.assertSame(cause, waiting.getResponses().get(0));
+        Assert.assertNotNull(table.join("a", REQUEST, new RecordingCompletion()));
+    }
+    
+    /**
+     * Tests that stored responses expire and are evicted while keys in flight are kept.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void eviction() {
+        final IdempotencyTable table = new IdempotencyTable();
+        final FakeTicker ticker = new FakeTicker();
+        table.setTicker(ticker);
+        table.setMaxSize(2);
+        table.setTtl(10);
+        table.setTtlUnit(TimeUnit.MILLISECONDS);
+        
+        final IdempotencyTable.Entry flying = table.join("flying", REQUEST, new RecordingCompletion());
+        table.land(table.join("a", REQUEST, new RecordingCompletion()), RESPONSE);
+        final IdempotencyTable.Entry b = table.join("b", REQUEST, new RecordingCompletion());
+        Assert.assertEquals(2, table.size());
+        Assert.assertNotNull(table.join("a", REQUEST, new RecordingCompletion()));
+        
+        table.land(b, RESPONSE);
+        ticker.advance(10, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(table.join("b", REQUEST, new RecordingCompletion()));
+        table.land(flying, RESPONSE);
+    }
+    
+    /**
+     * Tests that keys in flight expire, fail their waiting retries and become evictable.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void expiry() {
+        final IdempotencyTable table = new IdempotencyTable();
+        final FakeTicker ticker = new FakeTicker();
+        table.setTicker(ticker);
+        table.setMaxSize(1);
+        table.setTtl(10);
+        table.setTtlUnit(TimeUnit.MILLISECONDS);
+        
+        table.join("a", REQUEST, new RecordingCompletion());
+        final RecordingCompletion waiting = new RecordingCompletion();
+        table.join("a", REQUEST, waiting);
+        ticker.advance(9, TimeUnit.MILLISECONDS);
+        Assert.assertNull(table.join("a", REQUEST, new RecordingCompletion()));
+        ticker.advance(1, TimeUnit.MILLISECONDS);
+        
+        Assert.assertNotNull(table.join("b", REQUEST, new RecordingCompletion()));
+        Assert.assertEquals(1, table.size());
+        Assert.assertTrue(waiting.getResponses().get(0) instanceof IllegalStateException);
+        
+        ticker.advance(10, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(table.join("b", REQUEST, new RecordingCompletion()));
+    }
+    
+    /**
+     * Tests that landing or abandoning entries which are no longer in flight is ignored,
+     * including entries which have been replaced by a later request of the same key.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void stale() {
+        final IdempotencyTable table = new IdempotencyTable();
+        final IdempotencyTable.Entry a = table.join("a", REQUEST, new RecordingCompletion());
+        table.abandon(a, new IllegalStateException());
+        table.land(a, RESPONSE);
+        table.abandon(a, new IllegalStateException());
+        Assert.assertEquals(0, table.size());
+        
+        final IdempotencyTable.Entry b = table.join("b", REQUEST, new RecordingCompletion());
+        table.land(b, RESPONSE);
+        table.abandon(b, new IllegalStateException());
+        table.land(b, new byte[] {7});
+        final RecordingCompletion late = new RecordingCompletion();
+        table.join("b", REQUEST, late);
+        Assert.assertEquals(ChannelBuffers.wrappedBuffer(RESPONSE), late.getResponses().get(0));
+        
+        final IdempotencyTable.Entry retry = table.join("a", REQUEST, new RecordingCompletion());
+        final RecordingCompletion waiting = new RecordingCompletion();
+        table.join("a", REQUEST, waiting);
+        table.abandon(a, new IllegalStateException());
+        table.land(a, new byte[] {7});
+        Assert.assertTrue(waiting.getResponses().isEmpty());
+        table.land(retry, RESPONSE);
+        Assert.assertEquals(ChannelBuffers.wrappedBuffer(RESPONSE), waiting.getResponses().get(0));
+    }
+    
+    /**
+     * Tests that replays deliver their response regardless of the order of completion.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void order() {
+        final IdempotentReplay early = new IdempotentReplay();
+        final RecordingCompletion first = new RecordingCompletion();
+        early.complete(RESPONSE);
+        early.setCompletion(first);
+        Assert.assertSame(RESPONSE, first.getResponses().get(0));
+        
+        final IdempotentReplay late = new IdempotentReplay();
+        final RecordingCompletion second = new RecordingCompletion();
+        late.setCompletion(second);
+        Assert.assertTrue(second.getResponses().isEmpty());
+        late.complete(RESPONSE);
+        Assert.assertSame(RESPONSE, second.getResponses().get(0));
+    }
+    
+}
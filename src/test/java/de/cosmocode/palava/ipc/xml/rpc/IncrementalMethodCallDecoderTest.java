@@ -0,0 +1,171 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.io.IOException;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.Resources;
+
+import de.cosmocode.palava.core.Framework;
+import de.cosmocode.palava.core.Palava;
+
+/**
+ * Tests {@link IncrementalMethodCallDecoder}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class IncrementalMethodCallDecoderTest {
+    
+    private void assertParity(String resource) throws Exception {
+        final Framework framework = Palava.newFramework();
+        framework.start();
+        
+        try {
+            final StreamingMethodCallDecoder streaming = framework.getInstance(StreamingMethodCallDecoder.class);
+            final IncrementalMethodCallDecoder decoder = framework.getInstance(IncrementalMethodCallDecoder.class);
+            
+            final byte[] bytes = read(resource);
+            final XmlRpcCall expected = XmlRpcCall.class.cast(
+                streaming.decode(null, null, ChannelBuffers.wrappedBuffer(bytes)));
+            
+            // the same decoder is reused for consecutive requests of different chunk sizes
+            for (int size = 1; size <= bytes.length; size *= 2) {
+                Object actual = null;
+                for (int offset = 0; offset < bytes.length; offset += size) {
+                    Assert.assertNull(actual);
+                    final int length = Math.min(size, bytes.length - offset);
+                    final HttpChunk chunk = new DefaultHttpChunk(ChannelBuffers.wrappedBuffer(bytes, offset, length));
+                    actual = decoder.decode(null, null, chunk);
+                }
+                Assert.assertNull(actual);
+                actual = decoder.decode(null, null, HttpChunk.LAST_CHUNK);
+                
+                final XmlRpcCall call = XmlRpcCall.class.cast(actual);
+                Assert.assertEquals(expected.getMethodName(), call.getMethodName());
+                Assert.assertEquals(expected.getArguments(), call.getArguments());
+            }
+        } finally {
+            framework.stop();
+        }
+    }
+    
+    /**
+     * Tests that positional params are decoded like the streaming decoder does.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void positional() throws Exception {
+        assertParity("methodCall.xml");
+    }
+    
+    /**
+     * Tests that a single struct param is decoded like the streaming decoder does.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void named() throws Exception {
+        assertParity("methodCallStruct.xml");
+    }
+    
+    /**
+     * Tests that malformed requests are rejected and do not affect the following request.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void malformed() throws Exception {
+        final Framework framework = Palava.newFramework();
+        framework.start();
+        
+        try {
+            final IncrementalMethodCallDecoder decoder = framework.getInstance(IncrementalMethodCallDecoder.class);
+            try {
+                decoder.decode(null, null, chunk("<methodCall><"));
+                decoder.decode(null, null, chunk("/params>"));
+                Assert.fail("Malformed request accepted");
+            } catch (XmlRpcFaultException e) {
+                Assert.assertEquals(XmlRpcFaultException.NOT_WELL_FORMED, e.getFaultCode());
+            }
+            // discarded
+            Assert.assertNull(decoder.decode(null, null, chunk("x")));
+            Assert.assertNull(decoder.decode(null, null, HttpChunk.LAST_CHUNK));
+            
+            final byte[] bytes = read("methodCall.xml");
+            final Object call = decoder.decode(null, null, ChannelBuffers.wrappedBuffer(bytes));
+            Assert.assertTrue(call instanceof XmlRpcCall);
+        } finally {
+            framework.stop();
+        }
+    }
+    
+    /**
+     * Tests that requests exceeding the maximum content length are rejected
+     * and do not affect the following request.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void tooLong() throws Exception {
+        final Framework framework = Palava.newFramework();
+        framework.start();
+        
+        try {
+            final IncrementalMethodCallDecoder decoder = framework.getInstance(IncrementalMethodCallDecoder.class);
+            final byte[] bytes = read("methodCall.xml");
+            decoder.setMaxContentLength(bytes.length);
+            
+            Assert.assertNull(decoder.decode(null, null, chunk("<methodCall>")));
+            try {
+                decoder.decode(null, null, new DefaultHttpChunk(ChannelBuffers.wrappedBuffer(bytes)));
+                Assert.fail("Oversized request accepted");
+            } catch (TooLongFrameException e) {
+                // expected
+            }
+            // discarded
+            Assert.assertNull(decoder.decode(null, null, chunk("</methodCall>")));
+            Assert.assertNull(decoder.decode(null, null, HttpChunk.LAST_CHUNK));
+            
+            final Object call = decoder.decode(null, null, ChannelBuffers.wrappedBuffer(bytes));
+            Assert.assertTrue(call instanceof XmlRpcCall);
+        } finally {
+            framework.stop();
+        }
+    }
+    
+    private static HttpChunk chunk(String content) {
+        return new DefaultHttpChunk(ChannelBuffers.wrappedBuffer(content.getBytes()));
+    }
+    
+    private static byte[] read(String resource) throws IOException {
+        return Resources.toByteArray(Resources.getResource(resource));
+    }
+    
+}
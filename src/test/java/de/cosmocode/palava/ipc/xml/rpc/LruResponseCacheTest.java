@@ -0,0 +1,128 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests {@link LruResponseCache}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class LruResponseCacheTest {
+    
+    private LruResponseCache unit() {
+        final LruResponseCache cache = new LruResponseCache(
+            new MethodResponseWriter(new DateTimeIso8601Codec(TimeZone.getTimeZone("UTC"))));
+        cache.setMethods("lookup, find");
+        cache.setMaxSize(2);
+        return cache;
+    }
+    
+    /**
+     * Tests that keys are independent of the member order but distinguish types.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void keys() {
+        final LruResponseCache cache = unit();
+        Assert.assertTrue(cache.isCached("lookup"));
+        Assert.assertFalse(cache.isCached("update"));
+        
+        final Map<String, Object> first = Maps.newLinkedHashMap();
+        first.put("a", 1);
+        first.put("b", Arrays.asList("x", "y"));
+        final Map<String, Object> second = Maps.newLinkedHashMap();
+        second.put("b", Arrays.asList("x", "y"));
+        second.put("a", 1);
+        
+        Assert.assertEquals(CallKey.of("lookup", first), CallKey.of("lookup", second));
+        Assert.assertFalse(CallKey.of("lookup", first).equals(CallKey.of("find", first)));
+        Assert.assertFalse(CallKey.of("lookup", ImmutableMap.of("a", 1)).equals(
+            CallKey.of("lookup", ImmutableMap.of("a", 1.0))));
+        Assert.assertNull(CallKey.of("lookup", ImmutableMap.of("a", new ByteArrayInputStream(new byte[0]))));
+    }
+    
+    /**
+     * Tests hits, misses, evictions and invalidation.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void lru() {
+        final LruResponseCache cache = unit();
+        final CallKey one = CallKey.of("lookup", ImmutableMap.of("id", 1));
+        final CallKey two = CallKey.of("lookup", ImmutableMap.of("id", 2));
+        final CallKey three = CallKey.of("find", ImmutableMap.of("id", 3));
+        
+        Assert.assertNull(cache.get(one));
+        final ChannelBuffer written = cache.put(one, ImmutableMap.of("name", "one"));
+        final ChannelBuffer cached = cache.get(one);
+        Assert.assertEquals(written, cached);
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        
+        cache.put(two, ImmutableMap.of("name", "two"));
+        // one is the most recently used entry
+        Assert.assertNotNull(cache.get(one));
+        cache.put(three, ImmutableMap.of("name", "three"));
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertNull(cache.get(two));
+        Assert.assertNotNull(cache.get(one));
+        
+        cache.invalidate("lookup");
+        Assert.assertNull(cache.get(one));
+        Assert.assertEquals(1, cache.getSize());
+        cache.invalidate("find", ImmutableMap.of("id", 3));
+        Assert.assertEquals(0, cache.getSize());
+    }
+    
+    /**
+     * Tests that expired responses are dropped.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void expiration() {
+        final LruResponseCache cache = unit();
+        final FakeTicker ticker = new FakeTicker();
+        cache.setTicker(ticker);
+        cache.setTtl(10);
+        cache.setTtlUnit(TimeUnit.MILLISECONDS);
+        final CallKey key = CallKey.of("lookup", ImmutableMap.<String, Object>of());
+        cache.put(key, ImmutableMap.of("name", "expiring"));
+        ticker.advance(9, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(cache.get(key));
+        ticker.advance(1, TimeUnit.MILLISECONDS);
+        Assert.assertNull(cache.get(key));
+        Assert.assertEquals(1, cache.getExpirations());
+    }
+    
+}
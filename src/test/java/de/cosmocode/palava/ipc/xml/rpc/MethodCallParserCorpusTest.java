@@ -0,0 +1,124 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.TimeZone;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import com.google.common.io.Resources;
+
+/**
+ * Tests that the validation of the {@link MethodCallParser} is equivalent
+ * to the bundled {@code xmlrpc.xsd}. Every file in the {@code corpus} directory
+ * is named after its expected outcome, i.e. starts with {@code valid-} or {@code invalid-}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class MethodCallParserCorpusTest {
+
+    private Schema schema;
+    
+    private XMLInputFactory factory;
+    
+    /**
+     * Loads the schema and sets up the input factory.
+     * 
+     * @since 1.1
+     * @throws SAXException if the schema can't be parsed
+     */
+    @Before
+    public void setUp() throws SAXException {
+        final SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        schema = schemaFactory.newSchema(Resources.getResource("xmlrpc.xsd"));
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+    
+    private File[] corpus() throws URISyntaxException {
+        final File directory = new File(Resources.getResource("corpus").toURI());
+        final File[] files = directory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertTrue(files.length > 0);
+        return files;
+    }
+    
+    private boolean validatedBySchema(File file) throws Exception {
+        try {
+            schema.newValidator().validate(new StreamSource(file));
+            return true;
+        } catch (SAXException e) {
+            return false;
+        }
+    }
+    
+    private boolean validatedByParser(File file) throws Exception {
+        final InputStream stream = new FileInputStream(file);
+        try {
+            final XMLStreamReader reader = factory.createXMLStreamReader(stream);
+            try {
+                final DateTimeIso8601Codec codec = new DateTimeIso8601Codec(TimeZone.getDefault());
+                final MethodCallParser parser = new MethodCallParser(true, codec, 1024);
+                while (reader.hasNext()) {
+                    parser.consume(reader.next(), reader);
+                }
+                parser.getCall();
+                return true;
+            } finally {
+                reader.close();
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        } catch (XMLStreamException e) {
+            return false;
+        } finally {
+            stream.close();
+        }
+    }
+    
+    /**
+     * Tests that schema and parser agree on every file of the corpus.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void schemaEquivalence() throws Exception {
+        for (File file : corpus()) {
+            final boolean expected = file.getName().startsWith("valid-");
+            Assert.assertEquals("Schema verdict on " + file.getName(), expected, validatedBySchema(file));
+            Assert.assertEquals("Parser verdict on " + file.getName(), expected, validatedByParser(file));
+        }
+    }
+    
+}
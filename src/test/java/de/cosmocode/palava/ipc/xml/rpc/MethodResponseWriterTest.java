@@ -0,0 +1,190 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.Unmarshaller;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+
+import de.cosmocode.palava.core.Framework;
+import de.cosmocode.palava.core.Palava;
+import de.cosmocode.palava.ipc.xml.rpc.adapters.Adapter;
+import de.cosmocode.palava.ipc.xml.rpc.generated.MethodResponse;
+import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
+
+/**
+ * Tests {@link MethodResponseWriter}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class MethodResponseWriterTest {
+
+    /**
+     * Tests that written responses are valid and decode into the original result.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void response() throws Exception {
+        final Framework framework = Palava.newFramework();
+        framework.start();
+        
+        try {
+            final MethodResponseWriter writer = framework.getInstance(MethodResponseWriter.class);
+            final Unmarshaller unmarshaller = framework.getInstance(Key.get(Unmarshaller.class, XmlRpc.class));
+            final Adapter<Value, Object> adapter = framework.getInstance(
+                Key.get(new TypeLiteral<Adapter<Value, Object>>() { }));
+            
+            final Calendar calendar = Calendar.getInstance();
+            calendar.set(Calendar.MILLISECOND, 0);
+            final Date now = calendar.getTime();
+            final Map<String, Object> result = ImmutableMap.<String, Object>builder()
+                .put("name", "<a & b>")
+                .put("n\u00e4me \u20ac\ud83d\ude00", Boolean.FALSE)
+                .put("numbers", Arrays.asList(1, 2.5d, Boolean.TRUE))
+                .put("now", now)
+                .put("nested", ImmutableMap.of("empty", ImmutableMap.of()))
+                .build();
+            
+            final ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+            writer.writeResponse(result, buffer);
+            
+            final Object unmarshalled = unmarshaller.unmarshal(new ChannelBufferInputStream(buffer));
+            final MethodResponse response = MethodResponse.class.cast(unmarshalled);
+            Assert.assertEquals(result, adapter.decode(response.getParams().getParam().getValue()));
+        } finally {
+            framework.stop();
+        }
+    }
+    
+    /**
+     * Tests that unpaired surrogates are replaced instead of producing invalid utf-8.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void unpairedSurrogates() throws Exception {
+        final Framework framework = Palava.newFramework();
+        framework.start();
+        
+        try {
+            final MethodResponseWriter writer = framework.getInstance(MethodResponseWriter.class);
+            final Unmarshaller unmarshaller = framework.getInstance(Key.get(Unmarshaller.class, XmlRpc.class));
+            final Adapter<Value, Object> adapter = framework.getInstance(
+                Key.get(new TypeLiteral<Adapter<Value, Object>>() { }));
+            
+            final String text = "\ud83d<\ude00\ude00\ud83d\ud83d\ude00\ud83d";
+            final ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+            writer.writeResponse(text, buffer);
+            
+            final Object unmarshalled = unmarshaller.unmarshal(new ChannelBufferInputStream(buffer));
+            final MethodResponse response = MethodResponse.class.cast(unmarshalled);
+            Assert.assertEquals("?<???\ud83d\ude00?", adapter.decode(response.getParams().getParam().getValue()));
+        } finally {
+            framework.stop();
+        }
+    }
+    
+    /**
+     * Tests that written faults are valid.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void fault() throws Exception {
+        final Framework framework = Palava.newFramework();
+        framework.start();
+        
+        try {
+            final MethodResponseWriter writer = framework.getInstance(MethodResponseWriter.class);
+            final Unmarshaller unmarshaller = framework.getInstance(Key.get(Unmarshaller.class, XmlRpc.class));
+            
+            final ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+            writer.writeFault(new IllegalStateException("<fault>"), buffer);
+            
+            final Object unmarshalled = unmarshaller.unmarshal(new ChannelBufferInputStream(buffer));
+            final MethodResponse response = MethodResponse.class.cast(unmarshalled);
+            Assert.assertEquals(2, response.getFault().getValue().getStruct().getMember().size());
+        } finally {
+            framework.stop();
+        }
+    }
+    
+    /**
+     * Tests that flushed parts concatenate to the same bytes as an unflushed response.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void flushed() throws Exception {
+        final Framework framework = Palava.newFramework();
+        framework.start();
+        
+        try {
+            final MethodResponseWriter writer = framework.getInstance(MethodResponseWriter.class);
+            
+            final List<Object> rows = Lists.newArrayList();
+            for (int i = 0; i < 1000; i++) {
+                rows.add(ImmutableMap.of("id", i, "name", "row " + i));
+            }
+            final Map<String, Object> result = ImmutableMap.<String, Object>of("rows", rows);
+            
+            final ChannelBuffer expected = ChannelBuffers.dynamicBuffer();
+            writer.writeResponse(result, expected);
+            
+            final List<ChannelBuffer> parts = Lists.newArrayList();
+            final ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+            writer.writeResponse(result, buffer, new MethodResponseWriter.Flusher() {
+                
+                @Override
+                public void flush(ChannelBuffer b) {
+                    if (b.readableBytes() < 1024) return;
+                    parts.add(b.copy());
+                    b.clear();
+                }
+                
+            });
+            parts.add(buffer);
+            
+            Assert.assertTrue(parts.size() > 1);
+            Assert.assertEquals(expected, ChannelBuffers.wrappedBuffer(parts.toArray(new ChannelBuffer[parts.size()])));
+        } finally {
+            framework.stop();
+        }
+    }
+    
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A {@link CallCompletion} which records all responses it gets.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+final class RecordingCompletion implements CallCompletion {
+    
+    private final List<Object> responses = Lists.newArrayList();
+    
+    @Override
+    public void complete(Object response) {
+        responses.add(response);
+    }
+    
+    /**
+     * Returns the recorded responses in order of completion.
+     * 
+     * @return a live view of the responses
+     */
+    public List<Object> getResponses() {
+        return responses;
+    }
+    
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.Channel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link ResponseSequencer}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class ResponseSequencerTest {
+    
+    private static final int REQUESTS = 1000;
+    
+    private Channel recording(final List<Object> written) {
+        return recording(written, new CountDownLatch(0));
+    }
+    
+    private Channel recording(final List<Object> written, final CountDownLatch released) {
+        return Channel.class.cast(Proxy.newProxyInstance(getClass().getClassLoader(), 
+            new Class<?>[] {Channel.class}, new InvocationHandler() {
+            
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("write".equals(method.getName())) {
+                        released.await();
+                        written.add(args[0]);
+                        return null;
+                    } else if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    } else if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    } else if ("toString".equals(method.getName())) {
+                        return "channel";
+                    } else {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+            
+            }));
+    }
+    
+    /**
+     * Tests that responses completed out of order are held back.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void outOfOrder() {
+        final List<Object> written = Lists.newArrayList();
+        final ResponseSequencer sequencer = new ResponseSequencer(recording(written));
+        final long first = sequencer.register();
+        final long second = sequencer.register();
+        final long third = sequencer.register();
+        
+        sequencer.complete(third, "third");
+        sequencer.complete(second, "second");
+        Assert.assertTrue(written.isEmpty());
+        Assert.assertEquals(3, sequencer.pending());
+        
+        sequencer.complete(first, "first");
+        Assert.assertEquals(Lists.newArrayList("first", "second", "third"), written);
+        Assert.assertEquals(0, sequencer.pending());
+    }
+    
+    /**
+     * Tests that unknown and duplicate completions are rejected.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void illegal() {
+        final List<Object> written = Lists.newArrayList();
+        final ResponseSequencer sequencer = new ResponseSequencer(recording(written));
+        try {
+            sequencer.complete(0, "unknown");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        final long sequence = sequencer.register();
+        sequencer.complete(sequence, "response");
+        try {
+            sequencer.complete(sequence, "duplicate");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertEquals(Collections.<Object>singletonList("response"), written);
+    }
+    
+    /**
+     * Tests that responses completed concurrently are written in request order.
+     * 
+     * @since 1.1
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void concurrent() throws InterruptedException {
+        final List<Object> written = Collections.synchronizedList(Lists.<Object>newArrayList());
+        final ResponseSequencer sequencer = new ResponseSequencer(recording(written));
+        final ExecutorService service = Executors.newFixedThreadPool(8);
+        final CountDownLatch latch = new CountDownLatch(REQUESTS);
+        
+        try {
+            for (int i = 0; i < REQUESTS; i++) {
+                final long sequence = sequencer.register();
+                service.execute(new Runnable() {
+                    
+                    @Override
+                    public void run() {
+                        sequencer.complete(sequence, Long.valueOf(sequence));
+                        latch.countDown();
+                    }
+                    
+                });
+            }
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            service.shutdownNow();
+        }
+        
+        Assert.assertEquals(REQUESTS, written.size());
+        for (int i = 0; i < REQUESTS; i++) {
+            Assert.assertEquals(Long.valueOf(i), written.get(i));
+        }
+    }
+    
+    /**
+     * Tests that a blocked write does not block completions of other requests.
+     * 
+     * @since 1.1
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void blockedWrite() throws InterruptedException {
+        final List<Object> written = Collections.synchronizedList(Lists.<Object>newArrayList());
+        final CountDownLatch released = new CountDownLatch(1);
+        final ResponseSequencer sequencer = new ResponseSequencer(recording(written, released));
+        final long first = sequencer.register();
+        final long second = sequencer.register();
+        
+        final Thread writer = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                sequencer.complete(first, "first");
+            }
+            
+        });
+        writer.start();
+        while (sequencer.pending() == 2) {
+            Thread.sleep(1);
+        }
+        
+        // returns immediately, the blocked writer picks the response up
+        sequencer.complete(second, "second");
+        Assert.assertTrue(written.isEmpty());
+        
+        released.countDown();
+        writer.join(10000);
+        Assert.assertEquals(Lists.newArrayList("first", "second"), written);
+    }
+    
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+import de.cosmocode.palava.ipc.IpcConnection;
+import de.cosmocode.palava.ipc.IpcSession;
+
+/**
+ * Tests {@link SessionBoundConnection}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class SessionBoundConnectionTest {
+    
+    private static <T> T fake(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+    
+    private static IpcSession session() {
+        return fake(IpcSession.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("toString".equals(method.getName())) {
+                    return "session";
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }
+            
+        });
+    }
+    
+    /**
+     * Tests that bound connections keep their session while the shared connection
+     * is attached to the session of a pipelined request.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void bind() {
+        final IpcSession first = session();
+        final IpcSession second = session();
+        final AtomicReference<IpcSession> current = new AtomicReference<IpcSession>(first);
+        final IpcConnection shared = fake(IpcConnection.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getSession".equals(method.getName())) {
+                    return current.get();
+                } else if ("toString".equals(method.getName())) {
+                    return "shared";
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }
+            
+        });
+        
+        final IpcConnection bound = SessionBoundConnection.bind(shared);
+        current.set(second);
+        Assert.assertSame(first, bound.getSession());
+        Assert.assertSame(second, SessionBoundConnection.bind(shared).getSession());
+        Assert.assertEquals("shared bound to session", bound.toString());
+    }
+    
+    /**
+     * Tests that bound connections are only equal to themselves and never reach
+     * the shared connection for {@link Object} methods.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void identity() {
+        final IpcConnection shared = fake(IpcConnection.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getSession".equals(method.getName())) {
+                    return null;
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }
+            
+        });
+        
+        final IpcConnection bound = SessionBoundConnection.bind(shared);
+        final IpcConnection other = SessionBoundConnection.bind(shared);
+        Assert.assertEquals(bound, bound);
+        Assert.assertFalse(bound.equals(other));
+        Assert.assertFalse(bound.equals(shared));
+        Assert.assertEquals(System.identityHashCode(bound), bound.hashCode());
+        Assert.assertEquals(Collections.singleton(bound), Sets.newHashSet(bound, bound));
+    }
+    
+}
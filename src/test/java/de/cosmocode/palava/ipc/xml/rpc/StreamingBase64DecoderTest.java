@@ -0,0 +1,109 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Tests {@link StreamingBase64Decoder}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class StreamingBase64DecoderTest {
+    
+    private static final int THRESHOLD = 4096;
+    
+    private byte[] decode(String text, boolean validate, Random random) throws IOException {
+        final StreamingBase64Decoder decoder = new StreamingBase64Decoder(THRESHOLD, validate);
+        final char[] chars = text.toCharArray();
+        int start = 0;
+        while (start < chars.length) {
+            // feed arbitrary chunks, like the xml parser does
+            final int length = Math.min(chars.length - start, 1 + random.nextInt(1000));
+            decoder.decode(chars, start, length);
+            start += length;
+        }
+        final InputStream stream = decoder.finish();
+        try {
+            return ByteStreams.toByteArray(stream);
+        } finally {
+            stream.close();
+        }
+    }
+    
+    /**
+     * Tests that chunked decoding in memory and on disk produces the original bytes.
+     * 
+     * @since 1.1
+     * @throws IOException should not happen
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        final Random random = new Random(0);
+        for (int size : new int[] {0, 1, 2, 3, 4, 100, THRESHOLD - 1, THRESHOLD + 1, 10 * THRESHOLD + 2}) {
+            final byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            final String encoded = DatatypeConverter.printBase64Binary(bytes).replaceAll("(.{76})", "$1\n");
+            Assert.assertArrayEquals(bytes, decode(encoded, true, random));
+            Assert.assertArrayEquals(bytes, decode(encoded, false, random));
+        }
+    }
+    
+    /**
+     * Tests that invalid content is rejected when validating.
+     * 
+     * @since 1.1
+     * @throws IOException should not happen
+     */
+    @Test
+    public void invalid() throws IOException {
+        final Random random = new Random(0);
+        for (String text : new String[] {"QQ", "QQ=", "QQ===", "QR==", "QQ==QQ==", "Q*Q=", "QUJD!"}) {
+            Assert.assertFalse(text, XmlRpcGrammar.isBase64(text));
+            try {
+                decode(text, true, random);
+                Assert.fail(text);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+    
+    /**
+     * Tests that invalid characters are skipped when not validating.
+     * 
+     * @since 1.1
+     * @throws IOException should not happen
+     */
+    @Test
+    public void lenient() throws IOException {
+        final Random random = new Random(0);
+        Assert.assertArrayEquals(new byte[] {'A', 'B', 'C'}, decode("QU*JD", false, random));
+        Assert.assertArrayEquals(new byte[] {'A'}, decode("QQ==", false, random));
+    }
+    
+}
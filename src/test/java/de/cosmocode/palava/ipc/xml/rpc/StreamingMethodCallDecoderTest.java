@@ -0,0 +1,121 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.io.IOException;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.Resources;
+
+import de.cosmocode.palava.core.Framework;
+import de.cosmocode.palava.core.Palava;
+
+/**
+ * Tests {@link StreamingMethodCallDecoder}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class StreamingMethodCallDecoderTest {
+    
+    private void assertParity(String resource) throws Exception {
+        final Framework framework = Palava.newFramework();
+        framework.start();
+        
+        try {
+            final JaxbDecoder jaxbDecoder = framework.getInstance(JaxbDecoder.class);
+            final MethodCallDecoder callDecoder = framework.getInstance(MethodCallDecoder.class);
+            final StreamingMethodCallDecoder decoder = framework.getInstance(StreamingMethodCallDecoder.class);
+            
+            final byte[] bytes = read(resource);
+            final Object unmarshalled = jaxbDecoder.decode(null, null, ChannelBuffers.wrappedBuffer(bytes));
+            final XmlRpcCall expected = XmlRpcCall.class.cast(callDecoder.decode(null, null, unmarshalled));
+            final XmlRpcCall actual = XmlRpcCall.class.cast(
+                decoder.decode(null, null, ChannelBuffers.wrappedBuffer(bytes)));
+            
+            Assert.assertEquals(expected.getMethodName(), actual.getMethodName());
+            Assert.assertEquals(expected.getArguments(), actual.getArguments());
+        } finally {
+            framework.stop();
+        }
+    }
+    
+    private byte[] read(String resource) throws IOException {
+        return Resources.toByteArray(Resources.getResource(resource));
+    }
+    
+    /**
+     * Tests that positional params are decoded like the jaxb decoders do.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void positional() throws Exception {
+        assertParity("methodCall.xml");
+    }
+    
+    /**
+     * Tests that a single struct param is decoded like the jaxb decoders do.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void named() throws Exception {
+        assertParity("methodCallStruct.xml");
+    }
+    
+    /**
+     * Tests that requests which are not well formed are rejected with the same fault code
+     * as the jaxb decoder uses.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void malformed() throws Exception {
+        final Framework framework = Palava.newFramework();
+        framework.start();
+        
+        try {
+            final JaxbDecoder jaxbDecoder = framework.getInstance(JaxbDecoder.class);
+            final StreamingMethodCallDecoder decoder = framework.getInstance(StreamingMethodCallDecoder.class);
+            final byte[] bytes = "<methodCall><methodName>echo</methodCall>".getBytes();
+            
+            try {
+                jaxbDecoder.decode(null, null, ChannelBuffers.wrappedBuffer(bytes));
+                Assert.fail("Malformed request accepted");
+            } catch (XmlRpcFaultException e) {
+                Assert.assertEquals(XmlRpcFaultException.NOT_WELL_FORMED, e.getFaultCode());
+            }
+            
+            try {
+                decoder.decode(null, null, ChannelBuffers.wrappedBuffer(bytes));
+                Assert.fail("Malformed request accepted");
+            } catch (XmlRpcFaultException e) {
+                Assert.assertEquals(XmlRpcFaultException.NOT_WELL_FORMED, e.getFaultCode());
+            }
+        } finally {
+            framework.stop();
+        }
+    }
+    
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link ValidationPolicy}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class ValidationPolicyTest {
+
+    /**
+     * Tests that nothing is validated by default.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void defaults() {
+        final ValidationPolicy policy = new ValidationPolicy();
+        Assert.assertFalse(policy.isValidateAll());
+        Assert.assertFalse(policy.sampleRequest());
+        Assert.assertFalse(policy.sampleResponse());
+        Assert.assertFalse(policy.isValidated("test.echo"));
+    }
+    
+    /**
+     * Tests that the validate flag forces validation of every request.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void validateAll() {
+        final ValidationPolicy policy = new ValidationPolicy();
+        policy.setValidate(true);
+        Assert.assertTrue(policy.isValidateAll());
+        Assert.assertTrue(policy.sampleRequest());
+    }
+    
+    /**
+     * Tests the boundaries of the sample rates.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void sampleRates() {
+        final ValidationPolicy policy = new ValidationPolicy();
+        policy.setSampleRate(1);
+        policy.setResponseSampleRate(1);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(policy.sampleRequest());
+            Assert.assertTrue(policy.sampleResponse());
+        }
+        policy.setSampleRate(0);
+        policy.setResponseSampleRate(0);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertFalse(policy.sampleRequest());
+            Assert.assertFalse(policy.sampleResponse());
+        }
+    }
+    
+    /**
+     * Tests that invalid sample rates are rejected.
+     * 
+     * @since 1.1
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSampleRate() {
+        new ValidationPolicy().setSampleRate(1.5);
+    }
+    
+    /**
+     * Tests parsing of the validated method list.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void methods() {
+        final ValidationPolicy policy = new ValidationPolicy();
+        policy.setMethods(" test.echo, system.listMethods ,,");
+        Assert.assertTrue(policy.isValidated("test.echo"));
+        Assert.assertTrue(policy.isValidated("system.listMethods"));
+        Assert.assertFalse(policy.isValidated("test.other"));
+        Assert.assertFalse(policy.isValidated(""));
+    }
+    
+    /**
+     * Tests the statistics counters.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void statistics() {
+        final ValidationPolicy policy = new ValidationPolicy();
+        policy.requestValidated(true);
+        policy.requestValidated(false);
+        policy.responseValidated(false);
+        policy.responseSkipped();
+        Assert.assertEquals(2, policy.getValidatedRequests());
+        Assert.assertEquals(1, policy.getInvalidRequests());
+        Assert.assertEquals(1, policy.getValidatedResponses());
+        Assert.assertEquals(1, policy.getInvalidResponses());
+        Assert.assertEquals(1, policy.getSkippedResponses());
+    }
+    
+}
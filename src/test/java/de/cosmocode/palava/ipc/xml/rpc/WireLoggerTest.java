@@ -0,0 +1,101 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.nio.charset.Charset;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link WireLogger}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class WireLoggerTest {
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private static final int SAMPLES = 10000;
+    
+    /**
+     * Tests that the sample rate is honoured.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void sampling() {
+        final WireLogger logger = new WireLogger();
+        logger.setSampleRate(0);
+        Assert.assertFalse(logger.sampled());
+        logger.setSampleRate(1);
+        Assert.assertTrue(logger.sampled());
+        
+        logger.setSampleRate(0.25);
+        int sampled = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            if (logger.sampled()) sampled++;
+        }
+        Assert.assertTrue(String.valueOf(sampled), sampled > SAMPLES / 5 && sampled < SAMPLES * 3 / 10);
+    }
+    
+    /**
+     * Tests that captures are truncated without modifying the buffer.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void truncation() {
+        final WireLogger logger = new WireLogger();
+        logger.setMaxSize(10);
+        final ChannelBuffer content = ChannelBuffers.copiedBuffer("<methodCall></methodCall>", UTF_8);
+        Assert.assertEquals("<methodCal... (15 more bytes)", logger.capture(content).toString());
+        Assert.assertEquals(25, content.readableBytes());
+    }
+    
+    /**
+     * Tests that complete captures are pretty printed.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void prettyPrint() {
+        final WireLogger logger = new WireLogger();
+        final ChannelBuffer content = ChannelBuffers.copiedBuffer(
+            "<methodCall><methodName>echo</methodName></methodCall>", UTF_8);
+        final String printed = logger.capture(content).toString();
+        Assert.assertTrue(printed, printed.contains("\n  <methodName>echo</methodName>"));
+    }
+    
+    /**
+     * Tests that doctypes, and external entities in particular, are never resolved.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void externalEntities() {
+        final WireLogger logger = new WireLogger();
+        final String raw = "<?xml version=\"1.0\"?><!DOCTYPE methodCall [" +
+            "<!ENTITY secret SYSTEM \"file:///etc/passwd\">]><methodCall>&secret;</methodCall>";
+        final ChannelBuffer content = ChannelBuffers.copiedBuffer(raw, UTF_8);
+        Assert.assertEquals(raw, logger.capture(content).toString());
+    }
+    
+}
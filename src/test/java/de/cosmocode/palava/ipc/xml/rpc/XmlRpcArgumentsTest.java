@@ -0,0 +1,159 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+
+/**
+ * Tests {@link XmlRpcArguments}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class XmlRpcArgumentsTest {
+
+    /**
+     * Tests key resolution of positional params.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void positional() {
+        final List<Object> params = Arrays.<Object>asList("first", 2, null);
+        final IpcArguments arguments = new XmlRpcArguments(params);
+        Assert.assertEquals("first", arguments.get("0"));
+        Assert.assertEquals(2, arguments.get("1"));
+        Assert.assertNull(arguments.get("2"));
+        Assert.assertTrue(arguments.containsKey("2"));
+        Assert.assertFalse(arguments.containsKey("3"));
+        Assert.assertFalse(arguments.containsKey("01"));
+        Assert.assertFalse(arguments.containsKey("-1"));
+        Assert.assertFalse(arguments.containsKey("99999999999"));
+        Assert.assertEquals(3, arguments.size());
+    }
+    
+    /**
+     * Tests key resolution of named params.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void named() {
+        final IpcArguments arguments = new XmlRpcArguments(ImmutableMap.of("name", "value", "count", 42));
+        Assert.assertEquals("value", arguments.get("name"));
+        Assert.assertEquals(42, arguments.get("count"));
+        Assert.assertFalse(arguments.containsKey("0"));
+        Assert.assertEquals(2, arguments.size());
+    }
+    
+    /**
+     * Tests that modifications shadow the backing params.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void put() {
+        final IpcArguments arguments = new XmlRpcArguments(Arrays.<Object>asList("first", "second"));
+        Assert.assertEquals("first", arguments.put("0", "replaced"));
+        Assert.assertNull(arguments.put("extra", "added"));
+        Assert.assertEquals("replaced", arguments.get("0"));
+        Assert.assertEquals("added", arguments.get("extra"));
+        Assert.assertEquals(3, arguments.size());
+        
+        final Map<String, Object> expected = Maps.newHashMap();
+        expected.put("0", "replaced");
+        expected.put("1", "second");
+        expected.put("extra", "added");
+        Assert.assertEquals(expected, Maps.newHashMap(arguments));
+    }
+    
+    /**
+     * Tests that removed params are hidden by the overlay.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void remove() {
+        final IpcArguments arguments = new XmlRpcArguments(ImmutableMap.of("name", "value", "count", 42));
+        arguments.put("extra", "added");
+        Assert.assertEquals("value", arguments.remove("name"));
+        Assert.assertEquals("added", arguments.remove("extra"));
+        Assert.assertNull(arguments.remove("missing"));
+        Assert.assertNull(arguments.get("name"));
+        Assert.assertFalse(arguments.containsKey("name"));
+        Assert.assertFalse(arguments.containsKey("extra"));
+        Assert.assertEquals(1, arguments.size());
+        Assert.assertEquals(ImmutableMap.of("count", 42), Maps.newHashMap(arguments));
+        
+        Assert.assertNull(arguments.put("name", "again"));
+        Assert.assertEquals("again", arguments.get("name"));
+        Assert.assertEquals(2, arguments.size());
+    }
+    
+    /**
+     * Tests removal using the key set and entry set iterators.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void removeViews() {
+        final IpcArguments arguments = new XmlRpcArguments(Arrays.<Object>asList("first", "second", "third"));
+        arguments.put("extra", "added");
+        Assert.assertTrue(arguments.keySet().remove("1"));
+        Assert.assertFalse(arguments.containsKey("1"));
+        
+        final Iterator<Map.Entry<String, Object>> iterator = arguments.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Object> entry = iterator.next();
+            if ("extra".equals(entry.getKey()) || "0".equals(entry.getKey())) {
+                iterator.remove();
+            }
+        }
+        Assert.assertEquals(ImmutableMap.of("2", "third"), Maps.newHashMap(arguments));
+        Assert.assertEquals(1, arguments.size());
+    }
+    
+    /**
+     * Tests that cleared arguments hide all params.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void clear() {
+        final IpcArguments arguments = new XmlRpcArguments(Arrays.<Object>asList("first", "second"));
+        arguments.put("extra", "added");
+        arguments.clear();
+        Assert.assertTrue(arguments.isEmpty());
+        Assert.assertFalse(arguments.containsKey("0"));
+        Assert.assertNull(arguments.get("0"));
+        
+        arguments.put("0", "new");
+        Assert.assertEquals(ImmutableMap.of("0", "new"), Maps.newHashMap(arguments));
+    }
+    
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ExecutionMode}s provided by {@link XmlRpcExecutorProvider}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class XmlRpcExecutorProviderTest {
+
+    private Thread runOn(Executor executor) throws InterruptedException {
+        final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            
+            @Override
+            public void run() {
+                thread.set(Thread.currentThread());
+                latch.countDown();
+            }
+            
+        });
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        return thread.get();
+    }
+    
+    private static boolean supportsVirtualThreads() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Tests that inline execution, the default, runs calls on the calling thread.
+     * 
+     * @since 1.1
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void inline() throws InterruptedException {
+        final XmlRpcExecutorProvider provider = new XmlRpcExecutorProvider();
+        Assert.assertSame(Thread.currentThread(), runOn(provider.get()));
+        provider.setExecution(ExecutionMode.INLINE);
+        Assert.assertSame(Thread.currentThread(), runOn(provider.get()));
+    }
+    
+    /**
+     * Tests that executor mode uses the injected service.
+     * 
+     * @since 1.1
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void executor() throws InterruptedException {
+        final ExecutorService service = Executors.newSingleThreadExecutor();
+        try {
+            final XmlRpcExecutorProvider provider = new XmlRpcExecutorProvider();
+            provider.setExecution(ExecutionMode.EXECUTOR);
+            provider.setService(service);
+            final Executor executor = provider.get();
+            Assert.assertSame(service, executor);
+            final Thread thread = runOn(executor);
+            Assert.assertNotSame(Thread.currentThread(), thread);
+            Assert.assertSame(thread, runOn(executor));
+        } finally {
+            service.shutdownNow();
+        }
+    }
+    
+    /**
+     * Tests that executor mode fails without a service.
+     * 
+     * @since 1.1
+     */
+    @Test(expected = IllegalStateException.class)
+    public void executorWithoutService() {
+        final XmlRpcExecutorProvider provider = new XmlRpcExecutorProvider();
+        provider.setExecution(ExecutionMode.EXECUTOR);
+        provider.get();
+    }
+    
+    /**
+     * Tests that virtual mode starts a new named virtual thread per call,
+     * or fails cleanly if the runtime does not support virtual threads.
+     * 
+     * @since 1.1
+     * @throws Exception should not happen
+     */
+    @Test
+    public void virtual() throws Exception {
+        final XmlRpcExecutorProvider provider = new XmlRpcExecutorProvider();
+        provider.setExecution(ExecutionMode.VIRTUAL);
+        
+        if (!supportsVirtualThreads()) {
+            try {
+                provider.get();
+                Assert.fail("Virtual threads are not supported by this runtime");
+            } catch (IllegalStateException e) {
+                return;
+            }
+        }
+        
+        final ExecutorService executor = ExecutorService.class.cast(provider.get());
+        try {
+            final Thread first = runOn(executor);
+            final Thread second = runOn(executor);
+            Assert.assertNotSame(first, second);
+            Assert.assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(first));
+            Assert.assertTrue(first.getName(), first.getName().startsWith("xmlrpc-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+}
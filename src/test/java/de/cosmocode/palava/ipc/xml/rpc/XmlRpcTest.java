@@ -16,10 +16,17 @@
 
 package de.cosmocode.palava.ipc.xml.rpc;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.CookieHandler;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
 import java.net.MalformedURLException;
+import java.net.Socket;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -38,6 +45,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import de.cosmocode.junit.UnitProvider;
@@ -45,12 +53,12 @@ import de.cosmocode.palava.core.Framework;
 import de.cosmocode.palava.core.Palava;
 
 /**
- * Tests xml-rpc.
+ * Tests xml-rpc using the default {@link ExecutionMode}.
  *
  * @since 1.0
  * @author Willi Schoenborn
  */
-public final class XmlRpcTest implements UnitProvider<XmlRpcClient> {
+public class XmlRpcTest implements UnitProvider<XmlRpcClient> {
 
     private Framework framework;
     
@@ -69,12 +77,22 @@ public final class XmlRpcTest implements UnitProvider<XmlRpcClient> {
         return client;
     }
     
+    /**
+     * Creates the framework under test, configured by the application.properties.
+     * 
+     * @since 1.1
+     * @return a new framework
+     */
+    protected Framework newFramework() {
+        return Palava.newFramework();
+    }
+    
     /**
      * Starts the framework prior each test.
      */
     @Before
     public void start() {
-        framework = Palava.newFramework();
+        framework = newFramework();
         framework.start();
     }
     
@@ -113,6 +131,127 @@ public final class XmlRpcTest implements UnitProvider<XmlRpcClient> {
         Assert.assertEquals(map, returnedMap);
     }
     
+    /**
+     * Tests system.multicall with successful, forbidden and positional calls.
+     * 
+     * @since 1.1
+     * @throws XmlRpcException should not happen
+     */
+    @Test
+    public void multicall() throws XmlRpcException {
+        final Map<?, ?> map = ImmutableMap.of("name", getClass().getName());
+        final List<?> calls = Arrays.asList(
+            ImmutableMap.of("methodName", Echo.class.getName(), "params", Collections.singletonList(map)),
+            ImmutableMap.of("methodName", XmlRpc.MULTICALL, "params", Collections.emptyList()),
+            ImmutableMap.of("methodName", Echo.class.getName(), "params", Arrays.asList("a", "b"))
+        );
+        final Object[] responses = (Object[]) unit().execute(XmlRpc.MULTICALL, Collections.singletonList(calls));
+        Assert.assertEquals(3, responses.length);
+        Assert.assertEquals(map, ((Object[]) responses[0])[0]);
+        final Map<?, ?> fault = (Map<?, ?>) responses[1];
+        Assert.assertEquals(XmlRpcFaultException.INVALID_PARAMS, fault.get(XmlRpc.FAULT_CODE));
+        Assert.assertEquals(ImmutableMap.of("0", "a", "1", "b"), ((Object[]) responses[2])[0]);
+    }
+    
+    /**
+     * Tests that parallel sub-calls of a multicall are answered in request order.
+     * 
+     * @since 1.1
+     * @throws XmlRpcException should not happen
+     */
+    @Test
+    public void parallelMulticall() throws XmlRpcException {
+        final List<Object> calls = Lists.newArrayList();
+        for (int i = 0; i < 50; i++) {
+            calls.add(ImmutableMap.of("methodName", Echo.class.getName(), "params", Arrays.asList(i)));
+        }
+        final Object[] responses = (Object[]) unit().execute(XmlRpc.MULTICALL, Collections.singletonList(calls));
+        Assert.assertEquals(calls.size(), responses.length);
+        for (int i = 0; i < responses.length; i++) {
+            Assert.assertEquals(ImmutableMap.of("0", i), ((Object[]) responses[i])[0]);
+        }
+    }
+    
+    /**
+     * Tests that parallel sub-calls of a multicall run concurrently, bounded
+     * by the configured parallelism of 2.
+     * 
+     * @since 1.1
+     * @throws XmlRpcException should not happen
+     */
+    @Test
+    public void parallelMulticallBound() throws XmlRpcException {
+        ConcurrencyProbe.reset();
+        final List<Object> calls = Lists.newArrayList();
+        for (int i = 0; i < 8; i++) {
+            calls.add(ImmutableMap.of("methodName", ConcurrencyProbe.class.getName(), "params", Arrays.asList(i)));
+        }
+        final Object[] responses = (Object[]) unit().execute(XmlRpc.MULTICALL, Collections.singletonList(calls));
+        Assert.assertEquals(calls.size(), responses.length);
+        for (int i = 0; i < responses.length; i++) {
+            Assert.assertEquals(ImmutableMap.of("0", i), ((Object[]) responses[i])[0]);
+        }
+        Assert.assertEquals(2, ConcurrencyProbe.getMaximum());
+    }
+    
+    /**
+     * Tests that a parallel sub-call failing with an {@link Error} is answered
+     * with a fault while the other sub-calls succeed.
+     * 
+     * @since 1.1
+     * @throws XmlRpcException should not happen
+     */
+    @Test
+    public void parallelMulticallError() throws XmlRpcException {
+        final List<?> calls = Arrays.asList(
+            ImmutableMap.of("methodName", ConcurrencyProbe.class.getName(), "params", Arrays.asList(false)),
+            ImmutableMap.of("methodName", ConcurrencyProbe.class.getName(), "params", Arrays.asList(true)),
+            ImmutableMap.of("methodName", ConcurrencyProbe.class.getName(), "params", Arrays.asList(false))
+        );
+        final Object[] responses = (Object[]) unit().execute(XmlRpc.MULTICALL, Collections.singletonList(calls));
+        Assert.assertEquals(3, responses.length);
+        Assert.assertEquals(ImmutableMap.of("0", false), ((Object[]) responses[0])[0]);
+        Assert.assertTrue(((Map<?, ?>) responses[1]).containsKey(XmlRpc.FAULT_CODE));
+        Assert.assertEquals(ImmutableMap.of("0", false), ((Object[]) responses[2])[0]);
+    }
+    
+    /**
+     * Tests that a chunked request exceeding the maximum content length of the
+     * chunk aggregator is answered with 413 Request Entity Too Large.
+     * 
+     * @since 1.1
+     * @throws IOException should not happen
+     */
+    @Test
+    public void tooLarge() throws IOException {
+        final Socket socket = new Socket("localhost", 8081);
+        try {
+            final OutputStream output = socket.getOutputStream();
+            output.write(ascii("POST / HTTP/1.1\r\nHost: localhost\r\nContent-Type: text/xml\r\n" + 
+                "Transfer-Encoding: chunked\r\n\r\n"));
+            // 16 chunks reach the default maximum of 1 MiB, the last byte exceeds it
+            final byte[] chunk = new byte[64 * 1024];
+            Arrays.fill(chunk, (byte) ' ');
+            for (int i = 0; i < 16; i++) {
+                output.write(ascii(Integer.toHexString(chunk.length) + "\r\n"));
+                output.write(chunk);
+                output.write(ascii("\r\n"));
+            }
+            output.write(ascii("1\r\n "));
+            output.flush();
+            
+            final InputStream input = socket.getInputStream();
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(input, "US-ASCII"));
+            Assert.assertEquals("HTTP/1.1 413 Request Entity Too Large", reader.readLine());
+        } finally {
+            socket.close();
+        }
+    }
+    
+    private static byte[] ascii(String text) throws UnsupportedEncodingException {
+        return text.getBytes("US-ASCII");
+    }
+    
     /**
      * Tests that the session stays the same.
      * 
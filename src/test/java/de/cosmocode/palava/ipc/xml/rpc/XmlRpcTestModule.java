@@ -64,6 +64,7 @@ public final class XmlRpcTestModule implements Module {
         binder.install(new BackgroundSchedulerModule());
         binder.install(new ExecutorModule(Boss.class, Boss.NAME));
         binder.install(new ExecutorModule(Worker.class, Worker.NAME));
+        binder.install(new ExecutorModule(XmlRpc.class, XmlRpc.EXECUTOR));
         
         binder.install(new StoreIpcSessionModule());
         binder.install(new MemoryStoreModule());
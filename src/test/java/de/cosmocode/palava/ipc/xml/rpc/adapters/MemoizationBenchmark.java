@@ -0,0 +1,133 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc.adapters;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+
+import de.cosmocode.palava.core.Framework;
+import de.cosmocode.palava.core.Palava;
+import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
+
+/**
+ * Benchmarks repeated access to decoded deep structures, which are
+ * memoized by {@link ListAdapter}, {@link MapAdapter} and {@link EntryAdapter}.
+ * Run using the {@code benchmark} profile.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class MemoizationBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MemoizationBenchmark.class);
+    
+    private static final int DEPTH = 5;
+    
+    private static final int WIDTH = 6;
+    
+    private static final int ITERATIONS = 10;
+    
+    private Object create(int depth) {
+        if (depth == 0) return "leaf";
+        if (depth % 2 == 0) {
+            final List<Object> list = Lists.newArrayList();
+            for (int i = 0; i < WIDTH; i++) {
+                list.add(create(depth - 1));
+            }
+            return list;
+        } else {
+            final Map<String, Object> map = Maps.newLinkedHashMap();
+            for (int i = 0; i < WIDTH; i++) {
+                map.put("key" + i, create(depth - 1));
+            }
+            return map;
+        }
+    }
+    
+    private int traverse(Object object) {
+        if (object instanceof List<?>) {
+            int count = 0;
+            for (Object element : (List<?>) object) {
+                count += traverse(element);
+            }
+            return count;
+        } else if (object instanceof Map<?, ?>) {
+            int count = 0;
+            for (Object element : ((Map<?, ?>) object).values()) {
+                count += traverse(element);
+            }
+            return count;
+        } else {
+            return 1;
+        }
+    }
+    
+    /**
+     * Traverses a decoded structure multiple times and compares the cost
+     * of the first traversal with the cost of the following ones.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void repeatedAccess() {
+        final Framework framework = Palava.newFramework();
+        framework.start();
+        
+        try {
+            final Adapter<Value, Object> adapter = framework.getInstance(
+                Key.get(new TypeLiteral<Adapter<Value, Object>>() { }));
+            final Object expected = create(DEPTH);
+            final Object decoded = adapter.decode(adapter.encode(expected));
+            final int leaves = (int) Math.pow(WIDTH, DEPTH);
+            
+            long start = System.nanoTime();
+            Assert.assertEquals(leaves, traverse(decoded));
+            final long first = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                Assert.assertEquals(leaves, traverse(decoded));
+            }
+            final long repeated = (System.nanoTime() - start) / ITERATIONS;
+            
+            LOG.info("Traversing {} leaves: first {}us, repeated {}us", new Object[] {
+                leaves, first / 1000, repeated / 1000
+            });
+            
+            Assert.assertEquals(expected, decoded);
+            
+            // memoized elements are identical on every access
+            final Map<?, ?> root = Map.class.cast(decoded);
+            Assert.assertSame(root.values().iterator().next(), root.values().iterator().next());
+            final List<?> list = List.class.cast(root.values().iterator().next());
+            Assert.assertSame(list.get(0), list.get(0));
+        } finally {
+            framework.stop();
+        }
+    }
+    
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc.adapters;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import de.cosmocode.palava.ipc.xml.rpc.generated.ObjectFactory;
+import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
+
+/**
+ * Tests the encoder dispatch of {@link ObjectAdapter}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class ObjectAdapterTest {
+
+    private final ObjectFactory factory = new ObjectFactory();
+    
+    /**
+     * An adapter which records its inputs and encodes everything into the same value.
+     *
+     * @param <T> the decoded type
+     */
+    private final class Fake<T> implements Adapter<Value, T> {
+        
+        private final Value value = factory.createValue();
+        
+        private final List<T> encoded = Lists.newArrayList();
+        
+        @Override
+        public T decode(Value input) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public Value encode(T input) {
+            encoded.add(input);
+            return value;
+        }
+        
+    }
+    
+    private final Fake<Boolean> booleans = new Fake<Boolean>();
+    private final Fake<Date> dates = new Fake<Date>();
+    private final Fake<Double> doubles = new Fake<Double>();
+    private final Fake<InputStream> streams = new Fake<InputStream>();
+    private final Fake<Integer> integers = new Fake<Integer>();
+    private final Fake<List<Object>> lists = new Fake<List<Object>>();
+    private final Fake<Map<String, Object>> maps = new Fake<Map<String, Object>>();
+    private final Fake<Number> numbers = new Fake<Number>();
+    private final Fake<String> strings = new Fake<String>();
+    
+    private ObjectAdapter unit() {
+        return new ObjectAdapter(factory, booleans, dates, doubles, streams, 
+            integers, lists, maps, numbers, strings);
+    }
+    
+    /**
+     * Tests that sub classes resolve to the most specific adapter.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void subclasses() {
+        final ObjectAdapter adapter = unit();
+        Assert.assertSame(integers.value, adapter.encode(1));
+        Assert.assertSame(doubles.value, adapter.encode(1.5));
+        Assert.assertSame(numbers.value, adapter.encode(1L));
+        Assert.assertSame(numbers.value, adapter.encode(BigDecimal.ONE));
+        Assert.assertSame(lists.value, adapter.encode(new ArrayList<Object>()));
+        Assert.assertSame(lists.value, adapter.encode(new LinkedList<Object>()));
+        Assert.assertSame(maps.value, adapter.encode(new TreeMap<String, Object>()));
+        Assert.assertSame(dates.value, adapter.encode(new GregorianCalendar()));
+        Assert.assertTrue(adapter.isResolved(Long.class));
+        Assert.assertTrue(adapter.isResolved(LinkedList.class));
+        
+        // cached resolutions keep dispatching correctly
+        Assert.assertSame(integers.value, adapter.encode(2));
+        Assert.assertSame(numbers.value, adapter.encode(2L));
+        Assert.assertEquals(2, integers.encoded.size());
+    }
+    
+    /**
+     * Tests that classes without an adapter are cached and encoded using their string form.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void toStringFallback() {
+        final ObjectAdapter adapter = unit();
+        final Object unknown = new Object() {
+            
+            @Override
+            public String toString() {
+                return "unknown";
+            }
+            
+        };
+        Assert.assertFalse(adapter.isResolved(unknown.getClass()));
+        Assert.assertSame(strings.value, adapter.encode(unknown));
+        Assert.assertTrue(adapter.isResolved(unknown.getClass()));
+        Assert.assertSame(strings.value, adapter.encode(unknown));
+        Assert.assertEquals(Lists.newArrayList("unknown", "unknown"), strings.encoded);
+        Assert.assertSame(maps.value, adapter.encode(new TreeMap<String, Object>()));
+    }
+    
+}
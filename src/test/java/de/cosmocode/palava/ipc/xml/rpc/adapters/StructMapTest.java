@@ -0,0 +1,133 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc.adapters;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.xml.rpc.generated.Member;
+
+/**
+ * Tests {@link StructMap}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class StructMapTest {
+
+    private static final int SIZE = 200;
+    
+    private final AtomicInteger decoded = new AtomicInteger();
+    
+    private final Function<Member, Entry<String, Object>> decoder = new Function<Member, Entry<String, Object>>() {
+        
+        @Override
+        public Entry<String, Object> apply(Member from) {
+            decoded.incrementAndGet();
+            return Maps.<String, Object>immutableEntry(from.getName(), "value-" + from.getName());
+        }
+        
+    };
+    
+    private Member member(String name) {
+        final Member member = new Member();
+        member.setName(name);
+        return member;
+    }
+    
+    private Map<String, Object> create(String... extra) {
+        final List<Member> members = Lists.newArrayList();
+        for (int i = 0; i < SIZE; i++) {
+            members.add(member("key" + i));
+        }
+        for (String name : extra) {
+            members.add(member(name));
+        }
+        return new StructMap(members, decoder);
+    }
+    
+    /**
+     * Tests that lookups only decode the requested member.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void get() {
+        final Map<String, Object> map = create();
+        for (int i = 0; i < SIZE; i++) {
+            Assert.assertEquals("value-key" + i, map.get("key" + i));
+        }
+        Assert.assertEquals(SIZE, decoded.get());
+        Assert.assertEquals("value-key42", map.get("key42"));
+        Assert.assertEquals(SIZE, decoded.get());
+    }
+    
+    /**
+     * Tests that key checks don't decode values at all.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void containsKey() {
+        final Map<String, Object> map = create();
+        Assert.assertTrue(map.containsKey("key0"));
+        Assert.assertTrue(map.containsKey("key199"));
+        Assert.assertFalse(map.containsKey("key200"));
+        Assert.assertFalse(map.containsKey(null));
+        Assert.assertFalse(map.containsKey(Integer.valueOf(1)));
+        Assert.assertNull(map.get("missing"));
+        Assert.assertEquals(0, decoded.get());
+    }
+    
+    /**
+     * Tests that the first member wins if a name occurs multiple times, like
+     * it does when iterating.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void duplicates() {
+        final Map<String, Object> map = create("key7", "extra", "extra");
+        Assert.assertEquals(SIZE + 3, map.size());
+        Assert.assertTrue(map.containsKey("extra"));
+        map.get("key7");
+        Assert.assertEquals(1, decoded.get());
+    }
+    
+    /**
+     * Tests lookups on an empty struct.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void empty() {
+        final Map<String, Object> map = new StructMap(Lists.<Member>newArrayList(), decoder);
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertFalse(map.containsKey("key"));
+        Assert.assertNull(map.get("key"));
+    }
+    
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.xml.rpc.adapters;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cosmocode.palava.ipc.xml.rpc.generated.ObjectFactory;
+import de.cosmocode.palava.ipc.xml.rpc.generated.Value;
+
+/**
+ * Tests {@link ValueType}.
+ *
+ * @since 1.1
+ * @author Willi Schoenborn
+ */
+public final class ValueTypeTest {
+
+    private final ObjectFactory factory = new ObjectFactory();
+    
+    /**
+     * Tests resolution of typed values.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void typed() {
+        final Value i4 = factory.createValue();
+        i4.getContent().add(factory.createValueI4(42));
+        Assert.assertSame(ValueType.I4, ValueType.of(i4));
+        Assert.assertEquals(42, ValueType.contentOf(i4));
+        
+        final Value integer = factory.createValue();
+        integer.getContent().add(factory.createValueInt(42));
+        Assert.assertSame(ValueType.I4, ValueType.of(integer));
+        
+        final Value date = factory.createValue();
+        date.getContent().add(factory.createValueDateTimeIso8601("20101231T23:59:59"));
+        Assert.assertSame(ValueType.DATETIME_ISO801, ValueType.of(date));
+        
+        final Value string = factory.createValue();
+        string.getContent().add(factory.createValueString("string"));
+        Assert.assertSame(ValueType.STRING, ValueType.of(string));
+        Assert.assertEquals("string", ValueType.contentOf(string));
+    }
+    
+    /**
+     * Tests that whitespace around typed elements is ignored.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void mixed() {
+        final Value value = factory.createValue();
+        value.getContent().add("\n  ");
+        value.getContent().add(factory.createValueDouble(0.5));
+        value.getContent().add("\n");
+        Assert.assertSame(ValueType.DOUBLE, ValueType.of(value));
+        Assert.assertEquals(0.5, ValueType.contentOf(value));
+    }
+    
+    /**
+     * Tests that untyped values are strings.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void untyped() {
+        final Value value = factory.createValue();
+        value.getContent().add("untyped");
+        Assert.assertSame(ValueType.STRING, ValueType.of(value));
+        Assert.assertEquals("untyped", ValueType.contentOf(value));
+        
+        final Value empty = factory.createValue();
+        Assert.assertSame(ValueType.STRING, ValueType.of(empty));
+        Assert.assertEquals("", ValueType.contentOf(empty));
+    }
+    
+    /**
+     * Tests that decoders get the resolved type and content of a value.
+     * 
+     * @since 1.1
+     */
+    @Test
+    public void decode() {
+        final Value value = factory.createValue();
+        value.getContent().add("\n");
+        value.getContent().add(factory.createValueI4(42));
+        final Object decoded = ValueType.decode(value, new ValueDecoder<Object>() {
+            
+            @Override
+            public Object decode(Value input, ValueType type, Object content) {
+                Assert.assertSame(value, input);
+                Assert.assertSame(ValueType.I4, type);
+                return content;
+            }
+            
+        });
+        Assert.assertEquals(42, decoded);
+    }
+    
+}